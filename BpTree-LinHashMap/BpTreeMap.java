@@ -7,6 +7,7 @@
 import java.io.*;
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static java.lang.Math.ceil;
 import static java.lang.System.out;
@@ -30,7 +31,7 @@ public class BpTreeMap <K extends Comparable <K>, V>
     /** The maximum fanout (number of children) for a B+Tree node.
      *  May wish to increase for better performance for Program 3.
      */
-    private static final int ORDER = 5;
+    private static final int ORDER = 64;
 
     /** The maximum fanout (number of children) for a big B+Tree node.
      */
@@ -40,6 +41,10 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     private static final int MID = (int) ceil (ORDER / 2.0);
 
+    /** The maximum number of values held by one posting page (multimap mode).
+     */
+    private static final int PAGE = 64;
+
     /** The class for type K.
      */
     private final Class <K> classK;
@@ -96,8 +101,13 @@ public class BpTreeMap <K extends Comparable <K>, V>
          */
         int find (K k)
         {
-            for (int i  = 0; i < nKeys; i++) if (k.compareTo (key[i]) <= 0) return i;
-            return nKeys;
+            int lo = 0, hi = nKeys;                   // binary search for the first key >= k
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (k.compareTo (key[mid]) <= 0) hi = mid;
+                else                             lo = mid + 1;
+            } // while
+            return lo;
         } // find
         
         /****************************************************************************
@@ -111,6 +121,77 @@ public class BpTreeMap <K extends Comparable <K>, V>
 
     } // Node inner class
 
+    /********************************************************************************
+     * This inner class defines the posting lists used in multimap mode, where the
+     * leaf reference for a key holds all of its values.  A posting page grows by
+     * doubling up to PAGE values; very frequent keys chain further overflow pages.
+     */
+    private static class Postings
+           implements Serializable
+    {
+        Object [] item;                               // the values for the key
+        int       n;                                  // number of values in this page
+        Postings  overflow;                           // next posting page
+
+        Postings (Object v)
+        {
+            item    = new Object [2];
+            item[0] = v;
+            n       = 1;
+        } // constructor
+
+        /****************************************************************************
+         * Append value v to the last page of this posting list.
+         * @param v  the value to add
+         */
+        void add (Object v)
+        {
+            Postings p = this;
+            while (p.n == PAGE) {
+                if (p.overflow == null) { p.overflow = new Postings (v); return; }
+                p = p.overflow;
+            } // while
+            if (p.n == p.item.length) p.item = Arrays.copyOf (p.item, Math.min (2 * p.n, PAGE));
+            p.item[p.n++] = v;
+        } // add
+
+        /****************************************************************************
+         * Append all the values in this posting list to the given list.
+         * @param list  the list to add to
+         */
+        @SuppressWarnings("unchecked")
+        <V> void addTo (List <V> list)
+        {
+            for (Postings p = this; p != null; p = p.overflow) {
+                for (int i = 0; i < p.n; i++) list.add ((V) p.item[i]);
+            } // for
+        } // addTo
+
+        /****************************************************************************
+         * Remove one value deep equal to v from this posting list, keeping the
+         * order of the others.  A page left empty takes over the next page.
+         * @param v  the value to remove
+         * @return  whether a value was removed
+         */
+        boolean remove (Object v)
+        {
+            for (Postings p = this; p != null; p = p.overflow) {
+                for (int i = 0; i < p.n; i++) {
+                    if (Objects.deepEquals (p.item[i], v)) {
+                        System.arraycopy (p.item, i + 1, p.item, i, p.n - i - 1);
+                        p.item[--p.n] = null;
+                        if (p.n == 0 && p.overflow != null) {
+                            Postings q = p.overflow;
+                            p.item = q.item; p.n = q.n; p.overflow = q.overflow;
+                        } // if
+                        return true;
+                    } // if
+                } // for
+            } // for
+            return false;
+        } // remove
+    } // Postings inner class
+
     /** The root of the B+Tree
      */
     private Node root;
@@ -135,15 +216,32 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     private int keyCount = 0;
 
+    /** Whether duplicate keys are allowed, with the values of a key kept in Postings
+     */
+    private final boolean multi;
+
     /********************************************************************************
      * Construct an empty B+Tree map.
      * @param _classK  the class for keys (K)
      * @param _classV  the class for values (V)
      */
     public BpTreeMap (Class <K> _classK, Class <V> _classV)
+    {
+        this (_classK, _classV, false);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B+Tree map, which in multimap mode allows duplicate keys
+     * (e.g., for an index on a non-unique attribute).
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     * @param _multi   whether a key may map to multiple values
+     */
+    public BpTreeMap (Class <K> _classK, Class <V> _classV, boolean _multi)
     {
         classK    = _classK;
         classV    = _classV;
+        multi     = _multi;
         root      = new Node (ORDER, true);
         firstLeaf = root;
         bn        = new Node (BORDER, true);
@@ -159,73 +257,288 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // comparator
 
     /********************************************************************************
-     * Return a set containing all the entries as pairs of keys and values.
+     * Return a set view of the entries as pairs of keys and values, in key order.
+     * The view is live: its iterator follows the leaf links and its spliterator splits
+     * by subtrees (ranges of leaves), so entrySet ().parallelStream () scans the
+     * leaves in parallel.  In multimap mode each value of a key is a separate entry.
      * @return  the set view of the map
      */
     public Set <Map.Entry <K, V>> entrySet ()
     {
-        
-        LinkedHashSet <Map.Entry<K, V>> linSet = new LinkedHashSet<>();  
-        
-        //@author Akshay Mendki.
-        //start with first node of B+ tree. Traverse sequentially all the nodes to get keys and values.
-        Node temp = firstLeaf;
-       
-        for(int i=0; i<=temp.nKeys;i++)
-        {
-        	//ignore null references
-        	if(temp.ref[i]!=null) 
-        	{
-        		//reference of last key of current node will be the next node.
-        		if(i==temp.nKeys)
-        		{
-	        		//take next node as temporary node and restart the for loop.
-	        		temp =(Node)temp.ref[i];
-	        		i=-1;
-        		}
-        		else
-        		{
-        		
-	            	linSet.add(new AbstractMap.SimpleEntry <K, V> ((K)temp.key[i],(V)temp.ref[i]));
-        		}
-        	}
-        }
-     
-      
-        return linSet;
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size ()
+            {
+                if (! multi) return keyCount;
+                int n = 0;
+                for (Node l = leftmost (root); l != null; l = (Node) l.ref[l.nKeys]) {
+                    for (int i = 0; i < l.nKeys; i++) {
+                        for (Postings p = (Postings) l.ref[i]; p != null; p = p.overflow) n += p.n;
+                    } // for
+                } // for
+                return n;
+            } // size
+
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return Spliterators.iterator (new EntrySpliterator ());
+            } // iterator
 
+            public Spliterator <Map.Entry <K, V>> spliterator ()
+            {
+                return new EntrySpliterator ();
+            } // spliterator
+        }; // AbstractSet
     } // entrySet
 
     /********************************************************************************
-     * Given the key, look up the value in the B+Tree map.
+     * This inner class traverses the entries in the leaves under children lo to hi
+     * of an internal node, stopping at leaf end.  Before the traversal starts, it
+     * splits by halving the range of children, descending into the child when only
+     * one is left.
+     */
+    private class EntrySpliterator
+            implements Spliterator <Map.Entry <K, V>>
+    {
+        Node     node;                                  // internal node being split (null for a leaf)
+        int      lo, hi;                                // range of children of node
+        Node     end;                                   // first leaf after the range (null for none)
+        long     est;                                   // estimated number of keys
+        boolean  started = false;                       // whether traversal has begun
+        Node     leaf;                                  // current leaf
+        int      i = 0;                                 // next key in leaf
+        K        pk;                                    // key of the current posting list (multimap)
+        Postings p = null;                              // current posting page (multimap)
+        int      pi = 0;                                // next value in p
+
+        EntrySpliterator ()
+        {
+            this (root.isLeaf ? null : root, 0, root.nKeys, null, keyCount);
+        } // constructor
+
+        EntrySpliterator (Node _node, int _lo, int _hi, Node _end, long _est)
+        {
+            node = _node; lo = _lo; hi = _hi; end = _end; est = _est;
+            leaf = (node == null) ? root : null;
+        } // constructor
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance (Consumer <? super Map.Entry <K, V>> action)
+        {
+            if (! started) {
+                started = true;
+                if (node != null) leaf = leftmost ((Node) node.ref[lo]);
+            } // if
+            for ( ; ; ) {
+                if (p != null) {
+                    if (pi < p.n) { action.accept (new AbstractMap.SimpleEntry <> (pk, (V) p.item[pi++])); return true; }
+                    p  = p.overflow;
+                    pi = 0;
+                    continue;
+                } // if
+                if (leaf == null || leaf == end) return false;
+                if (i < leaf.nKeys) {
+                    K k = leaf.key[i]; Object r = leaf.ref[i++];
+                    if (multi) { pk = k; p = (Postings) r; pi = 0; continue; }
+                    action.accept (new AbstractMap.SimpleEntry <> (k, (V) r));
+                    return true;
+                } // if
+                leaf = (Node) leaf.ref[leaf.nKeys];
+                i    = 0;
+            } // for
+        } // tryAdvance
+
+        public Spliterator <Map.Entry <K, V>> trySplit ()
+        {
+            if (started || node == null) return null;
+            if (lo == hi) {                                            // descend into the only child
+                Node child = (Node) node.ref[lo];
+                if (child.isLeaf) return null;
+                node = child; lo = 0; hi = child.nKeys;
+                if (leftmost ((Node) node.ref[hi]) == end) hi--;       // last ref repeats the next subtree
+                if (lo == hi) return trySplit ();
+            } // if
+            int  mid = (lo + hi) >>> 1;
+            long e   = est * (mid - lo + 1) / (hi - lo + 1);
+            EntrySpliterator prefix = new EntrySpliterator (node, lo, mid, leftmost ((Node) node.ref[mid + 1]), e);
+            lo   = mid + 1;
+            est -= e;
+            return prefix;
+        } // trySplit
+
+        public long estimateSize ()
+        {
+            return est;
+        } // estimateSize
+
+        public int characteristics ()
+        {
+            return ORDERED | NONNULL | (multi ? 0 : DISTINCT);
+        } // characteristics
+    } // EntrySpliterator inner class
+
+    /********************************************************************************
+     * Return the leftmost leaf in the subtree rooted at node n.
+     * @param n  the root of the subtree
+     * @return  the leftmost leaf
+     */
+    private Node leftmost (Node n)
+    {
+        while (! n.isLeaf) n = (Node) n.ref[0];
+        return n;
+    } // leftmost
+
+    /********************************************************************************
+     * Return whether the B+Tree map contains the key, by descending the tree rather
+     * than scanning the entries.
+     * @param key  the key to look for
+     * @return  whether the key is present
+     */
+    @SuppressWarnings("unchecked")
+    public boolean containsKey (Object key)
+    {
+        return find ((K) key, root) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Given the key, look up the value in the B+Tree map.  In multimap mode, the
+     * first value inserted for the key is returned (see getAll).
      * @param key  the key used for look up
      * @return  the value associated with the key or null if not found
      */
     @SuppressWarnings("unchecked")
     public V get (Object key)
     {
-        return find ((K) key, root);
+        Object ref = find ((K) key, root);
+        return (ref instanceof Postings) ? (V) ((Postings) ref).item[0] : (V) ref;
     } // get
 
     /********************************************************************************
-     * Put the key-value pair in the B+Tree map.
+     * Given the key, look up all of its values in the B+Tree map.
+     * @param key  the key used for look up
+     * @return  the list of values associated with the key (empty if not found)
+     */
+    @SuppressWarnings("unchecked")
+    public List <V> getAll (K key)
+    {
+        List <V> vals = new ArrayList <> ();
+        Object ref = find (key, root);
+        if (ref instanceof Postings) ((Postings) ref).addTo (vals);
+        else if (ref != null)        vals.add ((V) ref);
+        return vals;
+    } // getAll
+
+    /********************************************************************************
+     * Return all the values whose keys are between fromKey and toKey, i.e.,
+     * fromKey <= key < toKey, in key order.  The scan descends directly to the first
+     * qualifying leaf and then follows the leaf links.
+     * @param fromKey  the lower bound (inclusive)
+     * @param toKey    the upper bound (exclusive)
+     * @return  the list of values in the range
+     */
+    @SuppressWarnings("unchecked")
+    public List <V> rangeAll (K fromKey, K toKey)
+    {
+        List <V> vals = new ArrayList <> ();
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref[n.find (fromKey)];
+        for (int i = n.find (fromKey); n != null; n = (Node) n.ref[n.nKeys], i = 0) {
+            for ( ; i < n.nKeys; i++) {
+                if (n.key[i].compareTo (toKey) >= 0) return vals;
+                if (multi) ((Postings) n.ref[i]).addTo (vals);
+                else       vals.add ((V) n.ref[i]);
+            } // for
+        } // for
+        return vals;
+    } // rangeAll
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map.  In multimap mode, a value for an
+     * existing key is appended to the key's posting list.
      * @param key    the key to insert
      * @param value  the value to insert
      * @return  null, not the previous value for this key
      */
     public V put (K key, V value)
     {
-        insert (key, value, root);
+        if (multi) {
+            Object ref = find (key, root);
+            if (ref != null) ((Postings) ref).add (value);
+            else             insert (key, new Postings (value), root);
+        } else {
+            insert (key, value, root);
+        } // if
         return null;
     } // put
 
+    /********************************************************************************
+     * Remove the key from the B+Tree map (in multimap mode, with all of its values).
+     * Deletion is lazy: the key is removed from its leaf, but leaves are neither
+     * merged nor rebalanced, so a leaf may become empty.  The dividers above it
+     * remain valid separators.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key (the first value in
+     *          multimap mode) or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        Object ref = find ((K) key, root);
+        if (ref == null) return null;
+        delete ((K) key);
+        return (ref instanceof Postings) ? (V) ((Postings) ref).item[0] : (V) ref;
+    } // remove
+
+    /********************************************************************************
+     * Remove the given key-value pair from the B+Tree map.  In multimap mode only
+     * the given value is removed from the key's posting list, and the key goes when
+     * its last value does.  Values are compared with Objects.deepEquals, so a tuple
+     * matches an equal copy of itself.
+     * @param key    the key of the pair to remove
+     * @param value  the value of the pair to remove
+     * @return  whether the pair was found and removed
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove (Object key, Object value)
+    {
+        Object ref = find ((K) key, root);
+        if (ref instanceof Postings) {
+            Postings p = (Postings) ref;
+            if (! p.remove (value)) return false;
+            if (p.n == 0) delete ((K) key);
+            return true;
+        } // if
+        if (ref == null || ! Objects.deepEquals (ref, value)) return false;
+        delete ((K) key);
+        return true;
+    } // remove
+
+    /********************************************************************************
+     * Remove the key and its reference from the leaf holding it.
+     * @param key  the key to remove (known to be present)
+     */
+    private void delete (K key)
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref[n.find (key)];
+        int i = n.find (key);
+        Object next = n.ref[n.nKeys];                                 // link to the next leaf
+        for (int j = i; j < n.nKeys - 1; j++) { n.key[j] = n.key[j+1]; n.ref[j] = n.ref[j+1]; }
+        n.nKeys--;
+        n.key[n.nKeys]   = null;
+        n.ref[n.nKeys]   = next;
+        n.ref[n.nKeys+1] = null;
+        keyCount--;
+    } // delete
+
     /********************************************************************************
      * Return the first (smallest) key in the B+Tree map.
      * @return  the first key in the B+Tree map.
      */
     public K firstKey () 
     {
-        return firstLeaf.key[0];
+        Node n = firstLeaf;
+        while (n.nKeys == 0 && n.ref[0] != null) n = (Node) n.ref[0];  // skip leaves emptied by remove
+        return n.key[0];
     } // firstKey
 
     /********************************************************************************
@@ -234,27 +547,23 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     public K lastKey () 
     {
-         
-    	//@author Akshay Mendki
-    	
-    	//start with the root and take last reference node of it and stop till we reach Leaf.
-    	Node temp = root;
-    	
-    	//Loop through the references
-    	for(int i=(temp.ref.length)-1; i>=0; i--)
-    	{
-    		//Reassign the node to temp if its not null and not leaf. Loop will end when we get Leaf.
-    		if(temp.ref[i] != null && !temp.isLeaf)
-    		{
-    		    temp=(Node)temp.ref[i];
-                i=temp.ref.length;
-    		}
-    		
-    	}
-    	//return last key of the Leaf.
-    	return (temp.key[temp.nKeys-1]);
+        return lastKey (root);
+    } // lastKey
 
-        
+    /********************************************************************************
+     * Return the last key in the subtree rooted at node n, searching the children
+     * from right to left so that leaves emptied by remove are skipped.
+     * @param n  the root of the subtree
+     * @return  the last key in the subtree, or null if all its leaves are empty
+     */
+    private K lastKey (Node n)
+    {
+        if (n.isLeaf) return (n.nKeys == 0) ? null : n.key[n.nKeys-1];
+        for (int i = n.nKeys; i >= 0; i--) {
+            K k = lastKey ((Node) n.ref[i]);
+            if (k != null) return k;
+        } // for
+        return null;
     } // lastKey
 
     /********************************************************************************
@@ -289,7 +598,7 @@ public class BpTreeMap <K extends Comparable <K>, V>
        //  implemented by @akshayMendki.
     
     	
-    	SortedMap <K,V> map = (SortedMap<K, V>) new BpTreeMap(classK, classV);
+    	BpTreeMap <K,V> map = new BpTreeMap <> (classK, classV, multi);
     
         Node temp = firstLeaf;
           
@@ -313,7 +622,8 @@ public class BpTreeMap <K extends Comparable <K>, V>
                                                                    if(fromKey.compareTo((K)temp.key[i])<=0)
                                                                    {
                                                                 	   //adding key values into SortedMap of B+
-                                                                	   map.put((K)temp.key[i], (V)temp.ref[i]);
+                                                                	   if (multi) for (V v : getAll ((K)temp.key[i])) map.put((K)temp.key[i], v);
+                                                                	   else map.put((K)temp.key[i], (V)temp.ref[i]);
                                                                    }
                                                    }
                                    }
@@ -360,15 +670,15 @@ public class BpTreeMap <K extends Comparable <K>, V>
      * Recursive helper function for finding a key in B+trees.
      * @param key  the key to find
      * @param n    the current node
+     * @return  the leaf reference (value or Postings) for the key or null if not found
      */
-    @SuppressWarnings("unchecked")
-    private V find (K key, Node n)
+    private Object find (K key, Node n)
     {
         count++;
         int i = n.find (key);
         if (i < n.nKeys) {
             K k_i = n.key[i];
-            if (n.isLeaf) return (key.compareTo (k_i) == 0) ? (V) n.ref[i] : null;
+            if (n.isLeaf) return (key.compareTo (k_i) == 0) ? n.ref[i] : null;
             else          return find (key, (Node) n.ref[i]);
         } else {
             return (n.isLeaf) ? null : find (key, (Node) n.ref[n.nKeys]);
@@ -378,12 +688,12 @@ public class BpTreeMap <K extends Comparable <K>, V>
     /********************************************************************************
      * Recursive helper function for inserting a key in B+trees.
      * @param key  the key to insert
-     * @param ref  the value/node to insert
+     * @param ref  the value/postings/node to insert
      * @param n    the current node
      * @return  the newly allocated right sibling node of n 
      */
     @SuppressWarnings("unchecked")
-    private Node insert (K key, V ref, Node n)
+    private Node insert (K key, Object ref, Node n)
     {
         out.println ("=============================================================");
         out.println ("insert: key = " + key);
@@ -481,6 +791,7 @@ public class BpTreeMap <K extends Comparable <K>, V>
         n.key[i] = key;                                               // place new key
         if (left) n.ref[i] = ref; else n.ref[i+1] = ref;              // place new ref
         n.nKeys++;                                                    // increment number of keys
+        if (left) keyCount++;                                         // a new key reached a leaf
         return true;
     } // wedge
 
@@ -529,6 +840,15 @@ public class BpTreeMap <K extends Comparable <K>, V>
         } // for
         out.println ("-------------------------------------------");
         out.println ("Average number of nodes accessed = " + bpt.count / (double) totalKeys);
+        out.println ("Sum of values (parallel stream over the leaves) = "
+                     + bpt.entrySet ().parallelStream ().mapToLong (e -> e.getValue ()).sum ());
+
+        for (int i = 1; i <= totalKeys; i += 4) bpt.remove (i);
+        out.println ("After removing every other key: size = " + bpt.size () + ", firstKey = " + bpt.firstKey ()
+                     + ", keys = " + bpt.keySet ());
+        for (int i = totalKeys / 2; i <= totalKeys; i++) bpt.remove (i);
+        out.println ("After removing the keys from " + totalKeys / 2 + " on: lastKey = " + bpt.lastKey ()
+                     + ", keys = " + bpt.keySet ());
     } // main
 
-} // BpTreeMap class
\ No newline at end of file
+} // BpTreeMap class
\ No newline at end of file
@@ -0,0 +1,417 @@
+/************************************************************************************
+ * @file BufferPool.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/************************************************************************************
+ * This class provides a buffer pool: a fixed budget of frames that hold pages of
+ * files in memory.  It is shared by the file-backed tuple stores (FileList) and
+ * indices (DiskLinHashMap).  A page is pinned while it is used and unpinned
+ * afterwards, marking it dirty if it was modified.  Only unpinned pages are
+ * replaced, and dirty pages are written back to their files when they are
+ * replaced or flushed.
+ * <p>
+ * Replacement uses the Clock algorithm: each frame has a reference bit that is set
+ * on access and cleared as the clock hand passes, so a page is replaced only if it
+ * was not used for a full revolution.  Pages pinned by sequential scans bypass the
+ * clock: they are loaded into a small ring of frames that the scan recycles itself,
+ * so a scan over a large file cannot flush the working set out of the pool.
+ */
+public class BufferPool
+{
+    /** The default number of frames of the shared pool (overridden by the system
+     *  property bufferpool.frames).
+     */
+    public static final int DEFAULT_FRAMES = 256;
+
+    /** The number of frames in the ring used by sequential scans.
+     */
+    private static final int SCAN_RING = 8;
+
+    /** The buffer pool shared by the file-backed stores and indices.
+     */
+    private static BufferPool shared;
+
+    /********************************************************************************
+     * This inner class identifies a page: a file (channel) and a page number.
+     */
+    private static final class PageId
+    {
+        final FileChannel ch;
+        final long        p;
+
+        PageId (FileChannel _ch, long _p)
+        {
+            ch = _ch;
+            p  = _p;
+        } // constructor
+
+        public boolean equals (Object o)
+        {
+            return o instanceof PageId && ((PageId) o).ch == ch && ((PageId) o).p == p;
+        } // equals
+
+        public int hashCode ()
+        {
+            return System.identityHashCode (ch) * 31 + Long.hashCode (p);
+        } // hashCode
+    } // PageId inner class
+
+    /** The number of frames (the frame budget).
+     */
+    private final int nFrames;
+
+    /** The page held by each frame (null if the frame is free).
+     */
+    private final PageId [] id;
+
+    /** The buffer of each frame.
+     */
+    private final ByteBuffer [] buf;
+
+    /** The pin count of each frame.
+     */
+    private final int [] pins;
+
+    /** Whether each frame was modified, was recently referenced, or is in the scan ring.
+     */
+    private final boolean [] dirty, ref, inRing;
+
+    /** The page table mapping pages to the frames that hold them.
+     */
+    private final HashMap <PageId, Integer> table = new HashMap <> ();
+
+    /** The frames used by sequential scans, oldest first.
+     */
+    private final ArrayDeque <Integer> ring = new ArrayDeque <> ();
+
+    /** The position of the clock hand.
+     */
+    private int hand = 0;
+
+    /** Counters for page hits, misses, evictions and write-backs.
+     */
+    private long hits = 0, misses = 0, evictions = 0, writes = 0;
+
+    /********************************************************************************
+     * Construct a buffer pool with the given number of frames.
+     * @param _nFrames  the frame budget
+     */
+    public BufferPool (int _nFrames)
+    {
+        if (_nFrames < 1) throw new IllegalArgumentException ("BufferPool: need at least one frame");
+        nFrames = _nFrames;
+        id      = new PageId [nFrames];
+        buf     = new ByteBuffer [nFrames];
+        pins    = new int [nFrames];
+        dirty   = new boolean [nFrames];
+        ref     = new boolean [nFrames];
+        inRing  = new boolean [nFrames];
+    } // constructor
+
+    /********************************************************************************
+     * Return the shared buffer pool, creating it on first use.
+     * @return  the shared buffer pool
+     */
+    public static synchronized BufferPool shared ()
+    {
+        if (shared == null) shared = new BufferPool (Integer.getInteger ("bufferpool.frames", DEFAULT_FRAMES));
+        return shared;
+    } // shared
+
+    /********************************************************************************
+     * Pin page p of the file, reading it if it is not in the pool.  Pages are
+     * size bytes long, so page p starts at byte p * size (the part beyond the end
+     * of file reads as zeros).
+     * @param ch    the file channel
+     * @param p     the page number
+     * @param size  the number of bytes per page
+     * @return  a view of the page's frame, positioned at 0
+     */
+    public ByteBuffer pin (FileChannel ch, long p, int size)
+    {
+        return pin (ch, p, size, false, true);
+    } // pin
+
+    /********************************************************************************
+     * Pin page p of the file, as part of a sequential scan if scan is true: a page
+     * loaded by a scan goes into the scan ring and a hit by a scan does not count
+     * as a reference, so scanned pages do not displace the working set.
+     * @param ch    the file channel
+     * @param p     the page number
+     * @param size  the number of bytes per page
+     * @param scan  whether the page is pinned by a sequential scan
+     * @return  a view of the page's frame, positioned at 0
+     */
+    public ByteBuffer pin (FileChannel ch, long p, int size, boolean scan)
+    {
+        return pin (ch, p, size, scan, true);
+    } // pin
+
+    /********************************************************************************
+     * Pin page p of the file without reading it, for a page that is about to be
+     * overwritten completely.  The frame is zeroed.
+     * @param ch    the file channel
+     * @param p     the page number
+     * @param size  the number of bytes per page
+     * @return  a view of the page's frame, positioned at 0
+     */
+    public ByteBuffer pinNew (FileChannel ch, long p, int size)
+    {
+        return pin (ch, p, size, false, false);
+    } // pinNew
+
+    /********************************************************************************
+     * Pin a page, loading it into a victim frame on a miss.
+     * @param ch    the file channel
+     * @param p     the page number
+     * @param size  the number of bytes per page
+     * @param scan  whether the page is pinned by a sequential scan
+     * @param read  whether to read the page (false to zero it)
+     * @return  a view of the page's frame, positioned at 0
+     */
+    private synchronized ByteBuffer pin (FileChannel ch, long p, int size, boolean scan, boolean read)
+    {
+        PageId  k = new PageId (ch, p);
+        Integer f = table.get (k);
+        if (f != null) {
+            hits++;
+            if (! scan) {
+                ref [f] = true;
+                if (inRing [f]) { inRing [f] = false; ring.remove (f); }
+            } // if
+        } else {
+            misses++;
+            f = victim (scan);
+            if (buf [f] == null || buf [f].capacity () != size) buf [f] = ByteBuffer.allocate (size);
+            id [f]    = k;
+            ref [f]   = ! scan;
+            dirty [f] = false;
+            table.put (k, f);
+            if (read) load (f);
+        } // if
+        if (! read) Arrays.fill (buf [f].array (), (byte) 0);
+        pins [f]++;
+        return buf [f].duplicate ().clear ();
+    } // pin
+
+    /********************************************************************************
+     * Unpin page p of the file.
+     * @param ch        the file channel
+     * @param p         the page number
+     * @param modified  whether the page was modified while pinned
+     */
+    public synchronized void unpin (FileChannel ch, long p, boolean modified)
+    {
+        Integer f = table.get (new PageId (ch, p));
+        if (f == null || pins [f] == 0) throw new IllegalStateException ("BufferPool.unpin: page " + p + " is not pinned");
+        pins [f]--;
+        if (modified) dirty [f] = true;
+    } // unpin
+
+    /********************************************************************************
+     * Choose a frame to load a page into, evicting its page if necessary.  A scan
+     * recycles the oldest unpinned frame of its ring once the ring is full; other
+     * pages (and scans while the ring fills) take the next frame found by the clock.
+     * @param scan  whether the page is loaded by a sequential scan
+     * @return  the free frame
+     */
+    private int victim (boolean scan)
+    {
+        if (scan && ring.size () >= SCAN_RING) {
+            for (int j = ring.size (); j > 0; j--) {
+                int f = ring.poll ();
+                ring.add (f);
+                if (pins [f] == 0) { evict (f); ring.add (f); inRing [f] = true; return f; }
+            } // for
+        } // if
+        for (int j = 0; j < 2 * nFrames; j++) {
+            int f = hand;
+            hand  = (hand + 1) % nFrames;
+            if (id [f] == null) return mark (f, scan);
+            if (pins [f] > 0) continue;
+            if (ref [f]) { ref [f] = false; continue; }
+            evict (f);
+            return mark (f, scan);
+        } // for
+        throw new IllegalStateException ("BufferPool: all " + nFrames + " frames are pinned");
+    } // victim
+
+    /********************************************************************************
+     * Add frame f to the scan ring if it is loaded by a scan.
+     */
+    private int mark (int f, boolean scan)
+    {
+        if (scan) { ring.add (f); inRing [f] = true; }
+        return f;
+    } // mark
+
+    /********************************************************************************
+     * Evict the page in frame f, writing it back if it is dirty.
+     * @param f  the frame
+     */
+    private void evict (int f)
+    {
+        if (dirty [f]) writeBack (f);
+        if (inRing [f]) { inRing [f] = false; ring.remove (f); }
+        table.remove (id [f]);
+        id [f] = null;
+        evictions++;
+    } // evict
+
+    /********************************************************************************
+     * Read the page of frame f from its file (the part beyond the end of file is zeroed).
+     * @param f  the frame
+     */
+    private void load (int f)
+    {
+        ByteBuffer b   = buf [f].clear ();
+        long       pos = id [f].p * b.capacity ();
+        try {
+            while (b.hasRemaining () && id [f].ch.read (b, pos + b.position ()) > 0) ;
+        } catch (IOException ex) {
+            id [f] = null;
+            table.values ().remove (f);
+            throw new UncheckedIOException ("BufferPool.load", ex);
+        } // try
+        while (b.hasRemaining ()) b.put ((byte) 0);
+    } // load
+
+    /********************************************************************************
+     * Write the page of frame f back to its file.
+     * @param f  the frame
+     */
+    private void writeBack (int f)
+    {
+        ByteBuffer b = buf [f].duplicate ().clear ();
+        try {
+            while (b.hasRemaining ()) id [f].ch.write (b, id [f].p * b.capacity () + b.position ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("BufferPool.writeBack", ex);
+        } // try
+        dirty [f] = false;
+        writes++;
+    } // writeBack
+
+    /********************************************************************************
+     * Write back the dirty pages of the file.
+     * @param ch  the file channel
+     */
+    public synchronized void flush (FileChannel ch)
+    {
+        for (int f = 0; f < nFrames; f++) if (id [f] != null && id [f].ch == ch && dirty [f]) writeBack (f);
+    } // flush
+
+    /********************************************************************************
+     * Drop the pages of the file without writing them back (e.g., when the file is
+     * truncated or closed after a flush).
+     * @param ch  the file channel
+     */
+    public synchronized void discard (FileChannel ch)
+    {
+        for (int f = 0; f < nFrames; f++) {
+            if (id [f] != null && id [f].ch == ch) {
+                table.remove (id [f]);
+                if (inRing [f]) { inRing [f] = false; ring.remove (f); }
+                id [f] = null; pins [f] = 0; dirty [f] = false; ref [f] = false;
+            } // if
+        } // for
+    } // discard
+
+    /********************************************************************************
+     * Return the number of frames.
+     * @return  the frame budget
+     */
+    public int frames ()
+    {
+        return nFrames;
+    } // frames
+
+    /** Return the number of page hits.
+     */
+    public synchronized long hits () { return hits; }
+
+    /** Return the number of page misses (pages read or zeroed into a frame).
+     */
+    public synchronized long misses () { return misses; }
+
+    /** Return the number of pages evicted.
+     */
+    public synchronized long evictions () { return evictions; }
+
+    /** Return the number of dirty pages written back.
+     */
+    public synchronized long writes () { return writes; }
+
+    /********************************************************************************
+     * Return the fraction of pins that found their page in the pool.
+     * @return  the hit rate
+     */
+    public synchronized double hitRate ()
+    {
+        return (hits + misses == 0) ? 0.0 : hits / (double) (hits + misses);
+    } // hitRate
+
+    /********************************************************************************
+     * Reset the hit, miss, eviction and write-back counters.
+     */
+    public synchronized void resetStats ()
+    {
+        hits = misses = evictions = writes = 0;
+    } // resetStats
+
+    /********************************************************************************
+     * Return the metrics of the buffer pool as a string.
+     */
+    public synchronized String toString ()
+    {
+        return String.format ("BufferPool: frames = %d, hits = %d, misses = %d, hit rate = %.3f, evictions = %d, writes = %d",
+                              nFrames, hits, misses, hitRate (), evictions, writes);
+    } // toString
+
+    /********************************************************************************
+     * The main method used for testing: write pages through a small pool, read them
+     * back, and show that a large scan does not flush a hot set of pages.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args) throws IOException
+    {
+        int  size = 4096, nPages = 1000, hot = 8;
+        File f    = File.createTempFile ("BufferPool", ".dat");
+        try (RandomAccessFile raf = new RandomAccessFile (f, "rw")) {
+            FileChannel ch   = raf.getChannel ();
+            BufferPool  pool = new BufferPool (32);
+            for (int p = 0; p < nPages; p++) {
+                pool.pinNew (ch, p, size).putLong (0, p * 7L);
+                pool.unpin (ch, p, true);
+            } // for
+            pool.flush (ch);
+            out.println ("after writing: " + pool + ", file pages = " + f.length () / size);
+
+            int wrong = 0;
+            for (int p = nPages - 1; p >= 0; p--) {
+                if (pool.pin (ch, p, size).getLong (0) != p * 7L) wrong++;
+                pool.unpin (ch, p, false);
+            } // for
+            out.println ("read back: wrong = " + wrong);
+
+            for (boolean scan : new boolean [] { false, true }) {
+                for (int k = 0; k < 3; k++) for (int p = 0; p < hot; p++) { pool.pin (ch, p, size); pool.unpin (ch, p, false); }
+                for (int p = hot; p < nPages; p++) { pool.pin (ch, p, size, scan); pool.unpin (ch, p, false); }
+                pool.resetStats ();
+                for (int p = 0; p < hot; p++) { pool.pin (ch, p, size); pool.unpin (ch, p, false); }
+                out.println ("hot set after a " + (scan ? "scan-hinted" : "plain") + " scan: " + pool);
+            } // for
+        } finally {
+            f.delete ();
+        } // try
+    } // main
+
+} // BufferPool class
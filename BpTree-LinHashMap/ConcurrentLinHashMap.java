@@ -0,0 +1,430 @@
+/************************************************************************************
+ * @file ConcurrentLinHashMap.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import static java.lang.System.out;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/************************************************************************************
+ * This class provides thread-safe hash maps that use the Linear Hashing algorithm.
+ * <p>
+ * Each bucket is an immutable array of entries that writers replace as a whole
+ * (copy on write), so readers never lock: they read the hashing state (mod1, split)
+ * from one volatile word, search the bucket it designates and, on a miss, retry if
+ * the state changed meanwhile.  Writers lock only the stripe of the bucket they
+ * update.  A split locks just the bucket being split and its image: it publishes
+ * the image bucket, then the new state, and finally the reduced old bucket, so a
+ * reader either finds the key or notices the state change.  Buckets live in
+ * fixed-size segments that are never moved, so growing the table copies nothing
+ * but the directory of segments, which starts with a single segment and doubles
+ * when a split needs a segment past its end.
+ */
+public class ConcurrentLinHashMap <K, V>
+       extends AbstractMap <K, V>
+       implements Serializable, Map <K, V>
+{
+    /** The number of slots (for key-value pairs) per bucket before it counts as
+     *  overflowing (buckets hold more entries rather than chaining).
+     */
+    private static final int SLOTS = 10;
+
+    /** The threshold for the load factor (entries / slots in home buckets).
+     */
+    private static final double LOAD_FACTOR_THRESHOLD = 1.0;
+
+    /** The initial number of home buckets (a power of 2).
+     */
+    private static final int INIT_SIZE = 8;
+
+    /** The number of lock stripes (a power of 2).
+     */
+    private static final int STRIPES = 64;
+
+    /** The log2 of the number of buckets per directory segment.
+     */
+    private static final int SEG_BITS = 10;
+
+    /********************************************************************************
+     * This inner class defines the immutable buckets stored in the hash table.
+     */
+    private static final class Bucket
+    {
+        final int []    hash;
+        final Object [] key;
+        final Object [] value;
+
+        Bucket (int [] h, Object [] k, Object [] v)
+        {
+            hash  = h;
+            key   = k;
+            value = v;
+        } // constructor
+
+        /****************************************************************************
+         * Return the position of the key in this bucket or -1 if not found.
+         * @param h  the hash code of the key
+         * @param k  the key to find
+         */
+        int find (int h, Object k)
+        {
+            for (int j = 0; j < hash.length; j++) {
+                if (hash [j] == h && k.equals (key [j])) return j;
+            } // for
+            return -1;
+        } // find
+    } // Bucket inner class
+
+    /** An empty bucket, shared by all empty home buckets.
+     */
+    private static final Bucket EMPTY = new Bucket (new int [0], new Object [0], new Object [0]);
+
+    /** The directory of bucket segments, replaced by a larger copy as the table grows.
+     */
+    private volatile AtomicReferenceArray <AtomicReferenceArray <Bucket>> dir;
+
+    /** The hashing state: mod1 in the high word and split in the low word.
+     */
+    private volatile long state;
+
+    /** The lock stripes guarding the buckets.
+     */
+    private final ReentrantLock [] locks;
+
+    /** The lock serializing splits (a put that finds it taken skips the split).
+     */
+    private final ReentrantLock splitLock = new ReentrantLock ();
+
+    /** The number of key-value pairs stored in the hash table.
+     */
+    private final AtomicInteger nEntries = new AtomicInteger ();
+
+    /********************************************************************************
+     * Construct a thread-safe hash table that uses Linear Hashing.
+     */
+    public ConcurrentLinHashMap ()
+    {
+        dir   = new AtomicReferenceArray <> (1);
+        locks = new ReentrantLock [STRIPES];
+        for (int i = 0; i < STRIPES; i++) locks [i] = new ReentrantLock ();
+        for (int i = 0; i < INIT_SIZE; i++) setBucket (i, EMPTY);
+        state = (long) INIT_SIZE << 32;
+    } // constructor
+
+    /********************************************************************************
+     * Return a set view of the entries.  The view is weakly consistent: it reflects
+     * the buckets as they are visited and may see an entry twice while a concurrent
+     * split is moving it.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return nEntries.get (); }
+
+            @SuppressWarnings("unchecked")
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                List <Map.Entry <K, V>> list = new ArrayList <> ();
+                long s = state;
+                int  nb = mod1 (s) + split (s);
+                for (int i = 0; i < nb; i++) {
+                    Bucket b = bucket (i);
+                    for (int j = 0; j < b.hash.length; j++) {
+                        list.add (new AbstractMap.SimpleEntry <> ((K) b.key [j], (V) b.value [j]));
+                    } // for
+                } // for
+                return list.iterator ();
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up the value in the hash table without locking.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        int hash = hash (key);
+        for ( ; ; ) {
+            long s = state;
+            Bucket b = bucket (address (hash, s));
+            int j = b.find (hash, key);
+            if (j >= 0) return (V) b.value [j];
+            if (state == s) return null;                           // no split interfered
+        } // for
+    } // get
+
+    /********************************************************************************
+     * Put the key-value pair in the hash table, replacing the value if the key is
+     * already present.  Only the stripe of the key's bucket is locked.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        int hash = hash (key);
+        V   prev;
+        for ( ; ; ) {
+            long s = state;
+            int  i = address (hash, s);
+            ReentrantLock lock = locks [i & (STRIPES - 1)];
+            lock.lock ();
+            try {
+                if (state != s) continue;                         // a split moved the key's bucket
+                Bucket b = bucket (i);
+                int j = b.find (hash, key);
+                if (j >= 0) {
+                    prev = (V) b.value [j];
+                    Object [] v = b.value.clone ();
+                    v [j] = value;
+                    setBucket (i, new Bucket (b.hash, b.key, v));
+                    return prev;
+                } // if
+                setBucket (i, add (b, hash, key, value));
+                break;
+            } finally {
+                lock.unlock ();
+            } // try
+        } // for
+
+        if (overloaded (nEntries.incrementAndGet ()) && splitLock.tryLock ()) {
+            try {
+                while (overloaded (nEntries.get ())) split ();      // catch up on skipped splits
+            } finally {
+                splitLock.unlock ();
+            } // try
+        } // if
+        return null;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the hash table.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        int hash = hash (key);
+        for ( ; ; ) {
+            long s = state;
+            int  i = address (hash, s);
+            ReentrantLock lock = locks [i & (STRIPES - 1)];
+            lock.lock ();
+            try {
+                if (state != s) continue;
+                Bucket b = bucket (i);
+                int j = b.find (hash, key);
+                if (j < 0) return null;
+                int n = b.hash.length - 1;
+                int [] h = new int [n]; Object [] k = new Object [n], v = new Object [n];
+                System.arraycopy (b.hash, 0, h, 0, j);   System.arraycopy (b.hash, j + 1, h, j, n - j);
+                System.arraycopy (b.key, 0, k, 0, j);    System.arraycopy (b.key, j + 1, k, j, n - j);
+                System.arraycopy (b.value, 0, v, 0, j);  System.arraycopy (b.value, j + 1, v, j, n - j);
+                setBucket (i, (n == 0) ? EMPTY : new Bucket (h, k, v));
+                nEntries.decrementAndGet ();
+                return (V) b.value [j];
+            } finally {
+                lock.unlock ();
+            } // try
+        } // for
+    } // remove
+
+    /********************************************************************************
+     * Return whether n entries exceed the load factor threshold for the current
+     * number of home buckets.
+     * @param n  the number of entries
+     */
+    private boolean overloaded (int n)
+    {
+        long s = state;
+        return n > LOAD_FACTOR_THRESHOLD * SLOTS * (mod1 (s) + split (s));
+    } // overloaded
+
+    /********************************************************************************
+     * Split the bucket at position split into itself and its image (split + mod1).
+     * Called with splitLock held; locks only the stripes of the two buckets involved.
+     */
+    private void split ()
+    {
+        long s  = state;
+        int  m  = mod1 (s), sp = split (s);
+        int  im = sp + m;
+        ReentrantLock l1 = locks [sp & (STRIPES - 1)], l2 = locks [im & (STRIPES - 1)];
+        l1.lock ();
+        l2.lock ();
+        try {
+            Bucket b = bucket (sp);
+            Bucket stay = EMPTY, move = EMPTY;
+            for (int j = 0; j < b.hash.length; j++) {
+                if ((b.hash [j] & (2 * m - 1)) == sp) stay = add (stay, b.hash [j], b.key [j], b.value [j]);
+                else                                 move = add (move, b.hash [j], b.key [j], b.value [j]);
+            } // for
+
+            setBucket (im, move);                                  // 1. publish the image
+            state = (sp + 1 == m) ? (long) (2 * m) << 32           // 2. publish the new state
+                                  : ((long) m << 32) | (sp + 1);
+            setBucket (sp, stay);                                  // 3. drop the moved entries
+        } finally {
+            l2.unlock ();
+            l1.unlock ();
+        } // try
+    } // split
+
+    /********************************************************************************
+     * Return a copy of bucket b with the key-value pair appended.
+     * @param b      the bucket to copy
+     * @param hash   the hash code of the key
+     * @param key    the key to append
+     * @param value  the value to append
+     * @return  the new bucket
+     */
+    private static Bucket add (Bucket b, int hash, Object key, Object value)
+    {
+        int n = b.hash.length;
+        int [] h = Arrays.copyOf (b.hash, n + 1);
+        Object [] k = Arrays.copyOf (b.key, n + 1), v = Arrays.copyOf (b.value, n + 1);
+        h [n] = hash; k [n] = key; v [n] = value;
+        return new Bucket (h, k, v);
+    } // add
+
+    /********************************************************************************
+     * Return the number of key-value pairs in the hash table.
+     * @return  the size of the hash table
+     */
+    public int size ()
+    {
+        return nEntries.get ();
+    } // size
+
+    /********************************************************************************
+     * Print the hash table.
+     */
+    public void print ()
+    {
+        out.println ("Hash Table (Concurrent Linear Hashing)");
+        out.println ("-------------------------------------------");
+        long s = state;
+        for (int i = 0; i < mod1 (s) + split (s); i++) {
+            Bucket b = bucket (i);
+            out.println ("Bucket " + i + ": " + Arrays.toString (b.key));
+        } // for
+        out.println ("-------------------------------------------");
+    } // print
+
+    /** Return the bucket at position i.
+     */
+    private Bucket bucket (int i)
+    {
+        return dir.get (i >>> SEG_BITS).get (i & ((1 << SEG_BITS) - 1));
+    } // bucket
+
+    /** Replace the bucket at position i, allocating its segment when the table first
+     *  grows into it and doubling the directory when the segment lies past its end
+     *  (only the constructor and split create new buckets).  The segments are shared
+     *  by the old and new directories, so a concurrent put into an existing bucket
+     *  through the old one is not lost; the new state is published after the new
+     *  directory, so readers that see the state also see the directory.
+     */
+    private void setBucket (int i, Bucket b)
+    {
+        int seg = i >>> SEG_BITS;
+        AtomicReferenceArray <AtomicReferenceArray <Bucket>> d = dir;
+        if (seg >= d.length ()) {
+            AtomicReferenceArray <AtomicReferenceArray <Bucket>> bigger = new AtomicReferenceArray <> (Math.max (2 * d.length (), seg + 1));
+            for (int j = 0; j < d.length (); j++) bigger.set (j, d.get (j));
+            dir = d = bigger;
+        } // if
+        if (d.get (seg) == null) d.set (seg, new AtomicReferenceArray <> (1 << SEG_BITS));
+        d.get (seg).set (i & ((1 << SEG_BITS) - 1), b);
+    } // setBucket
+
+    /** Extract mod1 from the hashing state.
+     */
+    private static int mod1 (long s)
+    {
+        return (int) (s >>> 32);
+    } // mod1
+
+    /** Extract split from the hashing state.
+     */
+    private static int split (long s)
+    {
+        return (int) s;
+    } // split
+
+    /********************************************************************************
+     * Return the bucket for a hash code under the given hashing state, using the high
+     * resolution hash function for buckets that have already been split this round.
+     * mod1 is a power of 2, so the hash functions are masks.
+     * @param hash  the hash code of the key
+     * @param s     the hashing state
+     * @return  the location of the bucket containing the key-value pair
+     */
+    private static int address (int hash, long s)
+    {
+        int m = mod1 (s);
+        int i = hash & (m - 1);
+        return (i < split (s)) ? hash & (2 * m - 1) : i;
+    } // address
+
+    /********************************************************************************
+     * Compute the hash code used to place the key, mixing the bits of hashCode.
+     * @param key  the key to hash
+     * @return  the mixed hash code
+     */
+    private static int hash (Object key)
+    {
+        int h = key.hashCode () * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    } // hash
+
+    /********************************************************************************
+     * The main method used for testing: several threads insert disjoint keys while
+     * the others look them up concurrently.
+     * @param  the command-line arguments (args [0] gives number of threads)
+     */
+    public static void main (String [] args) throws Exception
+    {
+        int nThreads = (args.length == 1) ? Integer.valueOf (args [0]) : 4;
+        int perThread = 200000;
+        ConcurrentLinHashMap <Integer, Integer> ht = new ConcurrentLinHashMap <> ();
+        AtomicInteger wrong = new AtomicInteger ();
+
+        ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+        long start = System.nanoTime ();
+        List <Future <?>> done = new ArrayList <> ();
+        for (int t = 0; t < nThreads; t++) {
+            final int base = t * perThread;
+            done.add (pool.submit (() -> {
+                for (int i = base; i < base + perThread; i++) {
+                    ht.put (i, -i);
+                    Integer v = ht.get (i);
+                    if (v == null || v != -i) wrong.incrementAndGet ();
+                } // for
+            }));
+        } // for
+        for (Future <?> f : done) f.get ();
+        pool.shutdown ();
+        long elapsed = System.nanoTime () - start;
+
+        for (int i = 0; i < nThreads * perThread; i++) {
+            Integer v = ht.get (i);
+            if (v == null || v != -i) wrong.incrementAndGet ();
+        } // for
+        long s = ht.state;
+        out.println ("threads = " + nThreads + ", size = " + ht.size () + ", buckets = " + (mod1 (s) + split (s))
+                     + ", wrong = " + wrong.get () + ", ms = " + elapsed / 1000000);
+    } // main
+
+} // ConcurrentLinHashMap class
@@ -0,0 +1,785 @@
+/************************************************************************************
+ * @file DiskLinHashMap.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/************************************************************************************
+ * This class provides persistent hash maps that use the Linear Hashing algorithm
+ * with buckets stored as fixed-size pages in files, so an index may be larger than
+ * the heap.  Home bucket i is page i+1 of the primary file (page 0 is the header);
+ * overflow buckets are pages of a separate overflow file, chained through their
+ * page headers and recycled through a free list.  A new key is appended to the tail
+ * page of its chain, so an insert dirties that one page, plus a new overflow page
+ * when the tail is full.  A split reads the chain of the bucket being split and
+ * rewrites it as two chains, the bucket and its image.  The header (hashing state
+ * and counters) is written on a split and whenever the map is checkpointed,
+ * serialized or closed, so the map can be reopened later without a rebuild.  Pages
+ * are read and written through the shared BufferPool, which writes dirty pages back
+ * when they are replaced, when the map is serialized or when it is closed.
+ * <p>
+ * A checkpoint writes every page and stamps the header, and the first change after
+ * it clears the stamp on disk before any page is written.  An owner that records
+ * the stamp (e.g., a saved Table) can thus tell on reopening whether the files still
+ * hold exactly the map it saved.
+ * <p>
+ * Keys are KeyTypes stored in the BinaryKey encoding, which carries no type tags, so
+ * the map is given the domains of the key attributes to decode them when iterating;
+ * look ups encode the key once and compare and hash its bytes.  Values are tuples
+ * stored as tagged binary values.
+ * The files are created lazily on the first put, so tables that never insert into
+ * their index (e.g., the results of relational operators) leave no files behind.
+ */
+public class DiskLinHashMap
+       extends AbstractMap <KeyType, Comparable []>
+       implements Serializable, Map <KeyType, Comparable []>
+{
+    /** The number of bytes per page (bucket).
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    /** The number of bytes in a page header: number of entries, bytes used, next page.
+     */
+    private static final int PAGE_HEADER = 12;
+
+    /** The threshold for the load factor (bytes used / bytes in home buckets).
+     */
+    private static final double LOAD_FACTOR_THRESHOLD = 0.75;
+
+    /** The initial number of home buckets (a power of 2).
+     */
+    private static final int INIT_SIZE = 8;
+
+    /** Magic number identifying the primary file.
+     */
+    private static final int MAGIC = 0x4c485032;                    // "LHP2"
+
+    /** The path (without extension) of the files holding this map.
+     */
+    private final String path;
+
+    /** The domains of the key attributes, for decoding the keys.
+     */
+    private final Class [] keyDomain;
+
+    /** The primary (home bucket) and overflow files, open once the map is used.
+     */
+    private transient FileChannel prim, ovfl;
+
+    /** Whether existing files are discarded when the map is first opened.
+     */
+    private boolean fresh;
+
+    /** The modulus for low resolution hashing.
+     */
+    private int mod1;
+
+    /** The index of the next bucket to split.
+     */
+    private int split;
+
+    /** The number of key-value pairs stored in the map.
+     */
+    private int nEntries;
+
+    /** The number of bytes of entries stored in the map.
+     */
+    private long nBytes;
+
+    /** The number of pages in the overflow file.
+     */
+    private int nOverflow;
+
+    /** The first page of the overflow free list (-1 if empty).
+     */
+    private int freeHead;
+
+    /** The stamp of the last checkpoint, or 0 if the map has changed since.
+     */
+    private long stamp;
+
+    /** The buffer pool holding the pages of both files.
+     */
+    private transient BufferPool pool;
+
+    /** Counter for the number of pages read (for performance testing).
+     */
+    private transient int count = 0;
+
+    /********************************************************************************
+     * This inner class holds an encoded entry while a bucket chain is rewritten.
+     */
+    private static class Entry
+    {
+        final int    hash;
+        final byte [] key, value;
+
+        Entry (int h, byte [] k, byte [] v)
+        {
+            hash  = h;
+            key   = k;
+            value = v;
+        } // constructor
+
+        int size () { return 8 + key.length + value.length; }
+    } // Entry inner class
+
+    /********************************************************************************
+     * Construct a disk-based hash table that uses Linear Hashing.
+     * @param _path       the path of the files (without extension), e.g., store/movie
+     * @param _keyDomain  the domains of the key attributes
+     * @param _fresh      whether to start empty (true) or reopen the existing files (false)
+     */
+    public DiskLinHashMap (String _path, Class [] _keyDomain, boolean _fresh)
+    {
+        path      = _path;
+        keyDomain = _keyDomain;
+        fresh     = _fresh;
+    } // constructor
+
+    /********************************************************************************
+     * Open the files, either creating a new empty map or reading the header of an
+     * existing one.
+     */
+    private void open ()
+    {
+        if (prim != null) return;
+        try {
+            File pf = new File (path + ".lhp"), of = new File (path + ".lho");
+            if (pf.getParentFile () != null) pf.getParentFile ().mkdirs ();
+            boolean exists = pf.exists () && pf.length () >= PAGE_SIZE && ! fresh;
+            prim = new RandomAccessFile (pf, "rw").getChannel ();
+            ovfl = new RandomAccessFile (of, "rw").getChannel ();
+            pool = BufferPool.shared ();
+            if (exists) {
+                ByteBuffer h = read (prim, 0, false);
+                int magic = h.getInt ();
+                mod1 = h.getInt (); split = h.getInt (); nEntries = h.getInt ();
+                nBytes = h.getLong (); nOverflow = h.getInt (); freeHead = h.getInt (); stamp = h.getLong ();
+                pool.unpin (prim, 0, false);
+                if (magic != MAGIC) throw new IOException ("not a linear hash file: " + pf);
+            } else {
+                prim.truncate (0); ovfl.truncate (0);
+                mod1 = INIT_SIZE; split = 0; nEntries = 0; nBytes = 0; nOverflow = 0; freeHead = -1; stamp = 0;
+                for (int i = 0; i < mod1; i++) writeChain (i, new ArrayList <> (), new ArrayList <> ());
+                writeHeader ();
+            } // if
+            fresh = false;
+        } catch (IOException ex) {
+            if (pool != null) pool.discard (prim);                  // leave the map closed
+            try {
+                if (prim != null) prim.close ();
+                if (ovfl != null) ovfl.close ();
+            } catch (IOException ex2) { /* already failing */ }
+            prim = ovfl = null;
+            throw new UncheckedIOException ("DiskLinHashMap.open: " + path, ex);
+        } // try
+    } // open
+
+    /********************************************************************************
+     * Write the dirty pages back before the map is serialized (e.g., with its Table),
+     * so the files are complete when the map is reopened.
+     */
+    private void writeObject (ObjectOutputStream oos) throws IOException
+    {
+        if (prim != null) { writeHeader (); pool.flush (prim); pool.flush (ovfl); }
+        oos.defaultWriteObject ();
+    } // writeObject
+
+    /********************************************************************************
+     * Reopen the files after the map is deserialized (e.g., with its Table).
+     */
+    private void readObject (ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject ();
+        fresh = false;
+    } // readObject
+
+    /********************************************************************************
+     * Return a set view of the entries, read bucket by bucket as it is iterated.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+            public int size () { open (); return nEntries; }
+
+            public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+            {
+                open ();
+                return new Iterator <Map.Entry <KeyType, Comparable []>> () {
+                    int i = 0;
+                    Iterator <Entry> it = Collections.emptyIterator ();
+
+                    public boolean hasNext ()
+                    {
+                        while (! it.hasNext () && i < mod1 + split) it = readChain (i++, null, true).iterator ();
+                        return it.hasNext ();
+                    } // hasNext
+
+                    public Map.Entry <KeyType, Comparable []> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Entry e = it.next ();
+                        return new AbstractMap.SimpleEntry <> (new BinaryKey (e.key).toKeyType (keyDomain), decode (e.value));
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up the value by reading the pages of its bucket chain.
+     * Keys are matched on their encoded bytes, so only the value found is decoded.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    public Comparable [] get (Object key)
+    {
+        if (! (key instanceof KeyType)) return null;
+        open ();
+        BinaryKey bk = BinaryKey.of ((KeyType) key);
+        byte []   k  = bk.bytes ();
+        int       h  = bk.hashCode ();
+        FileChannel ch = prim;
+        int         p  = address (h) + 1;
+        for ( ; ; ) {
+            ByteBuffer page = read (ch, p, false);
+            int n = page.getInt (0), next = page.getInt (8);
+            byte [] v = null;
+            page.position (PAGE_HEADER);
+            for (int j = 0; j < n && v == null; j++) {
+                int eh = page.getInt (), kl = page.getShort () & 0xffff, vl = page.getShort () & 0xffff;
+                if (eh == h && kl == k.length && matches (page, k)) {
+                    v = new byte [vl];
+                    page.position (page.position () + kl).get (v);
+                } else {
+                    page.position (page.position () + kl + vl);
+                } // if
+            } // for
+            pool.unpin (ch, p, false);
+            if (v != null) return decode (v);
+            if (next < 0) return null;
+            ch = ovfl;
+            p  = next;
+        } // for
+    } // get
+
+    /********************************************************************************
+     * Put the key-value pair in the map, replacing the value if the key is already
+     * present.  The chain is read page by page as in get.  A new key is appended to
+     * the tail page, or to a new overflow page linked on when the tail is full, and
+     * a value of the same size is overwritten in place, so only that page is dirtied.
+     * A value of another size makes the chain be rewritten.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    public Comparable [] put (KeyType key, Comparable [] value)
+    {
+        open ();
+        BinaryKey bk = BinaryKey.of (key);
+        byte []   k  = bk.bytes (), v = encode (value);
+        Entry     e  = new Entry (bk.hashCode (), k, v);
+        if (e.size () > PAGE_SIZE - PAGE_HEADER) throw new IllegalArgumentException ("entry too large for a page: " + key);
+        unstamp ();
+
+        int i = address (e.hash);
+        FileChannel ch = prim;
+        int         p  = i + 1;
+        for ( ; ; ) {
+            ByteBuffer page = read (ch, p, false);
+            int n = page.getInt (0), used = page.getInt (4), next = page.getInt (8);
+            page.position (PAGE_HEADER);
+            for (int j = 0; j < n; j++) {
+                int eh = page.getInt (), kl = page.getShort () & 0xffff, vl = page.getShort () & 0xffff;
+                if (eh == e.hash && kl == k.length && matches (page, k)) {
+                    byte [] old = new byte [vl];
+                    int     at  = page.position () + kl;
+                    page.position (at).get (old);
+                    if (vl == v.length) page.position (at).put (v);        // same size: overwrite in place
+                    pool.unpin (ch, p, vl == v.length);
+                    if (vl != v.length) { replace (i, e); splitIfFull (); }
+                    return decode (old);
+                } // if
+                page.position (page.position () + kl + vl);
+            } // for
+            if (next < 0) {                                          // p is the tail page
+                if (used + e.size () <= PAGE_SIZE) {
+                    put (page.position (used), e);
+                } else {
+                    int q = allocate ();
+                    page.putInt (8, q);
+                    write (ovfl, q, put (newPage (), e));
+                } // if
+                pool.unpin (ch, p, true);
+                break;
+            } // if
+            pool.unpin (ch, p, false);
+            ch = ovfl;
+            p  = next;
+        } // for
+
+        nEntries++;
+        nBytes += e.size ();
+        splitIfFull ();
+        return null;
+    } // put
+
+    /********************************************************************************
+     * Split the next bucket if the load factor is exceeded, then write the header.
+     */
+    private void splitIfFull ()
+    {
+        if (nBytes > LOAD_FACTOR_THRESHOLD * (PAGE_SIZE - PAGE_HEADER) * (mod1 + split)) {
+            split ();
+            writeHeader ();
+        } // if
+    } // splitIfFull
+
+    /********************************************************************************
+     * Replace the entry with the same key as e in the chain for home bucket i by e,
+     * rewriting the chain.
+     * @param i  the home bucket
+     * @param e  the new entry
+     */
+    private void replace (int i, Entry e)
+    {
+        List <Integer> pages = new ArrayList <> ();
+        List <Entry>   chain = readChain (i, pages);
+        for (int j = 0; j < chain.size (); j++) {
+            Entry c = chain.get (j);
+            if (c.hash == e.hash && Arrays.equals (c.key, e.key)) {
+                nBytes += e.size () - c.size ();
+                chain.set (j, e);
+            } // if
+        } // for
+        writeChain (i, chain, pages);
+    } // replace
+
+    /********************************************************************************
+     * Write the entry at the buffer's position, which must be the end of the page's
+     * entries, and count it in the page header.
+     * @param b  the buffer (a page) to write to
+     * @param e  the entry
+     * @return  the buffer
+     */
+    private static ByteBuffer put (ByteBuffer b, Entry e)
+    {
+        b.putInt (e.hash).putShort ((short) e.key.length).putShort ((short) e.value.length);
+        b.put (e.key).put (e.value);
+        b.putInt (0, b.getInt (0) + 1).putInt (4, b.position ());
+        return b;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the map, rewriting its bucket chain and
+     * freeing any overflow page that is no longer needed.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    public Comparable [] remove (Object key)
+    {
+        if (! (key instanceof KeyType)) return null;
+        open ();
+        BinaryKey bk = BinaryKey.of ((KeyType) key);
+        byte []   k  = bk.bytes ();
+        int       h  = bk.hashCode ();
+        int       i  = address (h);
+        List <Integer> pages = new ArrayList <> ();
+        List <Entry>   chain = readChain (i, pages);
+        for (int j = 0; j < chain.size (); j++) {
+            Entry c = chain.get (j);
+            if (c.hash == h && Arrays.equals (c.key, k)) {
+                unstamp ();
+                chain.remove (j);
+                nEntries--;
+                nBytes -= c.size ();
+                writeChain (i, chain, pages);
+                return decode (c.value);
+            } // if
+        } // for
+        return null;
+    } // remove
+
+    /********************************************************************************
+     * Write every page and force the files, then stamp the header with a new
+     * (non-zero) stamp, which stays on disk until the next change.
+     * @return  the stamp identifying the map as it is now
+     */
+    public long checkpoint ()
+    {
+        open ();
+        try {
+            pool.flush (prim); pool.flush (ovfl);
+            prim.force (true); ovfl.force (true);                   // the pages are durable before the stamp
+            stamp = new Random ().nextLong () | 1;
+            writeHeader ();
+            pool.flush (prim);
+            prim.force (true);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("DiskLinHashMap.checkpoint: " + path, ex);
+        } // try
+        return stamp;
+    } // checkpoint
+
+    /********************************************************************************
+     * Return the stamp of the last checkpoint if the map has not changed since
+     * (including before it was reopened), otherwise 0.  Files that cannot be read
+     * (e.g., left by a crash before the header was written) have no stamp.
+     * @return  the stamp or 0
+     */
+    public long stamp ()
+    {
+        try {
+            open ();
+        } catch (UncheckedIOException ex) {
+            return 0;
+        } // try
+        return stamp;
+    } // stamp
+
+    /********************************************************************************
+     * Clear the stamp on disk before the first change after a checkpoint.
+     */
+    private void unstamp ()
+    {
+        if (stamp == 0) return;
+        stamp = 0;
+        writeHeader ();
+        try {
+            pool.flush (prim);                              // only the header is dirty
+            prim.force (false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("DiskLinHashMap.unstamp: " + path, ex);
+        } // try
+    } // unstamp
+
+    /********************************************************************************
+     * Remove all the key-value pairs, truncating the files.
+     */
+    public void clear ()
+    {
+        close ();
+        fresh = true;
+    } // clear
+
+    /********************************************************************************
+     * Split the bucket at position split, rewriting its chain as the chains of the
+     * bucket and its image (split + mod1), and adjust the low and high resolution
+     * hash functions.  The caller writes the header.
+     */
+    private void split ()
+    {
+        List <Integer> pages = new ArrayList <> ();
+        List <Entry>   chain = readChain (split, pages);
+        List <Entry> stay = new ArrayList <> (), move = new ArrayList <> ();
+        for (Entry e : chain) {
+            if ((e.hash & (2 * mod1 - 1)) == split) stay.add (e); else move.add (e);
+        } // for
+        writeChain (split, stay, pages);
+        writeChain (split + mod1, move, new ArrayList <> ());
+        if (++split == mod1) {
+            mod1  = 2 * mod1;
+            split = 0;
+        } // if
+    } // split
+
+    /********************************************************************************
+     * Read the entries of the chain for home bucket i.
+     * @param i      the home bucket
+     * @param pages  if not null, receives the overflow page numbers of the chain
+     * @return  the list of entries in the chain
+     */
+    private List <Entry> readChain (int i, List <Integer> pages)
+    {
+        return readChain (i, pages, false);
+    } // readChain
+
+    /********************************************************************************
+     * Read the entries of the chain for home bucket i, as part of a scan over all
+     * buckets if scan is true.
+     * @param i      the home bucket
+     * @param pages  if not null, receives the overflow page numbers of the chain
+     * @param scan   whether the chain is read by a sequential scan
+     * @return  the list of entries in the chain
+     */
+    private List <Entry> readChain (int i, List <Integer> pages, boolean scan)
+    {
+        List <Entry> list = new ArrayList <> ();
+        FileChannel  ch   = prim;
+        int          p    = i + 1;
+        for ( ; ; ) {
+            ByteBuffer page = read (ch, p, scan);
+            int n = page.getInt (0), next = page.getInt (8);
+            page.position (PAGE_HEADER);
+            for (int j = 0; j < n; j++) {
+                int h = page.getInt (), kl = page.getShort () & 0xffff, vl = page.getShort () & 0xffff;
+                byte [] k = new byte [kl], v = new byte [vl];
+                page.get (k).get (v);
+                list.add (new Entry (h, k, v));
+            } // for
+            pool.unpin (ch, p, false);
+            if (next < 0) return list;
+            if (pages != null) pages.add (next);
+            ch = ovfl;
+            p  = next;
+        } // for
+    } // readChain
+
+    /********************************************************************************
+     * Write the entries as the chain for home bucket i, reusing the overflow pages of
+     * the existing chain, allocating more if needed and freeing the rest.
+     * @param i        the home bucket
+     * @param entries  the entries to write
+     * @param pages    the overflow pages of the existing chain (empty for a new bucket)
+     */
+    private void writeChain (int i, List <Entry> entries, List <Integer> pages)
+    {
+        List <ByteBuffer> bufs = new ArrayList <> ();
+        ByteBuffer buf = newPage ();
+        for (Entry e : entries) {
+            if (buf.position () + e.size () > PAGE_SIZE) { bufs.add (buf); buf = newPage (); }
+            put (buf, e);
+        } // for
+        bufs.add (buf);
+
+        int [] pageNo = new int [bufs.size ()];                       // pageNo [0] is the home page
+        for (int j = 1; j < pageNo.length; j++) pageNo [j] = (j - 1 < pages.size ()) ? pages.get (j - 1) : allocate ();
+        for (int j = pageNo.length - 1; j < pages.size (); j++) release (pages.get (j));
+        for (int j = 0; j < pageNo.length; j++) {
+            ByteBuffer b = bufs.get (j);
+            b.putInt (8, (j + 1 < pageNo.length) ? pageNo [j + 1] : -1);
+            if (j == 0) write (prim, i + 1, b);
+            else        write (ovfl, pageNo [j], b);
+        } // for
+    } // writeChain
+
+    /********************************************************************************
+     * Return an empty page buffer positioned after the page header.
+     */
+    private static ByteBuffer newPage ()
+    {
+        ByteBuffer b = ByteBuffer.allocate (PAGE_SIZE);
+        b.putInt (0, 0).putInt (4, PAGE_HEADER).putInt (8, -1);
+        b.position (PAGE_HEADER);
+        return b;
+    } // newPage
+
+    /********************************************************************************
+     * Allocate an overflow page, taking it from the free list when possible.
+     * @return  the overflow page number
+     */
+    private int allocate ()
+    {
+        if (freeHead < 0) return nOverflow++;
+        int p = freeHead;
+        freeHead = read (ovfl, p, false).getInt (8);
+        pool.unpin (ovfl, p, false);
+        return p;
+    } // allocate
+
+    /********************************************************************************
+     * Release an overflow page onto the free list.
+     * @param p  the overflow page number
+     */
+    private void release (int p)
+    {
+        ByteBuffer b = newPage ();
+        b.putInt (8, freeHead);
+        write (ovfl, p, b);
+        freeHead = p;
+    } // release
+
+    /********************************************************************************
+     * Write the header (hashing state and counters) to page 0 of the primary file.
+     */
+    private void writeHeader ()
+    {
+        ByteBuffer h = pool.pin (prim, 0, PAGE_SIZE);
+        h.putInt (MAGIC).putInt (mod1).putInt (split).putInt (nEntries)
+         .putLong (nBytes).putInt (nOverflow).putInt (freeHead).putLong (stamp);
+        pool.unpin (prim, 0, true);
+    } // writeHeader
+
+    /********************************************************************************
+     * Pin page p of the given file in the buffer pool; the caller unpins it.
+     * @param ch    the file channel
+     * @param p     the page number
+     * @param scan  whether the page is read by a sequential scan
+     * @return  the page, positioned at 0
+     */
+    private ByteBuffer read (FileChannel ch, int p, boolean scan)
+    {
+        count++;
+        return pool.pin (ch, p, PAGE_SIZE, scan);
+    } // read
+
+    /********************************************************************************
+     * Write the buffer as page p of the given file (the pool writes it back later).
+     * @param ch  the file channel
+     * @param p   the page number
+     * @param b   the page contents
+     */
+    private void write (FileChannel ch, int p, ByteBuffer b)
+    {
+        pool.pinNew (ch, p, PAGE_SIZE).put (b.duplicate ().clear ());
+        pool.unpin (ch, p, true);
+    } // write
+
+    /********************************************************************************
+     * Return whether the bytes at the page's position equal k (position unchanged).
+     */
+    private static boolean matches (ByteBuffer page, byte [] k)
+    {
+        int p = page.position ();
+        for (int j = 0; j < k.length; j++) if (page.get (p + j) != k [j]) return false;
+        return true;
+    } // matches
+
+    /********************************************************************************
+     * Return the home bucket for the hash code of an encoded key.  mod1 is a power
+     * of 2, so the hash functions are masks.
+     * @param hash  the hash code
+     * @return  the location of the bucket chain for the key
+     */
+    private int address (int hash)
+    {
+        int i = hash & (mod1 - 1);
+        return (i < split) ? hash & (2 * mod1 - 1) : i;
+    } // address
+
+    /********************************************************************************
+     * Encode a tuple (array of attribute values), each value preceded by a type tag.
+     * @param vals  the values to encode
+     * @return  the encoded bytes
+     */
+    private static byte [] encode (Comparable [] vals)
+    {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream ();
+            DataOutputStream      dos = new DataOutputStream (bos);
+            dos.writeShort (vals.length);
+            for (Comparable v : vals) {
+                if      (v instanceof Integer)   { dos.writeByte ('I'); dos.writeInt ((Integer) v); }
+                else if (v instanceof String)    { dos.writeByte ('T'); dos.writeUTF ((String) v); }
+                else if (v instanceof Long)      { dos.writeByte ('L'); dos.writeLong ((Long) v); }
+                else if (v instanceof Double)    { dos.writeByte ('D'); dos.writeDouble ((Double) v); }
+                else if (v instanceof Float)     { dos.writeByte ('F'); dos.writeFloat ((Float) v); }
+                else if (v instanceof Short)     { dos.writeByte ('S'); dos.writeShort ((Short) v); }
+                else if (v instanceof Byte)      { dos.writeByte ('B'); dos.writeByte ((Byte) v); }
+                else if (v instanceof Character) { dos.writeByte ('C'); dos.writeChar ((Character) v); }
+                else throw new IllegalArgumentException ("DiskLinHashMap: unsupported domain " + v.getClass ());
+            } // for
+            return bos.toByteArray ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // encode
+
+    /********************************************************************************
+     * Decode an array of attribute values encoded by encode.
+     * @param b  the encoded bytes
+     * @return  the values
+     */
+    private static Comparable [] decode (byte [] b)
+    {
+        try {
+            DataInputStream dis = new DataInputStream (new ByteArrayInputStream (b));
+            Comparable [] vals = new Comparable [dis.readShort ()];
+            for (int j = 0; j < vals.length; j++) {
+                switch (dis.readByte ()) {
+                case 'I': vals [j] = dis.readInt ();    break;
+                case 'T': vals [j] = dis.readUTF ();    break;
+                case 'L': vals [j] = dis.readLong ();   break;
+                case 'D': vals [j] = dis.readDouble (); break;
+                case 'F': vals [j] = dis.readFloat ();  break;
+                case 'S': vals [j] = dis.readShort ();  break;
+                case 'B': vals [j] = dis.readByte ();   break;
+                case 'C': vals [j] = dis.readChar ();   break;
+                default:  throw new IllegalStateException ("DiskLinHashMap: corrupt entry");
+                } // switch
+            } // for
+            return vals;
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // decode
+
+    /********************************************************************************
+     * Return the number of key-value pairs in the map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        open ();
+        return nEntries;
+    } // size
+
+    /********************************************************************************
+     * Write back the dirty pages, force them to disk and close the files.
+     */
+    public void close ()
+    {
+        if (prim == null) return;
+        try {
+            writeHeader ();
+            pool.flush (prim);   pool.flush (ovfl);
+            pool.discard (prim); pool.discard (ovfl);
+            prim.force (true); ovfl.force (true);
+            prim.close ();     ovfl.close ();
+        } catch (IOException ex) {
+            out.println ("DiskLinHashMap.close: unable to close - " + ex);
+        } // try
+        prim = ovfl = null;
+    } // close
+
+    /********************************************************************************
+     * The main method used for testing: fill a map, close it, reopen it and check
+     * that every key is still found.
+     * @param  the command-line arguments (args [0] gives number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = 20000;
+        if (args.length == 1) totalKeys = Integer.valueOf (args [0]);
+        String path = "store" + File.separator + "DiskLinHashMapTest";
+        Class [] dom = { Integer.class };
+
+        DiskLinHashMap ht = new DiskLinHashMap (path, dom, true);
+        for (int i = 0; i < totalKeys; i++) ht.put (new KeyType (i), new Comparable [] { i, "name" + i, i * 1.5 });
+        for (int i = 0; i < totalKeys; i += 2) ht.remove (new KeyType (i));
+        out.println ("buckets = " + (ht.mod1 + ht.split) + ", overflow pages = " + ht.nOverflow);
+        ht.close ();
+
+        DiskLinHashMap re = new DiskLinHashMap (path, dom, false);
+        int wrong = 0;
+        for (int i = 0; i < totalKeys; i++) {
+            Comparable [] v = re.get (new KeyType (i));
+            if ((i % 2 == 0) ? v != null : v == null || ! v [1].equals ("name" + i)) wrong++;
+        } // for
+        for (Map.Entry <KeyType, Comparable []> e : re.entrySet ()) if (! e.getKey ().equals (new KeyType (e.getValue () [0]))) wrong++;
+        out.println ("reopened size = " + re.size () + ", wrong = " + wrong
+                     + ", entrySet ().size () = " + re.entrySet ().size ());
+        out.println ("Average number of pages read per get = " + re.count / (double) totalKeys);
+        out.println (BufferPool.shared ());
+        long st = re.checkpoint ();
+        re.close ();
+        re = new DiskLinHashMap (path, dom, false);
+        boolean kept = re.stamp () == st;
+        re.put (new KeyType (0), new Comparable [] { 0, "name0", 0.0 });
+        re.close ();
+        re = new DiskLinHashMap (path, dom, false);
+        out.println ("stamp kept after reopening = " + kept + ", cleared by a change = " + (re.stamp () == 0));
+        re.close ();
+        new File (path + ".lhp").delete ();
+        new File (path + ".lho").delete ();
+    } // main
+
+} // DiskLinHashMap class
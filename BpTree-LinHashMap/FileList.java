@@ -5,95 +5,524 @@
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import static java.lang.System.out;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /*******************************************************************************
  * This class allows data tuples/tuples (e.g., those making up a relational table)
  * to be stored in a random access file.  This implementation requires that each
  * tuple be packed into a fixed length byte array.
+ * <p>
+ * Records are grouped into pages of PAGE_SIZE bytes (a record never spans pages).
+ * Added tuples are packed into an in-memory tail page that is handed to the
+ * shared BufferPool once it is full.  Reads pin whole pages in the pool, so a scan
+ * reads each page once; pages read in sequence are pinned as scan pages, so a
+ * large scan does not displace other pages in the pool.  Updated pages are written
+ * back by the pool.  Iterators and streams over READ_AHEAD_PAGES or more full pages
+ * read them through a ReadAhead instead, so the scan overlaps reading the next
+ * pages with processing the current one.  A scan may be given a test on some
+ * columns (e.g., a join's Bloom filter), in which case only those columns are
+ * decoded from the records that fail it.  The file is opened on first use
+ * and the list reopens an existing file after deserialization.
+ * <p>
+ * In mapped mode the file is instead memory-mapped in segments of up to
+ * SEGMENT_SIZE bytes; a segment's mapping is enlarged (remapped) as the file
+ * grows.  Records are packed and unpacked directly in the mapped buffers, so
+ * tuples are fetched by position without read calls or intermediate copies, and
+ * scans run at page cache speed.  Record i is at byte i * recordSize in either mode.
  */
 public class FileList
        extends AbstractList <Comparable []>
-       implements List <Comparable []>, RandomAccess
+       implements List <Comparable []>, RandomAccess, Serializable
 {
     /** File extension for data files.
      */
     private static final String EXT = ".dat";
 
+    /** The number of bytes per page (records never span pages).
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    /** The maximum number of bytes mapped by one segment (mapped mode).
+     */
+    private static final int SEGMENT_SIZE = 1 << 26;
+
+    /** The initial number of bytes mapped for a segment (mapped mode).
+     */
+    private static final int MIN_MAP = 1 << 20;
+
+    /** The minimum number of full pages a scan must cover to read them ahead.
+     */
+    private static final int READ_AHEAD_PAGES = 16;
+
     /** The random access file that holds the tuples.
      */
-    private RandomAccessFile file;
+    private transient RandomAccessFile file;
+
+    /** The channel of the file, used for positional page reads and writes.
+     */
+    private transient FileChannel channel;
 
     /** The name of table.
      */
-    private final String tableName;
+    private String tableName;
+
+    /** The codec packing tuples into records.
+     */
+    private final TupleCodec codec;
 
     /** The number bytes required to store a "packed tuple"/record.
      */
     private final int recordSize;
 
+    /** The number of records per page.
+     */
+    private final int perPage;
+
+    /** The number of records per segment (mapped mode).
+     */
+    private final int perSegment;
+
+    /** Whether the file is memory-mapped rather than read and written by pages.
+     */
+    private final boolean mapped;
+
     /** Counter for the number of tuples in this list.
      */
     private int nRecords = 0;
 
+    /** Whether an existing file is discarded when the list is first opened.
+     */
+    private boolean fresh;
+
+    /** The write buffer: the last, partially filled page.
+     */
+    private transient ByteBuffer tail;
+
+    /** The buffer pool holding the full pages (not used in mapped mode).
+     */
+    private transient BufferPool pool;
+
+    /** The page last read, to recognize sequential scans.
+     */
+    private transient int lastPage = -2;
+
+    /** The mapped segments (mapped mode); the mapping of a segment may be partial.
+     */
+    private transient List <MappedByteBuffer> segs;
+
+    /** Whether nRecords was restored by deserialization (rather than derived from the
+     *  file length, which in mapped mode may include unused mapped space).
+     */
+    private transient boolean restored;
+
+    /***************************************************************************
+     * Construct a FileList, starting with an empty file.
+     * @param _tableName  the name of the table (the path of the file without extension)
+     * @param _codec      the codec packing tuples of the table's schema
+     */
+    public FileList (String _tableName, TupleCodec _codec)
+    {
+        this (_tableName, _codec, true);
+    } // constructor
+
     /***************************************************************************
      * Construct a FileList.
-     * @param _tableName   the name of the table
-     * @param _recordSize  the size of tuple in bytes.
+     * @param _tableName  the name of the table (the path of the file without extension)
+     * @param _codec      the codec packing tuples of the table's schema
+     * @param _fresh      whether to start empty (true) or reopen the existing file (false)
      */
-    public FileList (String _tableName, int _recordSize)
+    public FileList (String _tableName, TupleCodec _codec, boolean _fresh)
+    {
+        this (_tableName, _codec, _fresh, false);
+    } // constructor
+
+    /***************************************************************************
+     * Construct a FileList, optionally memory-mapped.
+     * @param _tableName  the name of the table (the path of the file without extension)
+     * @param _codec      the codec packing tuples of the table's schema
+     * @param _fresh      whether to start empty (true) or reopen the existing file (false)
+     * @param _mapped     whether to memory-map the file
+     */
+    public FileList (String _tableName, TupleCodec _codec, boolean _fresh, boolean _mapped)
     {
         tableName  = _tableName;
-        recordSize = _recordSize;
+        codec      = _codec;
+        recordSize = codec.recordSize ();
+        perPage    = Math.max (1, PAGE_SIZE / recordSize);
+        perSegment = Math.max (1, SEGMENT_SIZE / recordSize);
+        fresh      = _fresh;
+        mapped     = _mapped;
+    } // constructor
 
+    /***************************************************************************
+     * Open the file, discarding or reloading its contents.
+     */
+    private void open ()
+    {
+        if (file != null) return;
         try {
-            file = new RandomAccessFile (tableName + EXT, "rw");
-        } catch (FileNotFoundException ex) {
-            file = null;
-            out.println ("FileList.constructor: unable to open - " + ex);
+            File f = new File (tableName + EXT);
+            if (f.getParentFile () != null) f.getParentFile ().mkdirs ();
+            file    = new RandomAccessFile (f, "rw");
+            channel = file.getChannel ();
+            pool    = BufferPool.shared ();
+            if (fresh) file.setLength (0);
+            if (! restored) nRecords = (int) (file.length () / recordSize);
+            if (mapped) segs = new ArrayList <> ();
+            else        tail = readPage (nRecords / perPage);
+            fresh    = false;
+            restored = false;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList.open: unable to open " + tableName + EXT, ex);
         } // try
-    } // constructor
+    } // open
 
     /***************************************************************************
      * Add a new tuple into the file list by packing it into a record and writing
-     * this record to the random access file.  Write the record either at the
-     * end-of-file or into a empty slot.
+     * this record to the random access file.  The record is packed into the tail
+     * page, which is written to the end of the file when it fills up.
      * @param tuple  the tuple to add
      * @return  whether the addition succeeded
      */
     public boolean add (Comparable [] tuple)
     {
-        byte [] record = null;  // FIX: table.pack (tuple);
-
-        if (record.length != recordSize) {
-            out.println ("FileList.add: wrong record size " + record.length);
-            return false;
+        open ();
+        if (mapped) {
+            codec.pack (tuple, segment (nRecords), (nRecords % perSegment) * recordSize);
+            nRecords++;
+            modCount++;
+            return true;
         } // if
-
-             //-----------------\\
-            // TO BE IMPLEMENTED \\
-           //---------------------\\
-
+        codec.pack (tuple, tail, (nRecords % perPage) * recordSize);
+        if (++nRecords % perPage == 0) {
+            int p = nRecords / perPage - 1;
+            pool.pinNew (channel, p, perPage * recordSize).put (tail.duplicate ().clear ());
+            pool.unpin (channel, p, true);
+        } // if
+        modCount++;
         return true;
     } // add
 
     /***************************************************************************
-     * Get the ith tuple by seeking to the correct file position and reading the
-     * record.
+     * Get the ith tuple by pinning the page holding it and unpacking the record.
      * @param i  the index of the tuple to get
      * @return  the ith tuple
      */
     public Comparable [] get (int i)
     {
-        byte [] record = new byte [recordSize];
+        open ();
+        if (i < 0 || i >= nRecords) throw new IndexOutOfBoundsException ("FileList.get: " + i);
+        if (mapped) return codec.unpack (segment (i), (i % perSegment) * recordSize);
+        int p = i / perPage;
+        if (p == nRecords / perPage) return codec.unpack (tail, (i % perPage) * recordSize);
+        boolean scan = (p == lastPage || p == lastPage + 1);
+        lastPage = p;
+        ByteBuffer buf = pool.pin (channel, p, perPage * recordSize, scan);
+        try {
+            return codec.unpack (buf, (i % perPage) * recordSize);
+        } finally {
+            pool.unpin (channel, p, false);
+        } // try
+    } // get
 
-             //-----------------\\
-            // TO BE IMPLEMENTED \\
-           //---------------------\\
+    /***************************************************************************
+     * Replace the ith tuple, updating its record in place (the page is written
+     * back by the buffer pool).
+     * @param i      the index of the tuple to replace
+     * @param tuple  the new tuple
+     * @return  the tuple previously at position i
+     */
+    public Comparable [] set (int i, Comparable [] tuple)
+    {
+        Comparable [] old = get (i);
+        if (mapped) {
+            codec.pack (tuple, segment (i), (i % perSegment) * recordSize);
+            return old;
+        } // if
+        int p   = i / perPage;
+        int pos = (i % perPage) * recordSize;
+        if (p == nRecords / perPage) {
+            codec.pack (tuple, tail, pos);
+        } else {
+            codec.pack (tuple, pool.pin (channel, p, perPage * recordSize), pos);
+            pool.unpin (channel, p, true);
+        } // if
+        return old;
+    } // set
 
-        return null;   // FIX: table.unpack (record);
-    } // get
+    /***************************************************************************
+     * Return the mapped segment holding record i, mapping it or enlarging its
+     * mapping (doubling, up to SEGMENT_SIZE) if record i lies beyond it.  Mapping
+     * beyond the end of file extends the file; close trims it again.
+     * @param i  the record number
+     * @return  the mapped segment
+     */
+    private MappedByteBuffer segment (int i)
+    {
+        int s   = i / perSegment;
+        int end = (i % perSegment + 1) * recordSize;
+        while (segs.size () <= s) segs.add (null);
+        MappedByteBuffer m = segs.get (s);
+        if (m == null || m.capacity () < end) {
+            long size = Math.max (end, (m == null) ? MIN_MAP : 2L * m.capacity ());
+            size = Math.min (size, (long) perSegment * recordSize);
+            try {
+                m = channel.map (FileChannel.MapMode.READ_WRITE, (long) s * perSegment * recordSize, size);
+            } catch (IOException ex) {
+                throw new UncheckedIOException ("FileList.segment: unable to map", ex);
+            } // try
+            segs.set (s, m);
+        } // if
+        return m;
+    } // segment
+
+    /***************************************************************************
+     * Read page p from the file (the part beyond the end of file is left zero).
+     * @param p  the page number
+     * @return  the page
+     */
+    private ByteBuffer readPage (int p)
+    {
+        ByteBuffer buf = ByteBuffer.allocate (perPage * recordSize);
+        long       pos = (long) p * buf.capacity ();
+        try {
+            while (buf.hasRemaining () && channel.read (buf, pos + buf.position ()) > 0) ;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList.readPage", ex);
+        } // try
+        return buf.clear ();
+    } // readPage
+
+    /***************************************************************************
+     * Write the first n records of the buffer as page p.
+     * @param p    the page number
+     * @param buf  the page
+     * @param n    the number of records to write
+     */
+    private void writePage (int p, ByteBuffer buf, int n)
+    {
+        ByteBuffer b = buf.duplicate ();
+        b.limit (n * recordSize).position (0);
+        try {
+            channel.write (b, (long) p * perPage * recordSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList.writePage", ex);
+        } // try
+    } // writePage
+
+    /***************************************************************************
+     * Write the dirty pages in the buffer pool and the records in the tail page
+     * to the file.
+     */
+    public void flush ()
+    {
+        if (file == null) return;
+        if (mapped) {
+            for (MappedByteBuffer m : segs) if (m != null) m.force ();
+            return;
+        } // if
+        pool.flush (channel);
+        int n = nRecords % perPage;
+        if (n > 0) writePage (nRecords / perPage, tail, n);
+    } // flush
+
+    /***************************************************************************
+     * Remove all the tuples, truncating the file.
+     */
+    public void clear ()
+    {
+        open ();
+        if (mapped) segs.clear ();
+        else        pool.discard (channel);
+        try {
+            file.setLength (0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList.clear", ex);
+        } // try
+        nRecords = 0;
+        lastPage = -2;
+        if (! mapped) tail = ByteBuffer.allocate (perPage * recordSize);
+        modCount++;
+    } // clear
+
+    /***************************************************************************
+     * Remove the tuples from position n on, truncating the file (e.g., after the
+     * live tuples have been moved to the front by set).
+     * @param n  the number of tuples to keep
+     */
+    public void truncate (int n)
+    {
+        open ();
+        if (n < 0 || n > nRecords) throw new IndexOutOfBoundsException ("FileList.truncate: " + n);
+        if (n == nRecords) return;
+        flush ();
+        if (mapped) segs.clear ();
+        else        pool.discard (channel);
+        try {
+            file.setLength ((long) n * recordSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList.truncate", ex);
+        } // try
+        nRecords = n;
+        lastPage = -2;
+        if (! mapped) tail = readPage (n / perPage);
+        modCount++;
+    } // truncate
+
+    /***************************************************************************
+     * Move the file to the path of the given table, replacing the file there
+     * (e.g., to swap in a list compacted into a new file).  A list still reading
+     * the replaced file keeps reading it through its open channel.
+     * @param _tableName  the name of the table (the path of the file without extension)
+     */
+    public void renameTo (String _tableName)
+    {
+        open ();
+        try {
+            Files.move (new File (tableName + EXT).toPath (), new File (_tableName + EXT).toPath (),
+                        StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList.renameTo: unable to rename to " + _tableName + EXT, ex);
+        } // try
+        tableName = _tableName;
+    } // renameTo
+
+    /***************************************************************************
+     * Return an iterator over the tuples, reading pages ahead for long scans.
+     * @return  the iterator
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        return Spliterators.iterator (spliterator ());
+    } // iterator
+
+    /***************************************************************************
+     * Return a spliterator over the tuples (used by streams), reading pages ahead
+     * for long scans.  It splits on page boundaries, and each part of a parallel
+     * stream reads its own range ahead.
+     * @return  the spliterator
+     */
+    public Spliterator <Comparable []> spliterator ()
+    {
+        open ();
+        return new Scan (0, nRecords, null, null);
+    } // spliterator
+
+    /***************************************************************************
+     * Return an iterator over the tuples whose values in the given columns pass
+     * keep, reading pages ahead for long scans.  The columns are decoded first,
+     * into an array holding them in the order given (reused from record to
+     * record), so the records failing keep are never unpacked in full.
+     * @param cols  the columns to test
+     * @param keep  the test on the values of the columns
+     * @return  the iterator
+     */
+    public Iterator <Comparable []> iterator (int [] cols, Predicate <Comparable []> keep)
+    {
+        open ();
+        return Spliterators.iterator (new Scan (0, nRecords, cols, keep));
+    } // iterator
+
+    /***************************************************************************
+     * This inner class scans the records lo (inclusive) to hi (exclusive),
+     * skipping those whose values in cols fail keep (if keep is not null).  Once
+     * the scan starts, the full pages of its range are read by a ReadAhead (after
+     * the dirty pages in the buffer pool are flushed); other records are fetched
+     * by get.
+     */
+    private class Scan
+            implements Spliterator <Comparable []>
+    {
+        private int        i, hi, pageNo = -1, raEnd = 0;
+        private boolean    started = false;
+        private ReadAhead  ra;
+        private ByteBuffer page;
+        private final int  expectedModCount = modCount;
+        private final int []                     cols;
+        private final Predicate <Comparable []>  keep;
+        private final Comparable []              kv;
+
+        Scan (int lo, int _hi, int [] _cols, Predicate <Comparable []> _keep)
+        {
+            i    = lo;
+            hi   = _hi;
+            cols = _cols;
+            keep = _keep;
+            kv   = (_keep == null) ? null : new Comparable [_cols.length];
+        } // constructor
+
+        public boolean tryAdvance (Consumer <? super Comparable []> action)
+        {
+            while (i < hi) {
+                if (modCount != expectedModCount) throw new ConcurrentModificationException ();
+                if (! started) start ();
+                int p = i / perPage;
+                Comparable [] t;
+                if (p < raEnd) {
+                    if (p != pageNo) { page = ra.next (); pageNo = p; }
+                    t = fetch (page, (i % perPage) * recordSize);
+                } else if (mapped && keep != null) {
+                    t = fetch (segment (i), (i % perSegment) * recordSize);
+                } else {
+                    t = get (i);
+                    if (keep != null) {
+                        for (int j = 0; j < cols.length; j++) kv [j] = t [cols [j]];
+                        if (! keep.test (kv)) t = null;
+                    } // if
+                } // if
+                if (++i >= hi || i / perPage == raEnd) { if (ra != null) ra.close (); raEnd = 0; }
+                if (t != null) {
+                    action.accept (t);
+                    return true;
+                } // if
+            } // while
+            return false;
+        } // tryAdvance
+
+        /** Unpack the record at base in buf, or return null if its columns fail keep.
+         */
+        private Comparable [] fetch (ByteBuffer buf, int base)
+        {
+            if (keep != null) {
+                for (int j = 0; j < cols.length; j++) kv [j] = codec.get (buf, base, cols [j]);
+                if (! keep.test (kv)) return null;
+            } // if
+            return codec.unpack (buf, base);
+        } // fetch
+
+        private void start ()
+        {
+            started = true;
+            int first = i / perPage;
+            int end   = Math.min ((hi + perPage - 1) / perPage, nRecords / perPage);
+            if (mapped || end - first < READ_AHEAD_PAGES) return;
+            pool.flush (channel);
+            ra    = new ReadAhead (channel, perPage * recordSize, first, end);
+            raEnd = end;
+        } // start
+
+        public Spliterator <Comparable []> trySplit ()
+        {
+            if (started) return null;
+            int mid = (i + (hi - i) / 2) / perPage * perPage;
+            if (mid <= i) return null;
+            Scan s = new Scan (i, mid, cols, keep);
+            i = mid;
+            return s;
+        } // trySplit
+
+        public long estimateSize () { return hi - i; }
+
+        public int characteristics () { return ORDERED | SIZED | SUBSIZED | NONNULL; }
+    } // Scan inner class
 
     /***************************************************************************
      * Return the size of the file list in terms of the number of tuples/records.
@@ -101,19 +530,123 @@ public class FileList
      */
     public int size ()
     {
+        open ();
         return nRecords;
     } // size
 
+    /***************************************************************************
+     * Return the number of records per page.
+     * @return  the records per page
+     */
+    public int perPage ()
+    {
+        return perPage;
+    } // perPage
+
+    /***************************************************************************
+     * Flush the tail page before the list is serialized (e.g., with its Table), so
+     * the file holds every record when it is reopened.
+     */
+    private void writeObject (ObjectOutputStream oos) throws IOException
+    {
+        flush ();
+        oos.defaultWriteObject ();
+    } // writeObject
+
+    /***************************************************************************
+     * Reopen the existing file after the list is deserialized.
+     */
+    private void readObject (ObjectInputStream ois) throws IOException, ClassNotFoundException
+    {
+        ois.defaultReadObject ();
+        fresh    = false;
+        restored = true;
+    } // readObject
+
     /***************************************************************************
      * Close the file.
      */
     public void close ()
     {
+        if (file == null) return;
         try {
+            flush ();
+            if (mapped) {
+                segs = null;                                     // drop the mappings, then trim the
+                file.setLength ((long) nRecords * recordSize);   // mapped space beyond the last record
+            } else {
+                pool.discard (channel);
+            } // if
             file.close ();
         } catch (IOException ex) {
             out.println ("FileList.close: unable to close - " + ex);
         } // try
+        file = null;
     } // close
 
-} // FileList class
\ No newline at end of file
+    /***************************************************************************
+     * The main method used for testing: write tuples, read them back at random
+     * and after reopening the file.
+     * @param args  the command-line arguments (args [0] gives number of tuples)
+     */
+    public static void main (String [] args)
+    {
+        int n = 100000;
+        if (args.length == 1) n = Integer.valueOf (args [0]);
+        TupleCodec codec = new TupleCodec (new Class [] { Integer.class, String.class, Double.class });
+        String     path  = "store" + File.separator + "FileListTest";
+
+        FileList fl = new FileList (path, codec);
+        for (int i = 0; i < n; i++) fl.add (new Comparable [] { i, "name" + i, i * 0.5 });
+        fl.set (7, new Comparable [] { 7, "seven", 3.5 });
+        int wrong = 0;
+        Random rng = new Random ();
+        for (int k = 0; k < 1000; k++) {
+            int i = rng.nextInt (n);
+            if (! fl.get (i) [1].equals (i == 7 ? "seven" : "name" + i)) wrong++;
+        } // for
+        out.println ("size = " + fl.size () + ", wrong = " + wrong);
+        out.println (BufferPool.shared ());
+        fl.close ();
+
+        FileList re = new FileList (path, codec, false);
+        BufferPool.shared ().resetStats ();
+        long sum = 0;
+        for (Comparable [] t : re) sum += (Integer) t [0];
+        out.println ("reopened size = " + re.size () + ", sum of ids = " + sum + " (expecting "
+                     + (long) n * (n - 1) / 2 + ")");
+        out.println ("scan (read ahead): " + BufferPool.shared ());
+        long psum = re.parallelStream ().mapToLong (t -> (Integer) t [0]).sum ();
+        long hits = re.stream ().filter (t -> (Integer) t [0] % 1000 == 0).count ();
+        out.println ("parallel stream sum of ids = " + psum + ", filter count = " + hits + " (expecting " + (n + 999) / 1000 + ")");
+        re.close ();
+
+        FileList mm = new FileList (path, codec, true, true);
+        for (int i = 0; i < n; i++) mm.add (new Comparable [] { i, "name" + i, i * 0.5 });
+        mm.set (7, new Comparable [] { 7, "seven", 3.5 });
+        wrong = 0;
+        for (int k = 0; k < 1000; k++) {
+            int i = rng.nextInt (n);
+            if (! mm.get (i) [1].equals (i == 7 ? "seven" : "name" + i)) wrong++;
+        } // for
+        mm.close ();
+        out.println ("mapped: size = " + mm.size () + ", wrong = " + wrong + ", file bytes = "
+                     + new File (path + EXT).length () + " (expecting " + (long) n * codec.recordSize () + ")");
+
+        re  = new FileList (path, codec, false, true);
+        sum = 0;
+        for (Comparable [] t : re) sum += (Integer) t [0];
+        out.println ("mapped reopened size = " + re.size () + ", sum of ids = " + sum);
+        re.truncate (n / 2 + 1);
+        re.close ();
+
+        re = new FileList (path, codec, false);
+        re.truncate (n / 2);
+        re.add (new Comparable [] { -1, "last", 0.0 });
+        out.println ("truncated size = " + re.size () + " (expecting " + (n / 2 + 1) + "), ids around the cut = "
+                     + re.get (n / 2 - 1) [0] + ", " + re.get (n / 2) [0]);
+        re.close ();
+        new File (path + EXT).delete ();
+    } // main
+
+} // FileList class
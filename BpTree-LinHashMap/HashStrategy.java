@@ -0,0 +1,89 @@
+/************************************************************************************
+ * @file HashStrategy.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.Serializable;
+
+/************************************************************************************
+ * The HashStrategy interface defines how a hash map scrambles the hash codes of its
+ * keys before using their low bits to pick a bucket.  Hash codes such as those of
+ * Integer (the value itself) or of sequential ids only differ in a few bits, so
+ * masking them directly clusters the keys; a mixing function spreads every input
+ * bit over the whole word.  The standard strategies are provided as the constants
+ * of the Mix enum.
+ */
+public interface HashStrategy
+       extends Serializable
+{
+    /********************************************************************************
+     * Mix the bits of a hash code.
+     * @param hash  the hash code (e.g., from hashCode)
+     * @return  the mixed hash code
+     */
+    int mix (int hash);
+
+    /** Use hash codes as they are.
+     */
+    HashStrategy IDENTITY = Mix.IDENTITY;
+
+    /** The MurmurHash3 32-bit finalizer (fmix32).
+     */
+    HashStrategy MURMUR3 = Mix.MURMUR3;
+
+    /** The xxHash32 avalanche step.
+     */
+    HashStrategy XXHASH = Mix.XXHASH;
+
+    /********************************************************************************
+     * Combine the running hash h with the hash code k of the next field, using the
+     * MurmurHash3 32-bit body step.  Finish the result with MURMUR3.mix.
+     * @param h  the running hash (start with a seed, e.g., 0)
+     * @param k  the hash code of the next field
+     * @return  the new running hash
+     */
+    static int combine (int h, int k)
+    {
+        k *= 0xcc9e2d51;
+        k  = Integer.rotateLeft (k, 15);
+        k *= 0x1b873593;
+        h ^= k;
+        h  = Integer.rotateLeft (h, 13);
+        return h * 5 + 0xe6546b64;
+    } // combine
+
+    /********************************************************************************
+     * The standard mixing functions.
+     */
+    enum Mix
+         implements HashStrategy
+    {
+        IDENTITY {
+            public int mix (int h) { return h; }
+        },
+
+        MURMUR3 {
+            public int mix (int h)
+            {
+                h ^= h >>> 16;
+                h *= 0x85ebca6b;
+                h ^= h >>> 13;
+                h *= 0xc2b2ae35;
+                return h ^ (h >>> 16);
+            } // mix
+        },
+
+        XXHASH {
+            public int mix (int h)
+            {
+                h ^= h >>> 15;
+                h *= 0x85ebca77;
+                h ^= h >>> 13;
+                h *= 0xc2b2ae3d;
+                return h ^ (h >>> 16);
+            } // mix
+        }
+    } // Mix enum
+
+} // HashStrategy interface
@@ -8,6 +8,7 @@ import java.io.*;
 import java.lang.reflect.Array;
 import static java.lang.System.out;
 import java.util.*;
+import java.util.function.Consumer;
 
 /************************************************************************************
  * This class provides hash maps that use the Linear Hashing algorithm.
@@ -17,18 +18,49 @@ public class LinHashMap <K, V>
        extends AbstractMap <K, V>
        implements Serializable, Cloneable, Map <K, V>
 {
-    /** The number of slots (for key-value pairs) per bucket.
+    /** The default number of slots (for key-value pairs) per bucket.
      */
     private static final int SLOTS = 10;
     
-    /** The threshold for Load factor
+    /** The threshold for Load factor (number of keys / number of home slots)
      */
-    private static final double LOAD_FACTOR_THRESHOLD = 1.0;
+    private static final double LOAD_FACTOR_THRESHOLD = 0.8;
+
+    /** The longest chain (home bucket plus overflow buckets) allowed by CHAIN_LENGTH
+     */
+    private static final int MAX_CHAIN = 2;
+
+    /** The load factor below which the table contracts by merging its last bucket
+     */
+    private static final double CONTRACT_THRESHOLD = 0.5;
+
+    /** The initial number of home buckets (the table never contracts below this)
+     */
+    private static final int INIT_SIZE = 8;
     
-    /** The counter for number of tuples inserted
+    /** The events that trigger a split:
+     *  LOAD_FACTOR  - the number of keys per home slot exceeds LOAD_FACTOR_THRESHOLD;
+     *  CHAIN_LENGTH - an insert lands in a chain longer than MAX_CHAIN buckets;
+     *  ON_OVERFLOW  - an insert adds an overflow bucket (the classic Litwin policy).
+     */
+    public enum SplitPolicy { LOAD_FACTOR, CHAIN_LENGTH, ON_OVERFLOW }
+
+    /** The counter for number of keys stored
      */
     private int noTuples = 0;
 
+    /** The number of slots per bucket.
+     */
+    private final int slots;
+
+    /** The policy deciding when to split.
+     */
+    private final SplitPolicy policy;
+
+    /** The function mixing the hash codes of keys before they are masked.
+     */
+    private final HashStrategy strategy;
+
     /** The class for type K.
      */
     private final Class <K> classK;
@@ -38,11 +70,14 @@ public class LinHashMap <K, V>
     private final Class <V> classV;
 
     /********************************************************************************
-     * This inner class defines buckets that are stored in the hash table.
+     * This inner class defines buckets that are stored in the hash table.  The hash
+     * code of each key is cached alongside it, so splits and look ups never need to
+     * recompute it and most non-matching keys are rejected without calling equals.
      */
     private class Bucket
     {
         int    nKeys;
+        int [] hash;
         K []   key;
         V []   value;
         Bucket next;
@@ -51,12 +86,21 @@ public class LinHashMap <K, V>
         Bucket (Bucket n)
         {
             nKeys = 0;
-            key   = (K []) Array.newInstance (classK, SLOTS);
-            value = (V []) Array.newInstance (classV, SLOTS);
+            hash  = new int [slots];
+            key   = (K []) Array.newInstance (classK, slots);
+            value = (V []) Array.newInstance (classV, slots);
             next  = n;
         } // constructor
     } // Bucket inner class
 
+    /** Whether the last append had to add an overflow bucket.
+     */
+    private boolean overflowed = false;
+
+    /** Overflow buckets released by splits, kept for reuse by later overflows.
+     */
+    private Bucket free = null;
+
     /** The list of buckets making up the hash table.
      */
     private final List <Bucket> hTable;
@@ -85,10 +129,42 @@ public class LinHashMap <K, V>
      */
     public LinHashMap (Class <K> _classK, Class <V> _classV)    // , int initSize)
     {
+        this (_classK, _classV, SLOTS, SplitPolicy.LOAD_FACTOR);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a hash table that uses Linear Hashing with the given bucket size and
+     * split policy.
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     * @param _slots   the number of slots per bucket
+     * @param _policy  the policy deciding when to split
+     */
+    public LinHashMap (Class <K> _classK, Class <V> _classV, int _slots, SplitPolicy _policy)
+    {
+        this (_classK, _classV, _slots, _policy, HashStrategy.MURMUR3);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a hash table that uses Linear Hashing with the given bucket size, split
+     * policy and hash strategy.
+     * @param _classK    the class for keys (K)
+     * @param _classV    the class for values (V)
+     * @param _slots     the number of slots per bucket
+     * @param _policy    the policy deciding when to split
+     * @param _strategy  the function mixing hash codes
+     */
+    public LinHashMap (Class <K> _classK, Class <V> _classV, int _slots, SplitPolicy _policy,
+                       HashStrategy _strategy)
+    {
+        if (_slots < 1) throw new IllegalArgumentException ("LinHashMap: slots must be positive");
         classK = _classK;
         classV = _classV;
+        slots  = _slots;
+        policy = _policy;
+        strategy = _strategy;
         hTable = new ArrayList <> ();
-        mod1   = 8;                        // initSize;
+        mod1   = INIT_SIZE;
         mod2   = 2 * mod1;
         
         //Added by Ankit beause we have to create initial 4 buckets of hTable
@@ -99,187 +175,339 @@ public class LinHashMap <K, V>
     } // constructor
 
     /********************************************************************************
-     * Return a set containing all the entries as pairs of keys and values.
+     * Return a set view of the entries as pairs of keys and values.  The view is live:
+     * its iterator walks the buckets in place and its spliterator splits by ranges of
+     * home buckets, so entrySet ().parallelStream () scans the table in parallel.
      * @return  the set view of the map
      */
     public Set <Map.Entry <K, V>> entrySet ()
     {
-        Set <Map.Entry <K, V>> enSet = new HashSet <> ();
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return noTuples; }
 
-        //  T O   B E   I M P L E M E N T E D
-        // Implemented by Ankit Vaghela
-        
-        for(int i = 0 ; i < hTable.size() ; i ++) {
-        	//out.println("Bucket: "+i);
-        	for(Bucket bucket = hTable.get(i) ; bucket != null;  bucket = bucket.next) {
-        		
-        		for(int j = 0 ; j < SLOTS ; j ++) {
-        			if(bucket.key[j] != null) {
-        			enSet.add(new AbstractMap.SimpleEntry <K, V> (bucket.key[j] , bucket.value[j]));
-        			}
-        		}
-        	}
-        }
-        
-        
-        return enSet;
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return Spliterators.iterator (new EntrySpliterator (0, hTable.size ()));
+            } // iterator
+
+            public Spliterator <Map.Entry <K, V>> spliterator ()
+            {
+                return new EntrySpliterator (0, hTable.size ());
+            } // spliterator
+        }; // AbstractSet
     } // entrySet
 
+    /********************************************************************************
+     * This inner class traverses the entries of the home buckets in [lo, hi) and
+     * their overflow chains.  It splits by halving the range of home buckets.
+     */
+    private class EntrySpliterator
+            implements Spliterator <Map.Entry <K, V>>
+    {
+        int    lo, hi;                                  // remaining home buckets
+        Bucket b = null;                                // current bucket in the chain
+        int    j = 0;                                   // next slot in b
+
+        EntrySpliterator (int _lo, int _hi)
+        {
+            lo = _lo;
+            hi = _hi;
+        } // constructor
+
+        public boolean tryAdvance (Consumer <? super Map.Entry <K, V>> action)
+        {
+            for ( ; ; ) {
+                if (b != null && j < b.nKeys) {
+                    action.accept (new AbstractMap.SimpleEntry <> (b.key [j], b.value [j]));
+                    j++;
+                    return true;
+                } // if
+                if (b != null && b.next != null) { b = b.next; j = 0; continue; }
+                if (lo >= hi) return false;
+                b = hTable.get (lo++);
+                j = 0;
+            } // for
+        } // tryAdvance
+
+        public Spliterator <Map.Entry <K, V>> trySplit ()
+        {
+            int mid = (lo + hi) >>> 1;
+            if (b != null || mid <= lo) return null;
+            EntrySpliterator prefix = new EntrySpliterator (lo, mid);
+            lo = mid;
+            return prefix;
+        } // trySplit
+
+        public long estimateSize ()
+        {
+            return (long) noTuples * (hi - lo) / Math.max (1, hTable.size ());
+        } // estimateSize
+
+        public int characteristics ()
+        {
+            return DISTINCT | NONNULL;
+        } // characteristics
+    } // EntrySpliterator inner class
+
+    /********************************************************************************
+     * Return whether the hash table contains the key, without scanning the entries.
+     * @param key  the key to look for
+     * @return  whether the key is present
+     */
+    public boolean containsKey (Object key)
+    {
+        int hash = strategy.mix (key.hashCode ());
+        int i    = h (hash);
+        if (i < split) i = h2 (hash);
+
+        for (Bucket bucket = hTable.get (i); bucket != null; bucket = bucket.next) {
+            for (int j = 0; j < bucket.nKeys; j++) {
+                if (bucket.hash [j] == hash && key.equals (bucket.key [j])) return true;
+            } // for
+        } // for
+        return false;
+    } // containsKey
+
     /********************************************************************************
      * Given the key, look up the value in the hash table.
      * @param key  the key used for look up
      * @return  the value associated with the key
      */
-    // modified Object to KeyType
     public V get (Object key)
     {
-		
-        int i = h (key);
+        int hash = strategy.mix (key.hashCode ());
+        int i    = h (hash);
+        if (i < split) i = h2 (hash);
 
-        //  T O   B E   I M P L E M E N T E D
-        if(i < split) i = h2(key);
-        
-        for(Bucket bucket = hTable.get(i) ; bucket != null;  bucket = bucket.next) {
-        	
-        	count++;
-        	
-        	for(int j = 0 ; j < SLOTS ; j++) {
-        		//out.println("Outside if of get");
-        		  //if(bucket.key[j] != null && new KeyType ((Comparable) key).equals(new KeyType ((Comparable) bucket.key[j]))) {
-					if(bucket.key[j] != null && ((KeyType) key).equals((KeyType) bucket.key[j])) {
-        			//out.println("Inside if of get");
-        			return bucket.value[j];
-        		}
-        	}
-        }
- 
+        for (Bucket bucket = hTable.get (i); bucket != null; bucket = bucket.next) {
+            count++;
+            for (int j = 0; j < bucket.nKeys; j++) {
+                if (bucket.hash [j] == hash && key.equals (bucket.key [j])) return bucket.value [j];
+            } // for
+        } // for
         return null;
     } // get
 
     /********************************************************************************
-     * Put the key-value pair in the hash table.
+     * Put the key-value pair in the hash table, replacing the value if the key is
+     * already present.  A new key may trigger a split, as decided by the split policy.
      * @param key    the key to insert
      * @param value  the value to insert
-     * @return  null (not the previous value)
+     * @return  the previous value for this key or null if there was none
      */
     public V put (K key, V value)
     {
-    	
-        int i = h (key);
-        //out.println ("LinearHashMap.put: key = " + key + ", h() = " + i + ", value = " + value);
-        
-        
         //  T O   B E   I M P L E M E N T E D
         // Implemented by Ankit Vaghela
         
+        int hash = strategy.mix (key.hashCode ());
+        int i    = h (hash);
+        if (i < split) i = h2 (hash);
+
+        Bucket home = hTable.get (i);
+        for (Bucket bucket = home; bucket != null; bucket = bucket.next) {
+            for (int j = 0; j < bucket.nKeys; j++) {
+                if (bucket.hash [j] == hash && key.equals (bucket.key [j])) {
+                    V old = bucket.value [j];
+                    bucket.value [j] = value;
+                    return old;
+                } // if
+            } // for
+        } // for
+
         noTuples++;
+        overflowed = false;
+        int chain  = append (home, key, value, hash);
         
-        if(i<split) i = h2(key);
-        
-        //Check for loading factor and split of it is greater than LOAD_FACTOR_THRESHOLD
-        
-        if((double)(noTuples + 1)/size() >= LOAD_FACTOR_THRESHOLD) {
-        	split (key, value);
-        }else {
-        	//We insert the key if the event is not eligible for split
-        	insertKey (key, value);
-        }
+        //Check the split policy and split the next bucket if it calls for it
+        boolean doSplit;
+        switch (policy) {
+        case CHAIN_LENGTH: doSplit = chain > MAX_CHAIN; break;
+        case ON_OVERFLOW:  doSplit = overflowed;        break;
+        default:           doSplit = (double) noTuples / capacity () > LOAD_FACTOR_THRESHOLD;
+        } // switch
+        if (doSplit) split ();
 		
         return null;
     } // put
-    /**
-     * @author ankit Vaghela
-     * This method will split the home bucket and and also adjust lower and higher resolution functions
-     * @param key
-     * @param value
+    /********************************************************************************
+     * Remove the key (and its value) from the hash table.  The hole is filled with
+     * the last entry of the bucket chain, so the chain stays compact and an overflow
+     * bucket that becomes empty is released.  When the load factor falls below
+     * CONTRACT_THRESHOLD the table contracts by one bucket.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    public V remove (Object key)
+    {
+        int hash = strategy.mix (key.hashCode ());
+        int i    = h (hash);
+        if (i < split) i = h2 (hash);
+
+        Bucket home = hTable.get (i);
+        for (Bucket bucket = home; bucket != null; bucket = bucket.next) {
+            count++;
+            for (int j = 0; j < bucket.nKeys; j++) {
+                if (bucket.hash [j] == hash && key.equals (bucket.key [j])) {
+                    V old = bucket.value [j];
+                    Bucket prev = null, last = home;                // find the last bucket in chain
+                    while (last.next != null) { prev = last; last = last.next; }
+                    int k = --last.nKeys;                            // move its last entry into the hole
+                    bucket.hash [j] = last.hash [k]; bucket.key [j] = last.key [k]; bucket.value [j] = last.value [k];
+                    last.key [k] = null; last.value [k] = null;
+                    if (last.nKeys == 0 && prev != null) { prev.next = null; release (last); }
+
+                    noTuples--;
+                    if (hTable.size () > INIT_SIZE && (double) noTuples / capacity () < CONTRACT_THRESHOLD) contract ();
+                    return old;
+                } // if
+            } // for
+        } // for
+        return null;
+    } // remove
+
+    /********************************************************************************
+     * Contract the hash table by undoing the most recent split: the last bucket is
+     * merged back into the bucket it was split from, and split (and possibly mod1
+     * and mod2) is decremented.
+     */
+    private void contract ()
+    {
+        if (split == 0) {
+            mod2  = mod1;
+            mod1  = mod1 / 2;
+            split = mod1 - 1;
+        } else {
+            split--;
+        } // if
+
+        Bucket image = hTable.remove (hTable.size () - 1);          // bucket split + mod1
+        Bucket home  = hTable.get (split);
+        for (Bucket b = image; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) append (home, b.key [j], b.value [j], b.hash [j]);
+        } // for
+        release (image.next);
+        image.next = null;
+        Arrays.fill (image.key, 0, image.nKeys, null);
+        Arrays.fill (image.value, 0, image.nKeys, null);
+    } // contract
+
+    /********************************************************************************
+     * Split the bucket at position split into itself and its image (split + mod1) and
+     * adjust the low and high resolution hash functions.  The entries are redistributed
+     * in place using their cached hash codes: entries that stay are compacted towards
+     * the front of the old chain, the others are appended to the image chain, and any
+     * overflow buckets emptied by the compaction are kept for reuse.
+     */
+    private void split ()
+    {
+        Bucket home  = hTable.get (split);
+        Bucket image = newBucket ();
+        hTable.add (image);
+
+        Bucket wb   = home;                                       // write bucket
+        Bucket prev = null;                                       // bucket before wb
+        int    wj   = 0;                                          // write slot
+        for (Bucket b = home; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (h2 (b.hash [j]) == split) {
+                    wb.hash [wj] = b.hash [j]; wb.key [wj] = b.key [j]; wb.value [wj] = b.value [j];
+                    if (++wj == slots) { wb.nKeys = slots; prev = wb; wb = wb.next; wj = 0; }
+                } else {
+                    append (image, b.key [j], b.value [j], b.hash [j]);
+                } // if
+            } // for
+        } // for
+
+        if (wb != null) {
+            for (int j = wj; j < wb.nKeys; j++) { wb.key [j] = null; wb.value [j] = null; }
+            wb.nKeys = wj;
+            Bucket rest = wb.next;
+            if (wj == 0 && prev != null) { prev.next = null; rest = wb; }
+            else wb.next = null;
+            release (rest);
+        } // if
+
+        if (++split == mod1) {
+            mod1  = mod2;
+            mod2  = 2 * mod1;
+            split = 0;
+        } // if
+    } // split
+
+    /********************************************************************************
+     * Append the key-value pair to the first bucket in the chain with a free slot.
+     * Below is the overflow event when all the buckets in the chain are full.
+     * @param bucket  the home bucket of the chain
+     * @param key     the key to append
+     * @param value   the value to append
+     * @param hash    the hash code of the key
+     * @return  the position in the chain of the bucket receiving the key (1 for home)
+     */
+    private int append (Bucket bucket, K key, V value, int hash)
+    {
+        Bucket b = bucket;
+        int    n = 1;
+        while (b.nKeys == slots) {
+            if (b.next == null) { b.next = newBucket (); overflowed = true; }
+            b = b.next;
+            n++;
+        } // while
+        b.hash [b.nKeys]  = hash;
+        b.key [b.nKeys]   = key;
+        b.value [b.nKeys] = value;
+        b.nKeys++;
+        return n;
+    } // append
+
+    /********************************************************************************
+     * Return an empty bucket, reusing a released overflow bucket when available.
+     * @return  the empty bucket
      */
-    public void split (K key, V value)
+    private Bucket newBucket ()
     {
-    	
-    	int originalSplit = split;
-    	
-    	if(split+1 == mod1) {
-    		
-    		mod1 = mod1 * 2;
-    		mod2 = 2 * mod1;
-    		split = 0;
-    		
-    	}
-    	else {
-    	split++;
-    	}
-    	
-    	Bucket b = new Bucket(null);
-    	hTable.add(b);
-    	//Getting all the values of split bucket and the one we want to add in a map
-    	Map<K,V> keysSplitBucket = new HashMap<K, V>();
-    	keysSplitBucket.put(key, value);
-    	for(Bucket bucket = hTable.get(originalSplit) ; bucket != null;  bucket = bucket.next) {
-    		for(int i = 0 ; i < SLOTS ; i++) {
-    			if(bucket.key[i] != null) {
-    			keysSplitBucket.put(bucket.key[i], bucket.value[i]);
-    			}
-    		}
-    	}
-    	
-    	//empty the bucket
-    	hTable.remove(originalSplit);
-    	hTable.add(originalSplit, new Bucket(null));
-    	
-    	for(K  k : keysSplitBucket.keySet()) {
-    		insertKey(k, keysSplitBucket.get(k));
-    	}
-    }
-    /**
-     * @author ankit Vaghela
-     * This method inserts the key in the hTable and overloading is also handeled here
-     * @param key
-     * @param value
-     */
-    public void insertKey (K key, V value)
+        if (free == null) return new Bucket (null);
+        Bucket b = free;
+        free     = b.next;
+        b.next   = null;
+        return b;
+    } // newBucket
+
+    /********************************************************************************
+     * Release a chain of overflow buckets for reuse, clearing their slots.
+     * @param b  the first bucket in the chain (may be null)
+     */
+    private void release (Bucket b)
     {
-    	
-    	int i = h(key);
-    	if (i < split) {
-    		i = h2(key);
-    	}
-    	
-    	for(Bucket bucket = hTable.get(i) ; bucket != null;  bucket = bucket.next) {
-    		
-    		int count =0;
-    		
-    		if(bucket.nKeys < SLOTS){
-    			
-    			bucket.key[bucket.nKeys] = key;
-    			bucket.value[bucket.nKeys] = value;
-    			bucket.nKeys++;
-    			break;
-    			
-    		}
-    		//Below is the overloading event
-    		else if (bucket.nKeys == SLOTS && bucket.next == null) {
-    			
-    			bucket.next = new Bucket(null);
-    			bucket.next.key[bucket.next.nKeys] = key;
-    			bucket.next.value[bucket.next.nKeys] = value;
-    			bucket.next.nKeys++;
-    			
-    			break;
-    		}
-    		
-    		
-    	}
-    }
+        while (b != null) {
+            Bucket n = b.next;
+            Arrays.fill (b.key, 0, b.nKeys, null);
+            Arrays.fill (b.value, 0, b.nKeys, null);
+            b.nKeys = 0;
+            b.next  = free;
+            free    = b;
+            b       = n;
+        } // while
+    } // release
 
     /********************************************************************************
-     * Return the size (SLOTS * number of home buckets) of the hash table. 
+     * Return the size (number of keys) of the hash table. 
      * @return  the size of the hash table
      */
     public int size ()
     {
-        return SLOTS * (mod1 + split);
+        return noTuples;
     } // size
 
+    /********************************************************************************
+     * Return the capacity (slots * number of home buckets) of the hash table.
+     * @return  the number of home slots
+     */
+    private int capacity ()
+    {
+        return slots * (mod1 + split);
+    } // capacity
+
     /********************************************************************************
      * Print the hash table.
      */
@@ -295,7 +523,7 @@ public class LinHashMap <K, V>
         	for(Bucket bucket = hTable.get(i) ; bucket != null;  bucket = bucket.next)  {
         		out.println();
         		
-        		for(int j = 0 ; j < SLOTS ; j ++) {
+        		for(int j = 0 ; j < bucket.nKeys ; j ++) {
         			if(bucket.key[j] != null) {
         			out.println("[key -->"+ bucket.key[j]+ "] [Value --> " + bucket.value[j] +"]");
         		}
@@ -308,35 +536,92 @@ public class LinHashMap <K, V>
     } // print
 
     /********************************************************************************
-     * Hash the key using the low resolution hash function.
-     * @param key  the key to hash
+     * Hash the key using the low resolution hash function.  mod1 is a power of 2, so
+     * the function masks the low bits of the (mixed) hash code.
+     * @param hash  the hash code of the key
      * @return  the location of the bucket chain containing the key-value pair
      */
-    private int h (Object key)
+    private int h (int hash)
     {
-    	//Absolute function added by Ankit to handle non positive hashcodes
-    	if(key.hashCode() < 0) {
-    		return Math.abs(key.hashCode()) % mod1;
-			//return (key.hashCode() * -1) % mod1;
-    	}
-        return key.hashCode () % mod1;
+        return hash & (mod1 - 1);
     } // h
 
     /********************************************************************************
-     * Hash the key using the high resolution hash function.
-     * @param key  the key to hash
+     * Hash the key using the high resolution hash function (a mask, mod2 = 2 * mod1).
+     * @param hash  the hash code of the key
      * @return  the location of the bucket chain containing the key-value pair
      */
-    private int h2 (Object key)
+    private int h2 (int hash)
     {
-    	//Absolute function added by Ankit to handle non positive hashcodes
-    	if(key.hashCode() < 0) {
-    		return Math.abs(key.hashCode()) % mod2;
-			//return (key.hashCode() * -1) % mod2;
-    	}
-        return key.hashCode () % mod2;
+        return hash & (mod2 - 1);
     } // h2
 
+    /********************************************************************************
+     * Return the distribution of chain lengths: element n is the number of home
+     * buckets whose chain holds n keys.
+     * @return  the histogram of keys per bucket chain
+     */
+    public int [] histogram ()
+    {
+        int [] hist = new int [1];
+        for (Bucket home : hTable) {
+            int n = 0;
+            for (Bucket b = home; b != null; b = b.next) n += b.nKeys;
+            if (n >= hist.length) hist = Arrays.copyOf (hist, n + 1);
+            hist [n]++;
+        } // for
+        return hist;
+    } // histogram
+
+    /********************************************************************************
+     * Print the histogram of keys per bucket chain along with the longest chain in
+     * buckets, for checking how evenly the hash strategy spreads the keys.
+     */
+    public void printHistogram ()
+    {
+        int [] hist = histogram ();
+        out.print ("keys per chain: count =");
+        for (int n = 0; n < hist.length; n++) if (hist [n] > 0) out.print (" " + n + ":" + hist [n]);
+        out.println ("  (longest chain = " + ((hist.length - 1 + slots - 1) / slots) + " buckets)");
+    } // printHistogram
+
+    /********************************************************************************
+     * Return the number of overflow buckets currently chained to home buckets.
+     * @return  the number of overflow buckets
+     */
+    private int overflowBuckets ()
+    {
+        int n = 0;
+        for (Bucket b : hTable) for (b = b.next; b != null; b = b.next) n++;
+        return n;
+    } // overflowBuckets
+
+    /********************************************************************************
+     * Benchmark the split policies: for each policy and bucket size, insert n keys,
+     * look each one up, and report the average number of buckets accessed per look up
+     * and the estimated memory used per key by the buckets (object and array headers
+     * plus the hash, key and value slots, assuming compressed references).
+     * @param n  the number of keys to insert
+     */
+    public static void benchmark (int n)
+    {
+        out.println ("policy         slots  buckets  overflow  probes/get  bytes/key");
+        for (SplitPolicy p : SplitPolicy.values ()) {
+            for (int s : new int [] { 4, 10, 32 }) {
+                LinHashMap <Integer, Integer> ht = new LinHashMap <> (Integer.class, Integer.class, s, p);
+                for (int i = 0; i < n; i++) ht.put (i * 7919, i);
+                ht.count = 0;
+                for (int i = 0; i < n; i++) ht.get (i * 7919);
+
+                int  overflow = ht.overflowBuckets ();
+                int  buckets = ht.hTable.size () + overflow;
+                long bytes   = (long) buckets * (32 + 3 * 16 + 12 * s);
+                out.printf ("%-14s %5d %8d %9d %11.3f %10.1f%n", p, s, ht.hTable.size (), overflow,
+                            ht.count / (double) n, bytes / (double) n);
+            } // for
+        } // for
+    } // benchmark
+
     /********************************************************************************
      * The main method used for testing.
      * @param  the command-line arguments (args [0] gives number of keys to insert)
@@ -412,10 +697,36 @@ public class LinHashMap <K, V>
 	    
 	    out.println ("Average number of buckets accessed = " + ht.count / (double) totalKeys);
 	    out.println("No of keys: "+ht.noTuples +"  Real count: "+ht.entrySet().size()); 
+
+	    out.println("\nTest 3: Removing all the keys, which contracts the table.");
+	    out.println("Number of buckets before: " + ht.hTable.size());
+	    out.println("Removing key 3 returns " + ht.remove(3) + ", get (3) now returns " + ht.get(3));
+	    for (int i = 0; i <= totalKeys; i++) ht.remove(i);
+	    out.println("Number of buckets after: " + ht.hTable.size() + ", mod1 = " + ht.mod1 + ", split = " + ht.split);
+	    out.println("Remaining entries: " + ht.entrySet());
+	    
+	    out.println("\nTest 4: Summing the values with a parallel stream over the entries.");
+	    LinHashMap <Integer, Integer> big = new LinHashMap <> (Integer.class, Integer.class);
+	    for (int i = 0; i < 100000; i++) big.put (i, i);
+	    out.println("Sum = " + big.entrySet ().parallelStream ().mapToLong (e -> e.getValue ()).sum ()
+	                + ", expecting " + 99999L * 100000 / 2);
+
+	    out.println("\nTest 5: Bucket distribution of sequential and skewed integer keys.");
+	    for (HashStrategy hs : HashStrategy.Mix.values ()) {
+	        LinHashMap <Integer, Integer> seq = new LinHashMap <> (Integer.class, Integer.class, SLOTS, SplitPolicy.LOAD_FACTOR, hs);
+	        LinHashMap <Integer, Integer> skw = new LinHashMap <> (Integer.class, Integer.class, SLOTS, SplitPolicy.LOAD_FACTOR, hs);
+	        for (int i = 0; i < 20000; i++) { seq.put (i, i); skw.put (i << 10, i); }
+	        skw.put (Integer.MIN_VALUE, 0);
+	        out.println (hs + " sequential:"); seq.printHistogram ();
+	        out.println (hs + " multiples of 1024:"); skw.printHistogram ();
+	    } // for
+
+	    out.println("\nTest 6: Comparing the split policies.");
+	    benchmark (100000);
 	    
 	    out.println("\n\n^^^^^^ TESTING BEGINS AT THE START OF THE CONSOLE OUTPUT. ^^^^^^");
 
 	}
     } // main
 
-} // LinHashMap class
\ No newline at end of file
+} // LinHashMap class
\ No newline at end of file
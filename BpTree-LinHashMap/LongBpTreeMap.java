@@ -0,0 +1,514 @@
+/***********************************************************************************
+ * @file LongBpTreeMap.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * The LongBpTreeMap class provides B+Tree maps specialized for keys consisting of a
+ * single integer attribute.  Keys are stored in primitive long arrays inside the nodes
+ * and are located by binary search, so look ups via get (long) neither allocate nor
+ * dispatch through Comparable.  As in BpTreeMap, each divider key in an internal node
+ * is the largest key in its left subtree: keys in the left subtree are "<=", while keys
+ * in the right subtree are ">".  The map presents itself as a SortedMap keyed by KeyType
+ * so that it can be used as a Table index.
+ */
+public class LongBpTreeMap <V>
+       extends AbstractMap <KeyType, V>
+       implements Serializable, Cloneable, SortedMap <KeyType, V>, LongMap <V>
+{
+    /** The maximum fanout (number of children) for a B+Tree node.
+     */
+    private static final int ORDER = 64;
+
+    /** The number of keys kept in the left node when a node splits.
+     */
+    private static final int MID = ORDER / 2;
+
+    /** The class of the key attribute (Long, Integer, Short or Byte).
+     */
+    private final Class keyClass;
+
+    /** The class for type V.
+     */
+    private final Class <V> classV;
+
+    /********************************************************************************
+     * This inner class defines nodes that are stored in the B+tree map.  Nodes have
+     * room for one extra key so that a full node can first take the new key and then
+     * be split.
+     */
+    private static class Node
+           implements Serializable
+    {
+        boolean   isLeaf;                             // whether the node is a leaf
+        int       nKeys;                              // number of active keys
+        long []   key;                                // array of keys
+        Object [] ref;                                // array of values/child nodes
+        Node      next;                               // next leaf (leaves only)
+
+        Node (boolean _isLeaf)
+        {
+            isLeaf = _isLeaf;
+            nKeys  = 0;
+            key    = new long [ORDER];
+            ref    = new Object [ORDER + 1];
+        } // constructor
+
+        /****************************************************************************
+         * Find the "<=" match position in this node using binary search.
+         * @param k  the key to be matched
+         * @return  the first position i with k <= key[i], where nKeys indicates no match
+         */
+        int find (long k)
+        {
+            int lo = 0, hi = nKeys;
+            while (lo < hi) {
+                int m = (lo + hi) >>> 1;
+                if (key [m] < k) lo = m + 1; else hi = m;
+            } // while
+            return lo;
+        } // find
+    } // Node inner class
+
+    /** The root of the B+Tree
+     */
+    private Node root;
+
+    /** The first (leftmost) leaf in the B+Tree
+     */
+    private final Node firstLeaf;
+
+    /** The divider key produced by the most recent split (largest left)
+     */
+    private long divider;
+
+    /** The counter for the number nodes accessed (for performance testing)
+     */
+    private int count = 0;
+
+    /** The counter for the total number of keys in the B+Tree Map
+     */
+    private int keyCount = 0;
+
+    /********************************************************************************
+     * Construct an empty B+Tree map.
+     * @param _keyClass  the class of the single integer key attribute
+     * @param _classV    the class for values (V)
+     */
+    public LongBpTreeMap (Class _keyClass, Class <V> _classV)
+    {
+        keyClass  = _keyClass;
+        classV    = _classV;
+        root      = new Node (true);
+        firstLeaf = root;
+    } // constructor
+
+    /********************************************************************************
+     * Return null to use the natural order based on the key type.
+     */
+    public Comparator <? super KeyType> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return a set view of the entries in key order.  The view walks the leaf level,
+     * so nothing is copied until the entries are visited.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <KeyType, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, V>> () {
+            public int size () { return keyCount; }
+
+            public Iterator <Map.Entry <KeyType, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <KeyType, V>> () {
+                    Node n = firstLeaf;
+                    int  i = 0;
+
+                    public boolean hasNext ()
+                    {
+                        while (n != null && i >= n.nKeys) { n = n.next; i = 0; }
+                        return n != null;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry <KeyType, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Map.Entry <KeyType, V> e = new AbstractMap.SimpleEntry <> (toKey (n.key [i]), (V) n.ref [i]);
+                        i++;
+                        return e;
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up the value in the B+Tree map.  Keys that are not a
+     * single integer attribute are never found.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    public V get (Object key)
+    {
+        if (key instanceof KeyType) {
+            KeyType k = (KeyType) key;
+            if (k.length () == 1 && k.get (0) instanceof Number) return get (((Number) k.get (0)).longValue ());
+        } // if
+        return null;
+    } // get
+
+    /********************************************************************************
+     * Given the primitive key, look up the value in the B+Tree map.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (long key)
+    {
+        Node n = root;
+        count++;
+        while (! n.isLeaf) {
+            n = (Node) n.ref [n.find (key)];
+            count++;
+        } // while
+        int i = n.find (key);
+        return (i < n.nKeys && n.key [i] == key) ? (V) n.ref [i] : null;
+    } // get
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map.
+     * @param key    the key to insert (a single integer attribute)
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    public V put (KeyType key, V value)
+    {
+        return put (((Number) key.get (0)).longValue (), value);
+    } // put
+
+    /********************************************************************************
+     * Put the primitive key-value pair in the B+Tree map, replacing the value if the
+     * key is already present.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (long key, V value)
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.find (key)];
+        int i = n.find (key);
+        if (i < n.nKeys && n.key [i] == key) {
+            V old = (V) n.ref [i];
+            n.ref [i] = value;
+            return old;
+        } // if
+
+        Node rt = insert (key, value, root);
+        if (rt != null) root = makeRoot (root, divider, rt);
+        keyCount++;
+        return null;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the B+Tree map.  Keys that are not a single
+     * integer attribute are never found.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    public V remove (Object key)
+    {
+        if (key instanceof KeyType) {
+            KeyType k = (KeyType) key;
+            if (k.length () == 1 && k.get (0) instanceof Number) return remove (((Number) k.get (0)).longValue ());
+        } // if
+        return null;
+    } // remove
+
+    /********************************************************************************
+     * Remove the primitive key (and its value) from the B+Tree map.  Deletion is lazy:
+     * the key is removed from its leaf, but leaves are neither merged nor rebalanced,
+     * so a leaf may become empty.  The dividers above it remain valid separators.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (long key)
+    {
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.find (key)];
+        int i = n.find (key);
+        if (i == n.nKeys || n.key [i] != key) return null;
+        V old = (V) n.ref [i];
+        System.arraycopy (n.key, i + 1, n.key, i, n.nKeys - i - 1);
+        System.arraycopy (n.ref, i + 1, n.ref, i, n.nKeys - i - 1);
+        n.ref [--n.nKeys] = null;
+        keyCount--;
+        return old;
+    } // remove
+
+    /********************************************************************************
+     * Return the first (smallest) key in the B+Tree map.
+     * @return  the first key in the B+Tree map.
+     */
+    public KeyType firstKey ()
+    {
+        if (keyCount == 0) throw new NoSuchElementException ();
+        Node n = firstLeaf;
+        while (n.nKeys == 0) n = n.next;                              // skip leaves emptied by remove
+        return toKey (n.key [0]);
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key in the B+Tree map.
+     * @return  the last key in the B+Tree map.
+     */
+    public KeyType lastKey ()
+    {
+        if (keyCount == 0) throw new NoSuchElementException ();
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.nKeys];
+        if (n.nKeys == 0) {                                           // the last leaf was emptied by remove
+            for (Node l = firstLeaf; l != null; l = l.next) if (l.nKeys > 0) n = l;
+        } // if
+        return toKey (n.key [n.nKeys - 1]);
+    } // lastKey
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where key < toKey.
+     * @return  the submap with keys in the range [firstKey, toKey)
+     */
+    public SortedMap <KeyType, V> headMap (KeyType toKey)
+    {
+        return range (Long.MIN_VALUE, true, toLong (toKey));
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where fromKey <= key.
+     * @return  the submap with keys in the range [fromKey, lastKey]
+     */
+    public SortedMap <KeyType, V> tailMap (KeyType fromKey)
+    {
+        return range (toLong (fromKey), false, Long.MAX_VALUE);
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * i.e., fromKey <= key < toKey.
+     * @return  the submap with keys in the range [fromKey, toKey)
+     */
+    public SortedMap <KeyType, V> subMap (KeyType fromKey, KeyType toKey)
+    {
+        return range (toLong (fromKey), true, toLong (toKey));
+    } // subMap
+
+    /********************************************************************************
+     * Collect the entries with lo <= key < hi (or key <= hi when open) into a new map,
+     * descending to the first qualifying leaf and then following the leaf links.
+     * @param lo    the lower bound (inclusive)
+     * @param open  whether the upper bound is exclusive
+     * @param hi    the upper bound
+     * @return  the submap holding the qualifying entries
+     */
+    @SuppressWarnings("unchecked")
+    private SortedMap <KeyType, V> range (long lo, boolean open, long hi)
+    {
+        LongBpTreeMap <V> map = new LongBpTreeMap <> (keyClass, classV);
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.find (lo)];
+        for (int i = n.find (lo); n != null; n = n.next, i = 0) {
+            for ( ; i < n.nKeys; i++) {
+                long k = n.key [i];
+                if (open ? k >= hi : k > hi) return map;
+                map.put (k, (V) n.ref [i]);
+            } // for
+        } // for
+        return map;
+    } // range
+
+    /********************************************************************************
+     * Return the size (number of keys) in the B+Tree.
+     * @return  the size of the B+Tree
+     */
+    public int size ()
+    {
+        return keyCount;
+    } // size
+
+    /********************************************************************************
+     * Print the B+Tree using a pre-order traversal and indenting each level.
+     * @param n      the current node to print
+     * @param level  the current level of the B+Tree
+     */
+    private void print (Node n, int level)
+    {
+        if (n == root) out.println ("LongBpTreeMap");
+        for (int j = 0; j < level; j++) out.print ("\t");
+        out.print ("[ . ");
+        for (int i = 0; i < n.nKeys; i++) out.print (n.key [i] + " . ");
+        out.println ("]");
+        if ( ! n.isLeaf) {
+            for (int i = 0; i <= n.nKeys; i++) print ((Node) n.ref [i], level + 1);
+        } // if
+    } // print
+
+    /********************************************************************************
+     * Recursive helper function for inserting a new key in B+trees.  When node n
+     * splits, the divider key (largest left) is left in the divider field.
+     * @param key  the key to insert
+     * @param ref  the value to insert
+     * @param n    the current node
+     * @return  the newly allocated right sibling node of n, or null if n did not split
+     */
+    private Node insert (long key, Object ref, Node n)
+    {
+        int i = n.find (key);
+        if (n.isLeaf) {
+            wedge (key, ref, n, i, 0);
+        } else {
+            Node rt = insert (key, ref, (Node) n.ref [i]);
+            if (rt == null) return null;
+            wedge (divider, rt, n, i, 1);
+        } // if
+        return (n.nKeys == ORDER) ? split (n) : null;
+    } // insert
+
+    /********************************************************************************
+     * Make a new root, linking to left and right child node, separated by a divider key.
+     * @param ref0  the reference to the left child node
+     * @param key0  the divider key - largest left
+     * @param ref1  the reference to the right child node
+     * @return  the node for the new root
+     */
+    private Node makeRoot (Node ref0, long key0, Node ref1)
+    {
+        Node nr    = new Node (false);
+        nr.nKeys   = 1;
+        nr.ref [0] = ref0;
+        nr.key [0] = key0;
+        nr.ref [1] = ref1;
+        return nr;
+    } // makeRoot
+
+    /********************************************************************************
+     * Wedge the key-ref pair into node n at position i.  Shift right to make room.
+     * @param key    the key to insert
+     * @param ref    the value/node to insert
+     * @param n      the current node
+     * @param i      the insertion position within node n
+     * @param shift  0 to place ref left of the key (leaves), 1 to place it right
+     */
+    private void wedge (long key, Object ref, Node n, int i, int shift)
+    {
+        System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+        System.arraycopy (n.ref, i + shift, n.ref, i + shift + 1, n.nKeys - i + 1 - shift);
+        n.key [i]         = key;
+        n.ref [i + shift] = ref;
+        n.nKeys++;
+    } // wedge
+
+    /********************************************************************************
+     * Split the overfull node n, keeping the first half in n and moving the rest to
+     * a new right sibling.  The divider key is left in the divider field.
+     * @param n  the node to split
+     * @return  the right sibling node
+     */
+    private Node split (Node n)
+    {
+        Node rt = new Node (n.isLeaf);
+        if (n.isLeaf) {
+            rt.nKeys = n.nKeys - MID;
+            System.arraycopy (n.key, MID, rt.key, 0, rt.nKeys);
+            System.arraycopy (n.ref, MID, rt.ref, 0, rt.nKeys);
+            divider  = n.key [MID - 1];
+            rt.next  = n.next;
+            n.next   = rt;
+        } else {
+            rt.nKeys = n.nKeys - MID - 1;                             // key[MID] moves up
+            System.arraycopy (n.key, MID + 1, rt.key, 0, rt.nKeys);
+            System.arraycopy (n.ref, MID + 1, rt.ref, 0, rt.nKeys + 1);
+            divider  = n.key [MID];
+        } // if
+        Arrays.fill (n.ref, MID + (n.isLeaf ? 0 : 1), ORDER + 1, null);
+        n.nKeys = MID;
+        return rt;
+    } // split
+
+    /********************************************************************************
+     * Convert a single attribute key to a primitive long.
+     * @param key  the key to convert
+     * @return  the key as a long
+     */
+    private static long toLong (KeyType key)
+    {
+        return ((Number) key.get (0)).longValue ();
+    } // toLong
+
+    /********************************************************************************
+     * Convert a primitive key back into a KeyType of the original key class.
+     * @param k  the primitive key
+     * @return  the key as a KeyType
+     */
+    private KeyType toKey (long k)
+    {
+        if (keyClass == Integer.class) return new KeyType ((int) k);
+        if (keyClass == Short.class)   return new KeyType ((short) k);
+        if (keyClass == Byte.class)    return new KeyType ((byte) k);
+        return new KeyType (k);
+    } // toKey
+
+    /********************************************************************************
+     * The main method used for testing.
+     * @param  the command-line arguments (args[0] gives number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = 10000;
+        if (args.length == 1) totalKeys = Integer.valueOf (args [0]);
+
+        LongBpTreeMap <Integer> bpt = new LongBpTreeMap <> (Integer.class, Integer.class);
+        Random rng = new Random (1);
+        List <Integer> keys = new ArrayList <> ();
+        for (int i = 1; i <= totalKeys; i += 2) keys.add (i);
+        Collections.shuffle (keys, rng);
+        for (int k : keys) bpt.put ((long) k, k * k);
+
+        int wrong = 0;
+        for (int i = 0; i <= totalKeys; i++) {
+            Integer v = bpt.get ((long) i);
+            if ((i % 2 == 1) ? v == null || v != i * i : v != null) wrong++;
+        } // for
+        out.println ("size = " + bpt.size () + ", wrong look ups = " + wrong);
+        out.println ("firstKey = " + bpt.firstKey () + ", lastKey = " + bpt.lastKey ());
+        out.println ("subMap [10, 20) = " + bpt.subMap (new KeyType (10), new KeyType (20)));
+
+        long prev = Long.MIN_VALUE; boolean sorted = true;
+        for (Map.Entry <KeyType, Integer> e : bpt.entrySet ()) {
+            long k = toLong (e.getKey ());
+            if (k <= prev) sorted = false;
+            prev = k;
+        } // for
+        out.println ("entrySet in order = " + sorted);
+
+        for (int i = 1; i <= totalKeys; i += 4) bpt.remove ((long) i);
+        wrong = 0;
+        for (int i = 0; i <= totalKeys; i++) {
+            if ((bpt.get ((long) i) != null) != (i % 4 == 3)) wrong++;
+        } // for
+        out.println ("after removing every other key: size = " + bpt.size () + ", wrong look ups = " + wrong
+                     + ", firstKey = " + bpt.firstKey ());
+        out.println ("Average number of nodes accessed = " + bpt.count / (double) totalKeys);
+    } // main
+
+} // LongBpTreeMap class
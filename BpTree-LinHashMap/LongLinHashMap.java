@@ -0,0 +1,649 @@
+/************************************************************************************
+ * @file LongLinHashMap.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/************************************************************************************
+ * This class provides hash maps that use the Linear Hashing algorithm, specialized
+ * for keys consisting of a single integer attribute.  Keys are stored in primitive
+ * long arrays inside the buckets, so look ups via get (long) neither allocate nor
+ * dispatch through Comparable.  The map still presents itself as a Map keyed by
+ * KeyType so that it can be used as a Table index.
+ */
+public class LongLinHashMap <V>
+       extends AbstractMap <KeyType, V>
+       implements Serializable, Cloneable, Map <KeyType, V>, LongMap <V>
+{
+    /** The default number of slots (for key-value pairs) per bucket.
+     */
+    private static final int SLOTS = 10;
+
+    /** The threshold for the load factor (entries / slots in home buckets).
+     */
+    private static final double LOAD_FACTOR_THRESHOLD = 0.8;
+
+    /** The longest chain (home bucket plus overflow buckets) allowed by CHAIN_LENGTH.
+     */
+    private static final int MAX_CHAIN = 2;
+
+    /** The load factor below which the table contracts by merging its last bucket.
+     */
+    private static final double CONTRACT_THRESHOLD = 0.5;
+
+    /** The initial number of home buckets (the table never contracts below this).
+     */
+    private static final int INIT_SIZE = 8;
+
+    /** The class of the key attribute (Long, Integer, Short or Byte).
+     */
+    private final Class keyClass;
+
+    /** The class for type V.
+     */
+    private final Class <V> classV;
+
+    /** The number of slots per bucket.
+     */
+    private final int slots;
+
+    /** The policy deciding when to split.
+     */
+    private final LinHashMap.SplitPolicy policy;
+
+    /** The function mixing the hash codes of keys before they are masked.
+     */
+    private final HashStrategy strategy;
+
+    /********************************************************************************
+     * This inner class defines buckets that are stored in the hash table.
+     */
+    private static class Bucket
+           implements Serializable
+    {
+        int       nKeys;
+        long []   key;
+        Object [] value;
+        Bucket    next;
+
+        Bucket (int slots, Bucket n)
+        {
+            nKeys = 0;
+            key   = new long [slots];
+            value = new Object [slots];
+            next  = n;
+        } // constructor
+    } // Bucket inner class
+
+    /** Whether the last append had to add an overflow bucket.
+     */
+    private boolean overflowed = false;
+
+    /** Overflow buckets released by splits and removals, kept for reuse.
+     */
+    private Bucket free = null;
+
+    /** The list of buckets making up the hash table.
+     */
+    private final List <Bucket> hTable;
+
+    /** The modulus for low resolution hashing
+     */
+    private int mod1;
+
+    /** The modulus for high resolution hashing
+     */
+    private int mod2;
+
+    /** Counter for the number buckets accessed (for performance testing).
+     */
+    private int count = 0;
+
+    /** The index of the next bucket to split.
+     */
+    private int split = 0;
+
+    /** The number of key-value pairs stored in the hash table.
+     */
+    private int nEntries = 0;
+
+    /********************************************************************************
+     * Construct a hash table that uses Linear Hashing.
+     * @param _keyClass  the class of the single integer key attribute
+     * @param _classV    the class for values (V)
+     */
+    public LongLinHashMap (Class _keyClass, Class <V> _classV)
+    {
+        this (_keyClass, _classV, SLOTS, LinHashMap.SplitPolicy.LOAD_FACTOR);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a hash table that uses Linear Hashing with the given bucket size and
+     * split policy.
+     * @param _keyClass  the class of the single integer key attribute
+     * @param _classV    the class for values (V)
+     * @param _slots     the number of slots per bucket
+     * @param _policy    the policy deciding when to split
+     */
+    public LongLinHashMap (Class _keyClass, Class <V> _classV, int _slots, LinHashMap.SplitPolicy _policy)
+    {
+        this (_keyClass, _classV, _slots, _policy, HashStrategy.MURMUR3);
+    } // constructor
+
+    /********************************************************************************
+     * Construct a hash table that uses Linear Hashing with the given bucket size, split
+     * policy and hash strategy.
+     * @param _keyClass  the class of the single integer key attribute
+     * @param _classV    the class for values (V)
+     * @param _slots     the number of slots per bucket
+     * @param _policy    the policy deciding when to split
+     * @param _strategy  the function mixing hash codes
+     */
+    public LongLinHashMap (Class _keyClass, Class <V> _classV, int _slots, LinHashMap.SplitPolicy _policy,
+                           HashStrategy _strategy)
+    {
+        if (_slots < 1) throw new IllegalArgumentException ("LongLinHashMap: slots must be positive");
+        keyClass = _keyClass;
+        classV   = _classV;
+        slots    = _slots;
+        policy   = _policy;
+        strategy = _strategy;
+        hTable   = new ArrayList <> ();
+        mod1     = INIT_SIZE;
+        mod2     = 2 * mod1;
+        for (int i = 0; i < mod1; i++) hTable.add (new Bucket (slots, null));
+    } // constructor
+
+    /********************************************************************************
+     * Return a set view of the entries as pairs of keys and values.  The view is
+     * backed by the buckets, so nothing is copied until the entries are visited.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <KeyType, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, V>> () {
+            public int size () { return nEntries; }
+
+            public Iterator <Map.Entry <KeyType, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <KeyType, V>> () {
+                    int    i = 0;                                  // current home bucket
+                    Bucket b = hTable.get (0);                     // current bucket in chain
+                    int    j = 0;                                  // current slot in bucket
+
+                    public boolean hasNext ()
+                    {
+                        while (b == null || j >= b.nKeys) {
+                            if (b != null && b.next != null) { b = b.next; j = 0; continue; }
+                            if (++i >= hTable.size ()) return false;
+                            b = hTable.get (i); j = 0;
+                        } // while
+                        return true;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry <KeyType, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Map.Entry <KeyType, V> e = new AbstractMap.SimpleEntry <> (toKey (b.key [j]), (V) b.value [j]);
+                        j++;
+                        return e;
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up the value in the hash table.  Keys that are not a
+     * single integer attribute are never found.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    public V get (Object key)
+    {
+        if (key instanceof KeyType) {
+            KeyType k = (KeyType) key;
+            if (k.length () == 1 && k.get (0) instanceof Number) return get (((Number) k.get (0)).longValue ());
+        } // if
+        return null;
+    } // get
+
+    /********************************************************************************
+     * Given the primitive key, look up the value in the hash table.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (long key)
+    {
+        for (Bucket bucket = hTable.get (address (key)); bucket != null; bucket = bucket.next) {
+            count++;
+            for (int j = 0; j < bucket.nKeys; j++) {
+                if (bucket.key [j] == key) return (V) bucket.value [j];
+            } // for
+        } // for
+        return null;
+    } // get
+
+    /********************************************************************************
+     * Put the key-value pair in the hash table.
+     * @param key    the key to insert (a single integer attribute)
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    public V put (KeyType key, V value)
+    {
+        return put (((Number) key.get (0)).longValue (), value);
+    } // put
+
+    /********************************************************************************
+     * Put the primitive key-value pair in the hash table, replacing the value if the
+     * key is already present.  A new key may trigger a split, as decided by the split
+     * policy.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (long key, V value)
+    {
+        Bucket bucket = hTable.get (address (key));
+        for (Bucket b = bucket; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (b.key [j] == key) {
+                    V old = (V) b.value [j];
+                    b.value [j] = value;
+                    return old;
+                } // if
+            } // for
+        } // for
+
+        nEntries++;
+        overflowed = false;
+        int chain  = append (bucket, key, value);
+
+        boolean doSplit;
+        switch (policy) {
+        case CHAIN_LENGTH: doSplit = chain > MAX_CHAIN; break;
+        case ON_OVERFLOW:  doSplit = overflowed;        break;
+        default:           doSplit = nEntries > LOAD_FACTOR_THRESHOLD * capacity ();
+        } // switch
+        if (doSplit) split ();
+        return null;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the hash table.  Keys that are not a single
+     * integer attribute are never found.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    public V remove (Object key)
+    {
+        if (key instanceof KeyType) {
+            KeyType k = (KeyType) key;
+            if (k.length () == 1 && k.get (0) instanceof Number) return remove (((Number) k.get (0)).longValue ());
+        } // if
+        return null;
+    } // remove
+
+    /********************************************************************************
+     * Remove the primitive key (and its value) from the hash table.  The last entry
+     * in the bucket chain is moved into the hole, and an overflow bucket left empty
+     * is released.  When the load factor falls below CONTRACT_THRESHOLD the table
+     * contracts by one bucket.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (long key)
+    {
+        Bucket home = hTable.get (address (key));
+        for (Bucket b = home; b != null; b = b.next) {
+            count++;
+            for (int j = 0; j < b.nKeys; j++) {
+                if (b.key [j] == key) {
+                    V old = (V) b.value [j];
+                    Bucket prev = null, last = home;                   // find the last bucket in chain
+                    while (last.next != null) { prev = last; last = last.next; }
+                    int k = --last.nKeys;                               // move its last entry into the hole
+                    b.key [j] = last.key [k]; b.value [j] = last.value [k];
+                    last.value [k] = null;
+                    if (last.nKeys == 0 && prev != null) { prev.next = null; release (last); }
+
+                    nEntries--;
+                    if (hTable.size () > INIT_SIZE && nEntries < CONTRACT_THRESHOLD * capacity ()) contract ();
+                    return old;
+                } // if
+            } // for
+        } // for
+        return null;
+    } // remove
+
+    /********************************************************************************
+     * Contract the hash table by undoing the most recent split: the last bucket is
+     * merged back into the bucket it was split from, and split (and possibly mod1
+     * and mod2) is decremented.
+     */
+    private void contract ()
+    {
+        if (split == 0) {
+            mod2  = mod1;
+            mod1  = mod1 / 2;
+            split = mod1 - 1;
+        } else {
+            split--;
+        } // if
+
+        Bucket image = hTable.remove (hTable.size () - 1);          // bucket split + mod1
+        Bucket home  = hTable.get (split);
+        for (Bucket b = image; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) append (home, b.key [j], b.value [j]);
+        } // for
+        release (image.next);
+        image.next = null;
+        Arrays.fill (image.value, 0, image.nKeys, null);
+    } // contract
+
+    /********************************************************************************
+     * Split the bucket at position split, moving the entries that rehash to its image
+     * (split + mod1) into a new bucket chain.  The entries that stay are compacted in
+     * place within the old chain, and any overflow buckets emptied are kept for reuse.
+     */
+    private void split ()
+    {
+        Bucket home  = hTable.get (split);
+        Bucket image = newBucket ();
+        hTable.add (image);
+
+        Bucket wb   = home;                                        // write bucket
+        Bucket prev = null;                                        // bucket before wb
+        int    wj   = 0;                                           // write slot
+        for (Bucket b = home; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                long k = b.key [j];
+                if (h2 (hash (k)) == split) {
+                    wb.key [wj] = k; wb.value [wj] = b.value [j];
+                    if (++wj == slots) { wb.nKeys = slots; prev = wb; wb = wb.next; wj = 0; }
+                } else {
+                    append (image, k, b.value [j]);
+                } // if
+            } // for
+        } // for
+        if (wb != null) {
+            for (int j = wj; j < wb.nKeys; j++) wb.value [j] = null;
+            wb.nKeys = wj;
+            Bucket rest = wb.next;
+            if (wj == 0 && prev != null) { prev.next = null; rest = wb; }
+            else wb.next = null;
+            release (rest);
+        } // if
+
+        if (++split == mod1) {
+            mod1  = mod2;
+            mod2  = 2 * mod1;
+            split = 0;
+        } // if
+    } // split
+
+    /********************************************************************************
+     * Append the key-value pair to the first bucket in the chain with a free slot,
+     * adding an overflow bucket if the chain is full.
+     * @param bucket  the home bucket of the chain
+     * @param key     the key to append
+     * @param value   the value to append
+     * @return  the position in the chain of the bucket receiving the key (1 for home)
+     */
+    private int append (Bucket bucket, long key, Object value)
+    {
+        Bucket b = bucket;
+        int    n = 1;
+        while (b.nKeys == slots) {
+            if (b.next == null) { b.next = newBucket (); overflowed = true; }
+            b = b.next;
+            n++;
+        } // while
+        b.key [b.nKeys]   = key;
+        b.value [b.nKeys] = value;
+        b.nKeys++;
+        return n;
+    } // append
+
+    /********************************************************************************
+     * Return an empty bucket, reusing a released overflow bucket when available.
+     * @return  the empty bucket
+     */
+    private Bucket newBucket ()
+    {
+        if (free == null) return new Bucket (slots, null);
+        Bucket b = free;
+        free     = b.next;
+        b.next   = null;
+        return b;
+    } // newBucket
+
+    /********************************************************************************
+     * Release a chain of overflow buckets for reuse, clearing their values.
+     * @param b  the first bucket in the chain (may be null)
+     */
+    private void release (Bucket b)
+    {
+        while (b != null) {
+            Bucket n = b.next;
+            Arrays.fill (b.value, 0, b.nKeys, null);
+            b.nKeys = 0;
+            b.next  = free;
+            free    = b;
+            b       = n;
+        } // while
+    } // release
+
+    /********************************************************************************
+     * Return the number of key-value pairs in the hash table.
+     * @return  the size of the hash table
+     */
+    public int size ()
+    {
+        return nEntries;
+    } // size
+
+    /********************************************************************************
+     * Return the capacity (slots * number of home buckets) of the hash table.
+     * @return  the number of home slots
+     */
+    private int capacity ()
+    {
+        return slots * (mod1 + split);
+    } // capacity
+
+    /********************************************************************************
+     * Return the number of overflow buckets currently chained to home buckets.
+     * @return  the number of overflow buckets
+     */
+    private int overflowBuckets ()
+    {
+        int n = 0;
+        for (Bucket b : hTable) for (b = b.next; b != null; b = b.next) n++;
+        return n;
+    } // overflowBuckets
+
+    /********************************************************************************
+     * Benchmark the split policies, as LinHashMap.benchmark does: for each policy and
+     * bucket size, insert n keys, look each one up, and report the average number of
+     * buckets accessed per look up and the estimated memory used per key by the
+     * buckets (object and array headers plus the long key and value slots, assuming
+     * compressed references).
+     * @param n  the number of keys to insert
+     */
+    public static void benchmark (int n)
+    {
+        out.println ("policy         slots  buckets  overflow  probes/get  bytes/key");
+        for (LinHashMap.SplitPolicy p : LinHashMap.SplitPolicy.values ()) {
+            for (int s : new int [] { 4, 10, 32 }) {
+                LongLinHashMap <Integer> ht = new LongLinHashMap <> (Integer.class, Integer.class, s, p);
+                for (int i = 0; i < n; i++) ht.put (i * 7919L, i);
+                ht.count = 0;
+                for (int i = 0; i < n; i++) ht.get (i * 7919L);
+
+                int  overflow = ht.overflowBuckets ();
+                int  buckets  = ht.hTable.size () + overflow;
+                long bytes    = (long) buckets * (24 + 2 * 16 + 12 * s);
+                out.printf ("%-14s %5d %8d %9d %11.3f %10.1f%n", p, s, ht.hTable.size (), overflow,
+                            ht.count / (double) n, bytes / (double) n);
+            } // for
+        } // for
+    } // benchmark
+
+    /********************************************************************************
+     * Print the hash table.
+     */
+    public void print ()
+    {
+        out.println ("Hash Table (Linear Hashing over long keys)");
+        out.println ("-------------------------------------------");
+        for (int i = 0; i < hTable.size (); i++) {
+            out.print ("Bucket " + i + ":");
+            for (Bucket b = hTable.get (i); b != null; b = b.next) {
+                out.print (" [");
+                for (int j = 0; j < b.nKeys; j++) out.print (" " + b.key [j]);
+                out.print (" ]");
+            } // for
+            out.println ();
+        } // for
+        out.println ("-------------------------------------------");
+    } // print
+
+    /********************************************************************************
+     * Convert a primitive key back into a KeyType of the original key class.
+     * @param k  the primitive key
+     * @return  the key as a KeyType
+     */
+    private KeyType toKey (long k)
+    {
+        if (keyClass == Integer.class) return new KeyType ((int) k);
+        if (keyClass == Short.class)   return new KeyType ((short) k);
+        if (keyClass == Byte.class)    return new KeyType ((byte) k);
+        return new KeyType (k);
+    } // toKey
+
+    /********************************************************************************
+     * Hash the key: fold it to the hash code Long.hashCode gives, then mix it with
+     * the hash strategy.
+     * @param key  the key to hash
+     * @return  the mixed hash code
+     */
+    private int hash (long key)
+    {
+        return strategy.mix ((int) (key ^ (key >>> 32)));
+    } // hash
+
+    /********************************************************************************
+     * Hash the key using the low resolution hash function.  mod1 is a power of 2, so
+     * the function masks the low bits of the (mixed) hash code.
+     * @param hash  the hash code of the key
+     * @return  the location of the bucket chain containing the key-value pair
+     */
+    private int h (int hash)
+    {
+        return hash & (mod1 - 1);
+    } // h
+
+    /********************************************************************************
+     * Hash the key using the high resolution hash function (a mask, mod2 = 2 * mod1).
+     * @param hash  the hash code of the key
+     * @return  the location of the bucket chain containing the key-value pair
+     */
+    private int h2 (int hash)
+    {
+        return hash & (mod2 - 1);
+    } // h2
+
+    /********************************************************************************
+     * Return the home bucket for the key, taking into account the buckets that have
+     * already been split in the current round.
+     * @param key  the key to locate
+     * @return  the location of the bucket chain for the key
+     */
+    private int address (long key)
+    {
+        int hash = hash (key);
+        int i    = h (hash);
+        return (i < split) ? h2 (hash) : i;
+    } // address
+
+    /********************************************************************************
+     * Return the distribution of chain lengths: element n is the number of home
+     * buckets whose chain holds n keys.
+     * @return  the histogram of keys per bucket chain
+     */
+    public int [] histogram ()
+    {
+        int [] hist = new int [1];
+        for (Bucket home : hTable) {
+            int n = 0;
+            for (Bucket b = home; b != null; b = b.next) n += b.nKeys;
+            if (n >= hist.length) hist = Arrays.copyOf (hist, n + 1);
+            hist [n]++;
+        } // for
+        return hist;
+    } // histogram
+
+    /********************************************************************************
+     * Print the histogram of keys per bucket chain along with the longest chain in
+     * buckets, for checking how evenly the hash strategy spreads the keys.
+     */
+    public void printHistogram ()
+    {
+        int [] hist = histogram ();
+        out.print ("keys per chain: count =");
+        for (int n = 0; n < hist.length; n++) if (hist [n] > 0) out.print (" " + n + ":" + hist [n]);
+        out.println ("  (longest chain = " + ((hist.length - 1 + slots - 1) / slots) + " buckets)");
+    } // printHistogram
+
+    /********************************************************************************
+     * The main method used for testing.
+     * @param  the command-line arguments (args [0] gives number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = 3000;
+        if (args.length == 1) totalKeys = Integer.valueOf (args [0]);
+
+        LongLinHashMap <Integer> ht = new LongLinHashMap <> (Integer.class, Integer.class);
+        for (int i = 1; i <= totalKeys; i++) ht.put (i, i * i);
+
+        int missing = 0;
+        for (int i = 1; i <= totalKeys; i++) if (ht.get ((long) i) == null || ht.get ((long) i) != i * i) missing++;
+        out.println ("size = " + ht.size () + ", buckets = " + ht.hTable.size () + ", missing = " + missing);
+        out.println ("get (new KeyType (7)) = " + ht.get (new KeyType (7)));
+        out.println ("get (0) = " + ht.get (0L));
+        for (int i = 1; i <= totalKeys; i += 2) ht.remove ((long) i);
+        missing = 0;
+        for (int i = 1; i <= totalKeys; i++) if ((ht.get ((long) i) == null) != (i % 2 == 1)) missing++;
+        out.println ("after removing the odd keys: size = " + ht.size () + ", buckets = " + ht.hTable.size ()
+                     + ", wrong = " + missing);
+        out.println ("entrySet ().size () = " + ht.entrySet ().size ());
+        for (int i = 2; i <= totalKeys; i += 2) ht.remove ((long) i);
+        out.println ("after removing all the keys: size = " + ht.size () + ", buckets = " + ht.hTable.size ()
+                     + ", mod1 = " + ht.mod1 + ", split = " + ht.split);
+        out.println ("Average number of buckets accessed = " + ht.count / (double) (2 * totalKeys));
+
+        out.println ("\nBucket distribution of sequential and skewed keys.");
+        for (HashStrategy hs : HashStrategy.Mix.values ()) {
+            LongLinHashMap <Integer> seq = new LongLinHashMap <> (Long.class, Integer.class, SLOTS, LinHashMap.SplitPolicy.LOAD_FACTOR, hs);
+            LongLinHashMap <Integer> skw = new LongLinHashMap <> (Long.class, Integer.class, SLOTS, LinHashMap.SplitPolicy.LOAD_FACTOR, hs);
+            for (int i = 0; i < 20000; i++) { seq.put ((long) i, i); skw.put ((long) i << 10, i); }
+            out.println (hs + " sequential:"); seq.printHistogram ();
+            out.println (hs + " multiples of 1024:"); skw.printHistogram ();
+        } // for
+
+        out.println ("\nComparing the split policies.");
+        benchmark (100000);
+    } // main
+
+} // LongLinHashMap class
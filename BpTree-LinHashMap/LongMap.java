@@ -0,0 +1,37 @@
+/************************************************************************************
+ * @file LongMap.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+/************************************************************************************
+ * The LongMap interface is implemented by index maps that are specialized for keys
+ * consisting of a single integer attribute (Long, Integer, Short or Byte).  Such maps
+ * store their keys in primitive long arrays and allow look ups without wrapping the
+ * key in a KeyType.
+ */
+public interface LongMap <V>
+{
+    /********************************************************************************
+     * Given the primitive key, look up the value in the map.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    V get (long key);
+
+    /********************************************************************************
+     * Put the primitive key-value pair in the map.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    V put (long key, V value);
+
+    /********************************************************************************
+     * Remove the primitive key (and its value) from the map.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    V remove (long key);
+
+} // LongMap interface
@@ -0,0 +1,405 @@
+/************************************************************************************
+ * @file OpenHashMap.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/************************************************************************************
+ * This class provides hash maps that use open addressing with Robin Hood linear
+ * probing.  The table is made of parallel arrays (hash codes, keys and values), so a
+ * probe scans consecutive hash codes and only calls equals on a hash match.  Robin
+ * Hood insertion keeps probe sequences short and lets unsuccessful look ups stop as
+ * soon as a resident entry is closer to its home slot than the key would be.
+ * Growing the table is incremental: after a resize the old table is migrated a few
+ * slots at a time by subsequent operations, so no single insert pays for a full rehash.
+ * A key removed from the old table leaves a tombstone there (entries of the old
+ * table never move), so no entry can slip back behind the migration point.
+ */
+public class OpenHashMap <K, V>
+       extends AbstractMap <K, V>
+       implements Serializable, Cloneable, Map <K, V>
+{
+    /** The initial capacity of the table (a power of 2).
+     */
+    private static final int INIT_CAPACITY = 16;
+
+    /** The maximum load factor before the table grows.
+     */
+    private static final double LOAD_FACTOR = 0.8;
+
+    /** The number of old slots migrated per operation while resizing.
+     */
+    private static final int MIGRATE_STEP = 8;
+
+    /********************************************************************************
+     * This inner class defines the parallel arrays making up one table.  A hash code
+     * of 0 marks an empty slot.  A null key with a non-zero hash code (only in the
+     * old table during a resize) is a tombstone marking a removed entry; it keeps
+     * its hash code so probe sequences and distances stay intact.
+     */
+    private static class Slots
+           implements Serializable
+    {
+        final int []    hash;
+        final Object [] key;
+        final Object [] value;
+        final int       mask;
+        int             n;                            // number of occupied slots
+
+        Slots (int capacity)
+        {
+            hash  = new int [capacity];
+            key   = new Object [capacity];
+            value = new Object [capacity];
+            mask  = capacity - 1;
+        } // constructor
+
+        /****************************************************************************
+         * Return the probe distance of the entry in slot i from its home slot.
+         * @param i  the slot to check
+         */
+        int dist (int i)
+        {
+            return (i - hash [i]) & mask;
+        } // dist
+
+        /****************************************************************************
+         * Find the slot holding the key with the given hash code.
+         * @param h  the (non-zero) hash code of the key
+         * @param k  the key to find
+         * @return  the slot holding the key or -1 if not found
+         */
+        int find (int h, Object k)
+        {
+            for (int i = h & mask, d = 0; ; i = (i + 1) & mask, d++) {
+                int hi = hash [i];
+                if (hi == 0 || dist (i) < d) return -1;
+                if (hi == h && k.equals (key [i])) return i;
+            } // for
+        } // find
+
+        /****************************************************************************
+         * Insert a key that is known to be absent, displacing entries that are closer
+         * to their home slot (Robin Hood).
+         * @param h  the (non-zero) hash code of the key
+         * @param k  the key to insert
+         * @param v  the value to insert
+         */
+        void insert (int h, Object k, Object v)
+        {
+            for (int i = h & mask, d = 0; ; i = (i + 1) & mask, d++) {
+                if (hash [i] == 0) {
+                    hash [i] = h; key [i] = k; value [i] = v;
+                    n++;
+                    return;
+                } // if
+                int di = dist (i);
+                if (di < d) {                                        // take from the rich
+                    int th = hash [i]; Object tk = key [i], tv = value [i];
+                    hash [i] = h; key [i] = k; value [i] = v;
+                    h = th; k = tk; v = tv; d = di;
+                } // if
+            } // for
+        } // insert
+
+        /****************************************************************************
+         * Remove the entry in slot i, shifting the following entries of the probe
+         * sequence back by one (no tombstones are left behind).
+         * @param i  the slot to clear
+         */
+        void delete (int i)
+        {
+            for (int j = (i + 1) & mask; hash [j] != 0 && dist (j) > 0; i = j, j = (j + 1) & mask) {
+                hash [i] = hash [j]; key [i] = key [j]; value [i] = value [j];
+            } // for
+            hash [i] = 0; key [i] = null; value [i] = null;
+            n--;
+        } // delete
+    } // Slots inner class
+
+    /** The current table, which receives all inserts.
+     */
+    private Slots table;
+
+    /** The table being migrated into the current table (null when not resizing).
+     */
+    private Slots old = null;
+
+    /** The next slot of the old table to migrate.
+     */
+    private int migrated = 0;
+
+    /** The number of key-value pairs in the map.
+     */
+    private int size = 0;
+
+    /** Counter for the number of slots probed (for performance testing).
+     */
+    private int count = 0;
+
+    /********************************************************************************
+     * Construct an empty hash map that uses open addressing.
+     */
+    public OpenHashMap ()
+    {
+        table = new Slots (INIT_CAPACITY);
+    } // constructor
+
+    /********************************************************************************
+     * Return a set view of the entries as pairs of keys and values.  During a resize
+     * the entries still waiting in the old table are included.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return size; }
+
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new EntryIterator ();
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /********************************************************************************
+     * This inner class iterates over the slots of the current table, then over the
+     * slots of the old table not yet migrated, skipping keys that are also in the
+     * current table.
+     */
+    private class EntryIterator
+            implements Iterator <Map.Entry <K, V>>
+    {
+        final Slots t  = table, o = old;                 // the tables when iteration started
+        final int   j0 = (old == null) ? 0 : migrated;   // the first unmigrated slot of o
+        int     i      = 0;                              // the next slot of t, then of o
+        boolean inOld  = false;
+        int     next   = -1;                             // the slot of the next entry (-1 if not found yet)
+
+        /** Advance to the next occupied slot, returning false at the end.
+         */
+        boolean seek ()
+        {
+            if (next >= 0) return true;
+            if (! inOld) {
+                for ( ; i < t.hash.length; i++) if (t.hash [i] != 0) { next = i++; return true; }
+                if (o == null) return false;
+                inOld = true;
+                i     = j0;
+            } // if
+            for ( ; i < o.hash.length; i++) {
+                if (o.key [i] != null && t.find (o.hash [i], o.key [i]) < 0) {
+                    next = i++;
+                    return true;
+                } // if
+            } // for
+            return false;
+        } // seek
+
+        public boolean hasNext ()
+        {
+            return seek ();
+        } // hasNext
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry <K, V> next ()
+        {
+            if (! seek ()) throw new NoSuchElementException ();
+            Slots s = inOld ? o : t;
+            int   k = next;
+            next = -1;
+            return new AbstractMap.SimpleEntry <> ((K) s.key [k], (V) s.value [k]);
+        } // next
+    } // EntryIterator inner class
+
+    /********************************************************************************
+     * Given the key, look up the value in the hash map.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        int h = hash (key);
+        count++;
+        int i = table.find (h, key);
+        if (i >= 0) return (V) table.value [i];
+        if (old != null && (i = old.find (h, key)) >= 0) return (V) old.value [i];
+        return null;
+    } // get
+
+    /********************************************************************************
+     * Put the key-value pair in the hash map, replacing the value if the key is
+     * already present.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        int h = hash (key);
+        if (old != null) migrate ();
+
+        int i = table.find (h, key);
+        if (i >= 0) {
+            V prev = (V) table.value [i];
+            table.value [i] = value;
+            return prev;
+        } // if
+
+        V prev = null;
+        if (old != null && (i = old.find (h, key)) >= 0) prev = (V) old.value [i];
+        else size++;
+
+        if (table.n + 1 > LOAD_FACTOR * table.hash.length) grow ();
+        table.insert (h, key, value);
+        return prev;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the hash map.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        int h = hash (key);
+        if (old != null) migrate ();
+
+        V prev = null;
+        int i = table.find (h, key);
+        if (i >= 0) { prev = (V) table.value [i]; table.delete (i); }
+        if (old != null && (i = old.find (h, key)) >= 0) {
+            if (prev == null) prev = (V) old.value [i];
+            old.key [i]   = null;                               // a tombstone: entries of the old
+            old.value [i] = null;                               // table never move
+        } // if
+        if (prev != null) size--;
+        return prev;
+    } // remove
+
+    /********************************************************************************
+     * Start a resize: the current table becomes the old table and a table of twice
+     * the capacity takes its place.  Any previous resize is completed first.
+     */
+    private void grow ()
+    {
+        while (old != null) migrate ();
+        old      = table;
+        table    = new Slots (2 * old.hash.length);
+        migrated = 0;
+    } // grow
+
+    /********************************************************************************
+     * Migrate the next MIGRATE_STEP slots of the old table into the current table.
+     * A key that was re-inserted into the current table meanwhile keeps its new value,
+     * and a removed key (tombstone) is dropped.  Migrated slots are left in place, so
+     * probe sequences in the old table stay intact.
+     */
+    private void migrate ()
+    {
+        int end = Math.min (migrated + MIGRATE_STEP, old.hash.length);
+        for ( ; migrated < end; migrated++) {
+            int h = old.hash [migrated];
+            if (old.key [migrated] != null && table.find (h, old.key [migrated]) < 0) {
+                table.insert (h, old.key [migrated], old.value [migrated]);
+            } // if
+        } // for
+        if (migrated == old.hash.length) old = null;
+    } // migrate
+
+    /********************************************************************************
+     * Return the number of key-value pairs in the hash map.
+     * @return  the size of the hash map
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Print the hash map, one occupied slot per line with its probe distance.
+     */
+    public void print ()
+    {
+        out.println ("Hash Table (Open Addressing, Robin Hood)");
+        out.println ("-------------------------------------------");
+        for (int i = 0; i < table.hash.length; i++) {
+            if (table.hash [i] != 0) {
+                out.println ("slot " + i + " (dist " + table.dist (i) + "): " + table.key [i] + " -> " + table.value [i]);
+            } // if
+        } // for
+        out.println ("-------------------------------------------");
+    } // print
+
+    /********************************************************************************
+     * Compute the (non-zero) hash code used to place the key, mixing the bits of
+     * hashCode so that similar keys land in different slots.
+     * @param key  the key to hash
+     * @return  the mixed hash code, never 0
+     */
+    private static int hash (Object key)
+    {
+        int h = key.hashCode () * 0x9E3779B9;
+        h ^= h >>> 16;
+        return (h == 0) ? 1 : h;
+    } // hash
+
+    /********************************************************************************
+     * The main method used for testing.
+     * @param  the command-line arguments (args [0] gives number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = 100000;
+        if (args.length == 1) totalKeys = Integer.valueOf (args [0]);
+
+        OpenHashMap <KeyType, Integer> ht = new OpenHashMap <> ();
+        for (int i = 1; i <= totalKeys; i++) ht.put (new KeyType ("name" + i), i);
+
+        int wrong = 0;
+        for (int i = 1; i <= totalKeys; i++) {
+            Integer v = ht.get (new KeyType ("name" + i));
+            if (v == null || v != i) wrong++;
+        } // for
+        for (int i = 1; i <= totalKeys; i += 2) ht.remove (new KeyType ("name" + i));
+        for (int i = 1; i <= totalKeys; i++) {
+            Integer v = ht.get (new KeyType ("name" + i));
+            if ((i % 2 == 1) ? v != null : v == null || v != i) wrong++;
+        } // for
+
+        long probes = 0;
+        for (int i = 0; i < ht.table.hash.length; i++) if (ht.table.hash [i] != 0) probes += ht.table.dist (i) + 1;
+        out.println ("size = " + ht.size () + ", capacity = " + ht.table.hash.length + ", wrong = " + wrong);
+        out.println ("entrySet ().size () = " + ht.entrySet ().size ());
+        out.println ("Average probe length = " + probes / (double) ht.table.n);
+
+        // puts, removes and gets on a small key range, so removes keep hitting resizes in
+        // progress, checked against a HashMap after every operation
+        int diverged = -1;
+        for (int seed = 0; seed < 20 && diverged < 0; seed++) {
+            Random rng = new Random (seed);
+            OpenHashMap <Integer, Integer> om = new OpenHashMap <> ();
+            HashMap <Integer, Integer>     hm = new HashMap <> ();
+            for (int op = 0; op < 20000 && diverged < 0; op++) {
+                Integer k = rng.nextInt (1000), v = rng.nextInt ();
+                Object  x, y;
+                switch (rng.nextInt (3)) {
+                case 0:  x = om.remove (k);  y = hm.remove (k);  break;
+                case 1:  x = om.put (k, v);  y = hm.put (k, v);  break;
+                default: x = om.get (k);     y = hm.get (k);
+                } // switch
+                if (! Objects.equals (x, y) || om.size () != hm.size ()) diverged = op;
+            } // for
+            if (diverged < 0 && ! new HashMap <> (om).equals (hm)) diverged = 20000;
+        } // for
+        out.println ("resize while removing: " + ((diverged < 0) ? "matches HashMap" : "diverged at op " + diverged));
+    } // main
+
+} // OpenHashMap class
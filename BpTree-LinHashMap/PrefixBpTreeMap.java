@@ -0,0 +1,759 @@
+/************************************************************************************
+ * @file PrefixBpTreeMap.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * The PrefixBpTreeMap class provides B+Tree maps whose nodes hold keys as bytes in
+ * the order-preserving BinaryKey encoding rather than as KeyType objects.
+ * <p>
+ * A leaf stores its keys front coded in a single byte array: each entry is the
+ * length of the prefix it shares with the previous key and the length of the rest,
+ * both as one or two byte varints, followed by the rest of the key.  Neighbouring
+ * keys such as name123456 and name123457, or (title, year) pairs with the same
+ * title, thus cost a few bytes each, and integer attributes, being big-endian, keep
+ * only the low bytes that differ from the previous key, i.e., roughly a delta.  A
+ * leaf is searched sequentially without decoding the keys: tracking how much of
+ * the probe matches the previous key is enough to skip most entries on their
+ * shared length alone.
+ * <p>
+ * Each divider in an internal node is suffix truncated: it is the shortest prefix
+ * of the smallest key of the right subtree that is greater than the largest key of
+ * the left, or that largest key when no prefix is.  As in BpTreeMap, keys in the
+ * left subtree are "<=" the divider, while keys in the right subtree are ">".
+ * Deletion is lazy, as in LongBpTreeMap.  The map decodes keys only when they are
+ * returned (entrySet, firstKey, lastKey), given the domains of the key attributes.
+ */
+public class PrefixBpTreeMap <V>
+       extends AbstractMap <KeyType, V>
+       implements Serializable, Cloneable, SortedMap <KeyType, V>
+{
+    /** The maximum fanout (number of children) for a B+Tree node.
+     */
+    private static final int ORDER = 64;
+
+    /** The number of keys kept in the left node when a node splits.
+     */
+    private static final int MID = ORDER / 2;
+
+    /** The initial size in bytes of the key array of a leaf.
+     */
+    private static final int INIT_BYTES = 256;
+
+    /** The longest encoded key allowed (the largest two byte varint).
+     */
+    private static final int MAX_KEY = 0x7fff;
+
+    /** The domains of the key attributes, for decoding the keys.
+     */
+    private final Class [] keyDomain;
+
+    /** The class for type V.
+     */
+    private final Class <V> classV;
+
+    /********************************************************************************
+     * This inner class defines nodes that are stored in the B+tree map.  Leaves keep
+     * their keys front coded in data, internal nodes keep their dividers in key.
+     * Nodes have room for one extra key so that a full node can first take the new
+     * key and then be split.
+     */
+    private static class Node
+           implements Serializable
+    {
+        boolean   isLeaf;                             // whether the node is a leaf
+        int       nKeys;                              // number of active keys
+        byte []   data;                               // front coded keys (leaves only)
+        int       used;                               // bytes in use in data
+        byte [][] key;                                // dividers (internal nodes only)
+        Object [] ref;                                // array of values/child nodes
+        Node      next;                               // next leaf (leaves only)
+
+        Node (boolean _isLeaf)
+        {
+            isLeaf = _isLeaf;
+            nKeys  = 0;
+            if (isLeaf) data = new byte [INIT_BYTES];
+            else        key  = new byte [ORDER][];
+            ref    = new Object [ORDER + 1];
+        } // constructor
+
+        /****************************************************************************
+         * Find the "<=" match position in this internal node using binary search.
+         * @param k  the encoded key to be matched
+         * @return  the first position i with k <= key[i], where nKeys indicates no match
+         */
+        int find (byte [] k)
+        {
+            int lo = 0, hi = nKeys;
+            while (lo < hi) {
+                int m = (lo + hi) >>> 1;
+                if (Arrays.compareUnsigned (key [m], k) < 0) lo = m + 1; else hi = m;
+            } // while
+            return lo;
+        } // find
+    } // Node inner class
+
+    /********************************************************************************
+     * This inner class holds the outcome of searching a leaf for a key: the first
+     * entry whose key is >= the probe, where that entry lies in the leaf's bytes, and
+     * the prefix lengths needed to re-encode its neighbourhood.
+     */
+    private static class Seek
+    {
+        int     i;                                    // position of the first key >= probe
+        int     off;                                  // offset of its entry (used if none)
+        int     shared;                               // its stored shared prefix length
+        int     sufOff;                               // offset of its suffix
+        int     sufLen;                               // length of its suffix
+        int     m;                                    // prefix of probe shared with key i-1
+        int     q;                                    // prefix of probe shared with key i
+        boolean found;                                // whether key i equals the probe
+    } // Seek inner class
+
+    /** The root of the B+Tree
+     */
+    private Node root;
+
+    /** The first (leftmost) leaf in the B+Tree
+     */
+    private final Node firstLeaf;
+
+    /** The divider key produced by the most recent split
+     */
+    private byte [] divider;
+
+    /** The counter for the number nodes accessed (for performance testing)
+     */
+    private int count = 0;
+
+    /** The counter for the total number of keys in the B+Tree Map
+     */
+    private int keyCount = 0;
+
+    /********************************************************************************
+     * Construct an empty B+Tree map.
+     * @param _keyDomain  the domains of the key attributes
+     * @param _classV     the class for values (V)
+     */
+    public PrefixBpTreeMap (Class [] _keyDomain, Class <V> _classV)
+    {
+        keyDomain = _keyDomain;
+        classV    = _classV;
+        root      = new Node (true);
+        firstLeaf = root;
+    } // constructor
+
+    /********************************************************************************
+     * Return null to use the natural order based on the key type.
+     */
+    public Comparator <? super KeyType> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return a set view of the entries in key order.  The view walks the leaf level,
+     * decoding each key as it is visited.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <KeyType, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, V>> () {
+            public int size () { return keyCount; }
+
+            public Iterator <Map.Entry <KeyType, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <KeyType, V>> () {
+                    Cursor c = new Cursor (firstLeaf);
+                    boolean ahead = false;                            // whether c holds the next entry
+
+                    public boolean hasNext ()
+                    {
+                        if (! ahead) ahead = c.advance ();
+                        return ahead;
+                    } // hasNext
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry <KeyType, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        ahead = false;
+                        return new AbstractMap.SimpleEntry <> (toKey (c.cur, c.len), (V) c.value);
+                    } // next
+                }; // Iterator
+            } // iterator
+        }; // AbstractSet
+    } // entrySet
+
+    /********************************************************************************
+     * This inner class walks the leaf level from a given leaf, rebuilding each key
+     * from the prefix it shares with the previous one.
+     */
+    private class Cursor
+    {
+        Node    n;                                    // current leaf
+        int     i = 0;                                // next entry in n
+        int     o = 0;                                // offset of the next entry in n
+        byte [] cur = new byte [64];                  // the current key
+        int     len;                                  // its length
+        Object  value;                                // its value
+
+        Cursor (Node start)
+        {
+            n = start;
+        } // constructor
+
+        /****************************************************************************
+         * Move to the next key.
+         * @return  whether there is one
+         */
+        boolean advance ()
+        {
+            while (n != null && i >= n.nKeys) { n = n.next; i = 0; o = 0; }
+            if (n == null) return false;
+            byte [] d = n.data;
+            int p = d [o++];
+            if (p < 0) p = (p & 0x7f) | (d [o++] & 0xff) << 7;
+            int l = d [o++];
+            if (l < 0) l = (l & 0x7f) | (d [o++] & 0xff) << 7;
+            if (p + l > cur.length) cur = Arrays.copyOf (cur, Math.max (2 * cur.length, p + l));
+            System.arraycopy (d, o, cur, p, l);
+            len   = p + l;
+            value = n.ref [i++];
+            o    += l;
+            return true;
+        } // advance
+    } // Cursor inner class
+
+    /********************************************************************************
+     * Given the key, look up the value in the B+Tree map.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        if (! (key instanceof KeyType)) return null;
+        byte [] k = BinaryKey.of ((KeyType) key).bytes ();
+        Node    n = leaf (k);
+        Seek    s = seek (n, k);
+        return s.found ? (V) n.ref [s.i] : null;
+    } // get
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map, replacing the value if the key is
+     * already present.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    public V put (KeyType key, V value)
+    {
+        return put (BinaryKey.of (key).bytes (), value);
+    } // put
+
+    /********************************************************************************
+     * Put the encoded key-value pair in the B+Tree map.
+     * @param k      the encoded key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    private V put (byte [] k, V value)
+    {
+        if (k.length > MAX_KEY) throw new IllegalArgumentException ("PrefixBpTreeMap: key too long");
+        Node n = leaf (k);
+        Seek s = seek (n, k);
+        if (s.found) {
+            V old = (V) n.ref [s.i];
+            n.ref [s.i] = value;
+            return old;
+        } // if
+
+        Node rt = insert (k, value, root);
+        if (rt != null) root = makeRoot (root, divider, rt);
+        keyCount++;
+        return null;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the B+Tree map.  The entry is cut out of its
+     * leaf and the next entry is re-encoded against the key before it.  Leaves are
+     * neither merged nor rebalanced, so a leaf may become empty.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        if (! (key instanceof KeyType)) return null;
+        byte [] k = BinaryKey.of ((KeyType) key).bytes ();
+        Node    n = leaf (k);
+        Seek    s = seek (n, k);
+        if (! s.found) return null;
+        V old = (V) n.ref [s.i];
+
+        int end = s.sufOff + s.sufLen;                                // end of the removed entry
+        byte [] repl = new byte [0];
+        if (s.i + 1 < n.nKeys) {                                      // re-encode the next entry
+            byte [] d = n.data;
+            int o = end;
+            int p2 = d [o++];
+            if (p2 < 0) p2 = (p2 & 0x7f) | (d [o++] & 0xff) << 7;
+            int l2 = d [o++];
+            if (l2 < 0) l2 = (l2 & 0x7f) | (d [o++] & 0xff) << 7;
+            int ns = Math.min (s.shared, p2);                         // prefix shared with the key before
+            byte [] suf = new byte [p2 - ns + l2];
+            System.arraycopy (k, ns, suf, 0, p2 - ns);                // the removed key holds those bytes
+            System.arraycopy (d, o, suf, p2 - ns, l2);
+            repl = entry (ns, suf, 0, suf.length);
+            end  = o + l2;
+        } // if
+        splice (n, s.off, end, repl);
+        System.arraycopy (n.ref, s.i + 1, n.ref, s.i, n.nKeys - s.i - 1);
+        n.ref [--n.nKeys] = null;
+        keyCount--;
+        return old;
+    } // remove
+
+    /********************************************************************************
+     * Return the first (smallest) key in the B+Tree map.
+     * @return  the first key in the B+Tree map.
+     */
+    public KeyType firstKey ()
+    {
+        if (keyCount == 0) throw new NoSuchElementException ();
+        Cursor c = new Cursor (firstLeaf);
+        c.advance ();
+        return toKey (c.cur, c.len);
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key in the B+Tree map.
+     * @return  the last key in the B+Tree map.
+     */
+    public KeyType lastKey ()
+    {
+        if (keyCount == 0) throw new NoSuchElementException ();
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.nKeys];
+        if (n.nKeys == 0) {                                           // the last leaf was emptied by remove
+            for (Node l = firstLeaf; l != null; l = l.next) if (l.nKeys > 0) n = l;
+        } // if
+        byte [] k = keys (n) [n.nKeys - 1];
+        return toKey (k, k.length);
+    } // lastKey
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where key < toKey.
+     * @return  the submap with keys in the range [firstKey, toKey)
+     */
+    public SortedMap <KeyType, V> headMap (KeyType toKey)
+    {
+        return range (null, BinaryKey.of (toKey).bytes ());
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where fromKey <= key.
+     * @return  the submap with keys in the range [fromKey, lastKey]
+     */
+    public SortedMap <KeyType, V> tailMap (KeyType fromKey)
+    {
+        return range (BinaryKey.of (fromKey).bytes (), null);
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * i.e., fromKey <= key < toKey.
+     * @return  the submap with keys in the range [fromKey, toKey)
+     */
+    public SortedMap <KeyType, V> subMap (KeyType fromKey, KeyType toKey)
+    {
+        return range (BinaryKey.of (fromKey).bytes (), BinaryKey.of (toKey).bytes ());
+    } // subMap
+
+    /********************************************************************************
+     * Collect the entries with lo <= key < hi into a new map, descending to the leaf
+     * holding lo and then following the leaf links.
+     * @param lo  the encoded lower bound (inclusive), or null for none
+     * @param hi  the encoded upper bound (exclusive), or null for none
+     * @return  the submap holding the qualifying entries
+     */
+    @SuppressWarnings("unchecked")
+    private SortedMap <KeyType, V> range (byte [] lo, byte [] hi)
+    {
+        PrefixBpTreeMap <V> map = new PrefixBpTreeMap <> (keyDomain, classV);
+        Cursor c = new Cursor ((lo == null) ? firstLeaf : leaf (lo));
+        while (c.advance ()) {
+            if (lo != null && Arrays.compareUnsigned (c.cur, 0, c.len, lo, 0, lo.length) < 0) continue;
+            if (hi != null && Arrays.compareUnsigned (c.cur, 0, c.len, hi, 0, hi.length) >= 0) break;
+            map.put (Arrays.copyOf (c.cur, c.len), (V) c.value);
+        } // while
+        return map;
+    } // range
+
+    /********************************************************************************
+     * Return the size (number of keys) in the B+Tree.
+     * @return  the size of the B+Tree
+     */
+    public int size ()
+    {
+        return keyCount;
+    } // size
+
+    /********************************************************************************
+     * Return the number of bytes used by the keys: the front coded entries of the
+     * leaves plus the dividers of the internal nodes.
+     * @return  the number of key bytes
+     */
+    public long keyBytes ()
+    {
+        return keyBytes (root);
+    } // keyBytes
+
+    /********************************************************************************
+     * Return the number of key bytes in the subtree rooted at n.
+     * @param n  the root of the subtree
+     * @return  the number of key bytes
+     */
+    private long keyBytes (Node n)
+    {
+        if (n.isLeaf) return n.used;
+        long b = 0;
+        for (int i = 0; i < n.nKeys; i++) b += n.key [i].length;
+        for (int i = 0; i <= n.nKeys; i++) b += keyBytes ((Node) n.ref [i]);
+        return b;
+    } // keyBytes
+
+    /********************************************************************************
+     * Print the B+Tree using a pre-order traversal and indenting each level.
+     * @param n      the current node to print
+     * @param level  the current level of the B+Tree
+     */
+    private void print (Node n, int level)
+    {
+        if (n == root) out.println ("PrefixBpTreeMap");
+        for (int j = 0; j < level; j++) out.print ("\t");
+        out.print ("[ . ");
+        byte [][] ks = n.isLeaf ? keys (n) : n.key;
+        for (int i = 0; i < n.nKeys; i++) out.print (new BinaryKey (ks [i]) + " . ");
+        out.println ("]");
+        if ( ! n.isLeaf) {
+            for (int i = 0; i <= n.nKeys; i++) print ((Node) n.ref [i], level + 1);
+        } // if
+    } // print
+
+    /********************************************************************************
+     * Descend from the root to the leaf that holds (or would hold) the key.
+     * @param k  the encoded key
+     * @return  the leaf
+     */
+    private Node leaf (byte [] k)
+    {
+        Node n = root;
+        count++;
+        while (! n.isLeaf) {
+            n = (Node) n.ref [n.find (k)];
+            count++;
+        } // while
+        return n;
+    } // leaf
+
+    /********************************************************************************
+     * Search the leaf for the first key >= k, without rebuilding the keys.  Let m be
+     * the length of the prefix k shares with the key before the current one, which
+     * is less than k.  A key sharing more than m bytes with its predecessor is less
+     * than k too, a key sharing fewer is greater, and only a key sharing exactly m
+     * bytes needs its rest compared with k.
+     * @param n  the leaf
+     * @param k  the encoded key
+     * @return  where the key is or would go
+     */
+    private static Seek seek (Node n, byte [] k)
+    {
+        Seek    s = new Seek ();
+        byte [] d = n.data;
+        int     o = 0, m = 0;
+        for (int i = 0; i < n.nKeys; i++) {
+            int e = o;
+            int p = d [o++];
+            if (p < 0) p = (p & 0x7f) | (d [o++] & 0xff) << 7;
+            int l = d [o++];
+            if (l < 0) l = (l & 0x7f) | (d [o++] & 0xff) << 7;
+            if (p > m) { o += l; continue; }                          // key i < k
+            int q = p;
+            boolean greater = p < m;                                  // key i > k
+            if (! greater) {
+                int j = 0;
+                while (j < l && m + j < k.length && d [o + j] == k [m + j]) j++;
+                q = m + j;
+                if (j == l && q == k.length) {
+                    s.found = true;
+                } else if (j < l && (q == k.length || (d [o + j] & 0xff) > (k [q] & 0xff))) {
+                    greater = true;
+                } else {
+                    m = q;                                            // key i < k
+                    o += l;
+                    continue;
+                } // if
+            } // if
+            s.i = i; s.off = e; s.shared = p; s.sufOff = o; s.sufLen = l; s.m = m; s.q = q;
+            return s;
+        } // for
+        s.i = n.nKeys; s.off = n.used; s.m = m;
+        return s;
+    } // seek
+
+    /********************************************************************************
+     * Recursive helper function for inserting a new key in B+trees.  When node n
+     * splits, the divider key is left in the divider field.
+     * @param k    the encoded key to insert
+     * @param ref  the value to insert
+     * @param n    the current node
+     * @return  the newly allocated right sibling node of n, or null if n did not split
+     */
+    private Node insert (byte [] k, Object ref, Node n)
+    {
+        if (n.isLeaf) {
+            wedge (k, ref, n);
+        } else {
+            int  i  = n.find (k);
+            Node rt = insert (k, ref, (Node) n.ref [i]);
+            if (rt == null) return null;
+            System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+            System.arraycopy (n.ref, i + 1, n.ref, i + 2, n.nKeys - i);
+            n.key [i]     = divider;
+            n.ref [i + 1] = rt;
+            n.nKeys++;
+        } // if
+        return (n.nKeys == ORDER) ? split (n) : null;
+    } // insert
+
+    /********************************************************************************
+     * Wedge the key-value pair into leaf n: encode the key against the key before
+     * it and re-encode the key after it against the new key.
+     * @param k    the encoded key to insert
+     * @param ref  the value to insert
+     * @param n    the leaf
+     */
+    private void wedge (byte [] k, Object ref, Node n)
+    {
+        Seek    s    = seek (n, k);
+        byte [] mine = entry (s.m, k, s.m, k.length);
+        byte [] repl = mine;
+        int     end  = s.off;
+        if (s.i < n.nKeys) {                                          // key i now follows k
+            byte [] next = entry (s.q, n.data, s.sufOff + s.q - s.shared, s.sufOff + s.sufLen);
+            repl = Arrays.copyOf (mine, mine.length + next.length);
+            System.arraycopy (next, 0, repl, mine.length, next.length);
+            end  = s.sufOff + s.sufLen;
+        } // if
+        splice (n, s.off, end, repl);
+        System.arraycopy (n.ref, s.i, n.ref, s.i + 1, n.nKeys - s.i);
+        n.ref [s.i] = ref;
+        n.nKeys++;
+    } // wedge
+
+    /********************************************************************************
+     * Make a new root, linking to left and right child node, separated by a divider key.
+     * @param ref0  the reference to the left child node
+     * @param key0  the divider key
+     * @param ref1  the reference to the right child node
+     * @return  the node for the new root
+     */
+    private Node makeRoot (Node ref0, byte [] key0, Node ref1)
+    {
+        Node nr    = new Node (false);
+        nr.nKeys   = 1;
+        nr.ref [0] = ref0;
+        nr.key [0] = key0;
+        nr.ref [1] = ref1;
+        return nr;
+    } // makeRoot
+
+    /********************************************************************************
+     * Split the overfull node n, keeping the first half in n and moving the rest to
+     * a new right sibling.  A leaf is re-encoded as two leaves, the right one starting
+     * with a whole key.  The divider key is left in the divider field.
+     * @param n  the node to split
+     * @return  the right sibling node
+     */
+    private Node split (Node n)
+    {
+        Node rt = new Node (n.isLeaf);
+        if (n.isLeaf) {
+            byte [][] ks = keys (n);
+            pack (n, ks, 0, MID);
+            pack (rt, ks, MID, ks.length);
+            System.arraycopy (n.ref, MID, rt.ref, 0, rt.nKeys);
+            divider  = separator (ks [MID - 1], ks [MID]);
+            rt.next  = n.next;
+            n.next   = rt;
+        } else {
+            rt.nKeys = n.nKeys - MID - 1;                             // key[MID] moves up
+            System.arraycopy (n.key, MID + 1, rt.key, 0, rt.nKeys);
+            System.arraycopy (n.ref, MID + 1, rt.ref, 0, rt.nKeys + 1);
+            divider  = n.key [MID];
+            Arrays.fill (n.key, MID, ORDER, null);
+            n.nKeys  = MID;
+        } // if
+        Arrays.fill (n.ref, MID + (n.isLeaf ? 0 : 1), ORDER + 1, null);
+        return rt;
+    } // split
+
+    /********************************************************************************
+     * Return the shortest divider s with left <= s < right: the shortest prefix of
+     * right that is greater than left, or left itself if that prefix is all of right.
+     * @param left   the largest key in the left subtree
+     * @param right  the smallest key in the right subtree (left < right)
+     * @return  the divider key
+     */
+    private static byte [] separator (byte [] left, byte [] right)
+    {
+        int c = Arrays.mismatch (left, right);
+        return (c + 1 < right.length) ? Arrays.copyOf (right, c + 1) : left;
+    } // separator
+
+    /********************************************************************************
+     * Rebuild all the keys of a leaf.
+     * @param n  the leaf
+     * @return  its keys in order
+     */
+    private static byte [][] keys (Node n)
+    {
+        byte [][] ks = new byte [n.nKeys][];
+        byte []   d  = n.data;
+        int       o  = 0;
+        for (int i = 0; i < n.nKeys; i++) {
+            int p = d [o++];
+            if (p < 0) p = (p & 0x7f) | (d [o++] & 0xff) << 7;
+            int l = d [o++];
+            if (l < 0) l = (l & 0x7f) | (d [o++] & 0xff) << 7;
+            ks [i] = (i == 0) ? new byte [l] : Arrays.copyOf (ks [i - 1], p + l);
+            System.arraycopy (d, o, ks [i], p, l);
+            o += l;
+        } // for
+        return ks;
+    } // keys
+
+    /********************************************************************************
+     * Front code the keys ks [from, to) into leaf n, replacing its entries.
+     * @param n     the leaf
+     * @param ks    the keys in order
+     * @param from  the first key
+     * @param to    the end of the keys
+     */
+    private static void pack (Node n, byte [][] ks, int from, int to)
+    {
+        n.used  = 0;
+        n.nKeys = to - from;
+        for (int i = from; i < to; i++) {
+            int p = (i == from) ? 0 : Arrays.mismatch (ks [i - 1], ks [i]);
+            byte [] e = entry (p, ks [i], p, ks [i].length);
+            if (n.used + e.length > n.data.length) n.data = Arrays.copyOf (n.data, Math.max (2 * n.data.length, n.used + e.length));
+            System.arraycopy (e, 0, n.data, n.used, e.length);
+            n.used += e.length;
+        } // for
+    } // pack
+
+    /********************************************************************************
+     * Encode an entry: the shared prefix length and the length of the rest as varints
+     * followed by the rest, taken from src [from, to).
+     * @param shared  the length of the prefix shared with the previous key
+     * @param src     the array holding the rest of the key
+     * @param from    the start of the rest in src
+     * @param to      the end of the rest in src
+     * @return  the encoded entry
+     */
+    private static byte [] entry (int shared, byte [] src, int from, int to)
+    {
+        int     l = to - from;
+        byte [] e = new byte [4 + l];
+        int     o = varint (e, 0, shared);
+        o = varint (e, o, l);
+        System.arraycopy (src, from, e, o, l);
+        return Arrays.copyOf (e, o + l);
+    } // entry
+
+    /********************************************************************************
+     * Write v (< 2^15) as a one byte varint if it is below 128, else as two bytes.
+     * @param b  the array to write to
+     * @param o  the offset to write at
+     * @param v  the value
+     * @return  the offset after the varint
+     */
+    private static int varint (byte [] b, int o, int v)
+    {
+        if (v < 0x80) { b [o] = (byte) v; return o + 1; }
+        b [o]     = (byte) (0x80 | v & 0x7f);
+        b [o + 1] = (byte) (v >>> 7);
+        return o + 2;
+    } // varint
+
+    /********************************************************************************
+     * Replace the bytes [from, to) of leaf n's data with repl, growing it if needed.
+     * @param n     the leaf
+     * @param from  the start of the bytes to replace
+     * @param to    the end of the bytes to replace
+     * @param repl  the replacement
+     */
+    private static void splice (Node n, int from, int to, byte [] repl)
+    {
+        int used = n.used + repl.length - (to - from);
+        if (used > n.data.length) n.data = Arrays.copyOf (n.data, Math.max (2 * n.data.length, used));
+        System.arraycopy (n.data, to, n.data, from + repl.length, n.used - to);
+        System.arraycopy (repl, 0, n.data, from, repl.length);
+        n.used = used;
+    } // splice
+
+    /********************************************************************************
+     * Decode an encoded key into a KeyType.
+     * @param k    the array holding the key
+     * @param len  the length of the key
+     * @return  the key as a KeyType
+     */
+    private KeyType toKey (byte [] k, int len)
+    {
+        return KeyType.of (BinaryKey.decode (ByteBuffer.wrap (k, 0, len), keyDomain));
+    } // toKey
+
+    /********************************************************************************
+     * The main method used for testing: compare against a TreeMap under random puts
+     * and removes, and report the bytes used per key.
+     * @param  the command-line arguments (args[0] gives number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        int totalKeys = 100000;
+        if (args.length == 1) totalKeys = Integer.valueOf (args [0]);
+
+        Class [] dom = { String.class, Integer.class };
+        PrefixBpTreeMap <Integer> bpt = new PrefixBpTreeMap <> (dom, Integer.class);
+        TreeMap <KeyType, Integer>  tm  = new TreeMap <> ();
+        Random rng = new Random (1);
+        int wrong = 0;
+        for (int i = 0; i < 3 * totalKeys; i++) {
+            KeyType k = new KeyType ("name" + rng.nextInt (totalKeys), rng.nextInt (3) + 1977);
+            if (rng.nextInt (4) == 0) { if (! Objects.equals (bpt.remove (k), tm.remove (k))) wrong++; }
+            else if (! Objects.equals (bpt.put (k, i), tm.put (k, i))) wrong++;
+        } // for
+        for (KeyType k : tm.keySet ()) if (! tm.get (k).equals (bpt.get (k))) wrong++;
+        if (! new ArrayList <> (bpt.entrySet ()).equals (new ArrayList <> (tm.entrySet ()))) wrong++;
+        KeyType lo = new KeyType ("name5", 1977), hi = new KeyType ("name6", 1977);
+        if (! bpt.subMap (lo, hi).equals (tm.subMap (lo, hi))) wrong++;
+        if (! bpt.firstKey ().equals (tm.firstKey ()) || ! bpt.lastKey ().equals (tm.lastKey ())) wrong++;
+        out.println ("size = " + bpt.size () + ", wrong = " + wrong);
+        out.printf ("key bytes per key = %.2f (whole BinaryKey encodings: %.2f)%n", bpt.keyBytes () / (double) bpt.size (),
+                    tm.keySet ().stream ().mapToInt (k -> BinaryKey.of (k).bytes ().length).average ().orElse (0));
+        out.println ("Average number of nodes accessed = " + bpt.count / (double) (4 * totalKeys));
+    } // main
+
+} // PrefixBpTreeMap class
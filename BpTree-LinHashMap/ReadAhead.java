@@ -0,0 +1,262 @@
+/************************************************************************************
+ * @file ReadAhead.java
+ *
+ * @author  Ankit Vaghela
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import static java.lang.System.out;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/************************************************************************************
+ * This class reads a range of pages of a file ahead of the consumer: a background
+ * thread reads the next pages into a bounded queue while the consumer works on the
+ * current one, so a sequential scan overlaps I/O with computation.  The depth of
+ * the queue adapts to the consumer: it doubles whenever the consumer has to wait
+ * for a page, and shrinks by one whenever the reader finds the queue full, so a
+ * slow consumer does not hold many pages in memory.
+ * <p>
+ * Page buffers are recycled: the buffer returned by next is reused once next is
+ * called again, so the consumer must be done with a page before it asks for the
+ * next one.  If the consumer stops consuming for IDLE_MILLIS the reader exits, and
+ * any remaining pages are read on the consumer's thread.
+ */
+public class ReadAhead
+       implements Iterator <ByteBuffer>, AutoCloseable
+{
+    /** The minimum and maximum number of pages read ahead.
+     */
+    private static final int MIN_DEPTH = 2, MAX_DEPTH = 64;
+
+    /** The time after which a reader facing a full queue gives up (abandoned scans).
+     */
+    private static final long IDLE_MILLIS = 10000;
+
+    /** The file channel to read from.
+     */
+    private final FileChannel ch;
+
+    /** The number of bytes per page.
+     */
+    private final int pageSize;
+
+    /** The page after the last page to read.
+     */
+    private final int last;
+
+    /** The pages read but not yet consumed, in page order.
+     */
+    private final ArrayDeque <ByteBuffer> queue = new ArrayDeque <> ();
+
+    /** The consumed page buffers available for reuse.
+     */
+    private final ArrayDeque <ByteBuffer> free = new ArrayDeque <> ();
+
+    /** The current number of pages to read ahead.
+     */
+    private int depth = 2 * MIN_DEPTH;
+
+    /** The next page for the reader to read and the next page for the consumer.
+     */
+    private int produced, consumed;
+
+    /** Whether the scan was closed and whether the reader has exited.
+     */
+    private boolean closed = false, stopped = false;
+
+    /** The exception raised by the reader, if any.
+     */
+    private IOException error;
+
+    /** The page last returned to the consumer (recycled by the following next).
+     */
+    private ByteBuffer current;
+
+    /** Counter for the number of times the consumer had to wait for a page.
+     */
+    private int stalls = 0;
+
+    /********************************************************************************
+     * Start reading pages first (inclusive) to last (exclusive) of the file ahead.
+     * @param _ch        the file channel
+     * @param _pageSize  the number of bytes per page
+     * @param first      the first page to read
+     * @param _last      the page after the last page to read
+     */
+    public ReadAhead (FileChannel _ch, int _pageSize, int first, int _last)
+    {
+        ch       = _ch;
+        pageSize = _pageSize;
+        last     = _last;
+        produced = consumed = first;
+        Thread reader = new Thread (this::prefetch, "read-ahead");
+        reader.setDaemon (true);
+        reader.start ();
+    } // constructor
+
+    /********************************************************************************
+     * The body of the reader thread: read pages in order, keeping at most depth
+     * pages in the queue.
+     */
+    private void prefetch ()
+    {
+        try {
+            for ( ; ; ) {
+                ByteBuffer b;
+                int        p;
+                synchronized (this) {
+                    if (! closed && queue.size () >= depth) {
+                        depth = Math.max (MIN_DEPTH, depth - 1);        // the consumer is the bottleneck
+                        long start = System.currentTimeMillis ();
+                        while (! closed && queue.size () >= depth) {
+                            wait (IDLE_MILLIS);
+                            if (System.currentTimeMillis () - start >= IDLE_MILLIS && queue.size () >= depth) return;
+                        } // while
+                    } // if
+                    if (closed || produced >= last) return;
+                    p = produced++;
+                    b = free.isEmpty () ? ByteBuffer.allocate (pageSize) : free.pop ();
+                } // synchronized
+                read (b, p);
+                synchronized (this) {
+                    queue.add (b);
+                    notifyAll ();
+                } // synchronized
+            } // for
+        } catch (IOException ex) {
+            synchronized (this) { error = ex; }
+        } catch (InterruptedException ex) {
+            // exit: the remaining pages are read by the consumer
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll ();
+            } // synchronized
+        } // try
+    } // prefetch
+
+    /********************************************************************************
+     * Return whether there are more pages.
+     * @return  whether next will return a page
+     */
+    public synchronized boolean hasNext ()
+    {
+        return consumed < last;
+    } // hasNext
+
+    /********************************************************************************
+     * Return the next page, waiting for the reader if it is not read yet.  A wait
+     * doubles the read-ahead depth.  The previous page's buffer is recycled.
+     * @return  the next page, positioned at 0
+     */
+    public ByteBuffer next ()
+    {
+        if (! hasNext ()) throw new NoSuchElementException ();
+        ByteBuffer b;
+        synchronized (this) {
+            if (current != null) free.push (current);
+            if (queue.isEmpty () && ! stopped) {
+                stalls++;
+                depth = Math.min (MAX_DEPTH, 2 * depth);
+                notifyAll ();
+                try {
+                    while (queue.isEmpty () && ! stopped) wait ();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread ().interrupt ();
+                } // try
+            } // if
+            if (error != null) throw new UncheckedIOException ("ReadAhead.next", error);
+            b = queue.poll ();
+            notifyAll ();
+        } // synchronized
+        if (b == null) {                                      // the reader has exited
+            b = ByteBuffer.allocate (pageSize);
+            try {
+                read (b, consumed);
+            } catch (IOException ex) {
+                throw new UncheckedIOException ("ReadAhead.next", ex);
+            } // try
+        } // if
+        synchronized (this) {
+            consumed++;
+            current = b;
+        } // synchronized
+        return b;
+    } // next
+
+    /********************************************************************************
+     * Read page p into the buffer (the part beyond the end of file is zeroed).
+     * @param b  the buffer
+     * @param p  the page number
+     */
+    private void read (ByteBuffer b, int p) throws IOException
+    {
+        b.clear ();
+        long pos = (long) p * pageSize;
+        while (b.hasRemaining () && ch.read (b, pos + b.position ()) > 0) ;
+        while (b.hasRemaining ()) b.put ((byte) 0);
+        b.clear ();
+    } // read
+
+    /********************************************************************************
+     * Stop reading ahead (the reader exits after its current page).
+     */
+    public synchronized void close ()
+    {
+        closed = true;
+        queue.clear ();
+        notifyAll ();
+    } // close
+
+    /********************************************************************************
+     * Return the current read-ahead depth.
+     * @return  the number of pages the reader may hold in the queue
+     */
+    public synchronized int depth ()
+    {
+        return depth;
+    } // depth
+
+    /********************************************************************************
+     * Return the number of times the consumer had to wait for a page.
+     * @return  the number of stalls
+     */
+    public synchronized int stalls ()
+    {
+        return stalls;
+    } // stalls
+
+    /********************************************************************************
+     * The main method used for testing: scan a file with a fast and with a slow
+     * consumer and show how the read-ahead depth adapts.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args) throws IOException
+    {
+        int  size = 4096, nPages = 2000;
+        File f    = File.createTempFile ("ReadAhead", ".dat");
+        try (RandomAccessFile raf = new RandomAccessFile (f, "rw")) {
+            FileChannel ch = raf.getChannel ();
+            ByteBuffer  b  = ByteBuffer.allocate (size);
+            for (int p = 0; p < nPages; p++) ch.write (b.clear ().putLong (0, p), (long) p * size);
+
+            for (long work : new long [] { 0, 50000 }) {
+                ReadAhead ra = new ReadAhead (ch, size, 0, nPages);
+                long sum = 0;
+                while (ra.hasNext ()) {
+                    sum += ra.next ().getLong (0);
+                    if (work > 0) LockSupport.parkNanos (work);              // simulated per-page work
+                } // while
+                ra.close ();
+                out.println ("work = " + work + " ns/page: sum = " + sum + " (expecting " + (long) nPages * (nPages - 1) / 2
+                             + "), stalls = " + ra.stalls () + ", final depth = " + ra.depth ());
+            } // for
+        } finally {
+            f.delete ();
+        } // try
+    } // main
+
+} // ReadAhead class
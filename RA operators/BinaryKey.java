@@ -0,0 +1,305 @@
+/*****************************************************************************************
+ * @file  BinaryKey.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The BinaryKey class provides keys normalized into an order-preserving byte encoding:
+ * comparing two encoded keys as unsigned bytes (memcmp) gives the same order as comparing
+ * the attribute values, so a composite key is compared in one pass over one array and
+ * hashed over one contiguous buffer.  Attributes are encoded as follows:
+ *   Byte, Short, Integer, Long - big-endian with the sign bit flipped;
+ *   Float, Double              - IEEE bits, all flipped if negative, else the sign bit;
+ *   Character                  - big-endian char;
+ *   String                     - each char as 1 to 3 bytes by the UTF-8 rules (so the order
+ *                                of chars is kept), 0x00 escaped as 0x00 0xFF and ended
+ *                                by 0x00 0x01, so a prefix sorts first.
+ * Values carry no type tags, so all keys compared with each other must come from the
+ * same domains, and decoding needs the domains.  DiskLinHashMap and PrefixBpTreeMap store
+ * their keys in this encoding.
+ */
+public class BinaryKey
+       implements Comparable <BinaryKey>, Serializable
+{
+    /** The encoded attribute values
+     */
+    private final byte [] bytes;
+
+    /** The cached hash code (0 until first computed)
+     */
+    private transient int hash;
+
+    /*************************************************************************************
+     * Construct a binary key from bytes that are already encoded.
+     * @param _bytes  the encoded key
+     */
+    public BinaryKey (byte [] _bytes)
+    {
+        bytes = _bytes;
+    } // constructor
+
+    /*************************************************************************************
+     * Construct a binary key by encoding the attribute values.
+     * @param vals  the attribute values
+     */
+    public BinaryKey (Comparable ... vals)
+    {
+        bytes = encode (vals);
+    } // constructor
+
+    /*************************************************************************************
+     * Construct a binary key by encoding the attribute values of a key.
+     * @param k  the key
+     */
+    public static BinaryKey of (KeyType k)
+    {
+        Comparable [] vals = new Comparable [k.length ()];
+        for (int i = 0; i < vals.length; i++) vals [i] = k.get (i);
+        return new BinaryKey (encode (vals));
+    } // of
+
+    /*************************************************************************************
+     * Return the encoded bytes (not a copy; do not modify).
+     * @return  the encoding of the key
+     */
+    public byte [] bytes ()
+    {
+        return bytes;
+    } // bytes
+
+    /*************************************************************************************
+     * Compare two keys as unsigned bytes.
+     * @param k  the other key (to compare with this)
+     * @return  resultant integer that's negative, zero or positive
+     */
+    public int compareTo (BinaryKey k)
+    {
+        return Integer.signum (Arrays.compareUnsigned (bytes, k.bytes));
+    } // compareTo
+
+    /*************************************************************************************
+     * Determine whether two keys are equal (same bytes).
+     * @param k  the other key (to compare with this)
+     * @return  true if equal, false otherwise
+     */
+    public boolean equals (Object k)
+    {
+        return k instanceof BinaryKey && Arrays.equals (bytes, ((BinaryKey) k).bytes);
+    } // equals
+
+    /*************************************************************************************
+     * Compute a hash code over the encoded bytes, mixed and cached.
+     * @return  an integer hash code value
+     */
+    public int hashCode ()
+    {
+        int h = hash;
+        if (h == 0) hash = h = HashStrategy.MURMUR3.mix (Arrays.hashCode (bytes));
+        return h;
+    } // hashCode
+
+    /*************************************************************************************
+     * Decode the key back into a KeyType, given the domains of its attributes.
+     * @param domain  the classes of the attributes
+     * @return  the key as a KeyType
+     */
+    public KeyType toKeyType (Class [] domain)
+    {
+        return KeyType.of (decode (ByteBuffer.wrap (bytes), domain));
+    } // toKeyType
+
+    /*************************************************************************************
+     * Write the key to a buffer, preceded by its length, for use in file formats.
+     * @param buf  the buffer to write to
+     */
+    public void writeTo (ByteBuffer buf)
+    {
+        buf.putShort ((short) bytes.length).put (bytes);
+    } // writeTo
+
+    /*************************************************************************************
+     * Read a key written by writeTo.
+     * @param buf  the buffer to read from
+     * @return  the key
+     */
+    public static BinaryKey readFrom (ByteBuffer buf)
+    {
+        byte [] b = new byte [buf.getShort () & 0xffff];
+        buf.get (b);
+        return new BinaryKey (b);
+    } // readFrom
+
+    /*************************************************************************************
+     * Encode attribute values into an order-preserving byte array.
+     * @param vals  the attribute values
+     * @return  the encoding
+     */
+    public static byte [] encode (Comparable [] vals)
+    {
+        int size = 0;
+        for (Comparable v : vals) size += maxSize (v);
+        ByteBuffer buf = ByteBuffer.allocate (size);
+        for (Comparable v : vals) encode (v, buf);
+        return Arrays.copyOf (buf.array (), buf.position ());
+    } // encode
+
+    /*************************************************************************************
+     * Return an upper bound on the number of bytes used to encode value v.
+     */
+    private static int maxSize (Comparable v)
+    {
+        if (v instanceof String)    return 3 * ((String) v).length () + 2;
+        if (v instanceof Integer || v instanceof Float) return 4;
+        if (v instanceof Long || v instanceof Double)   return 8;
+        if (v instanceof Short || v instanceof Character) return 2;
+        if (v instanceof Byte)      return 1;
+        throw new IllegalArgumentException ("BinaryKey: unsupported domain " + (v == null ? null : v.getClass ()));
+    } // maxSize
+
+    /*************************************************************************************
+     * Encode one attribute value into the buffer.
+     * @param v    the value
+     * @param buf  the buffer to write to
+     */
+    public static void encode (Comparable v, ByteBuffer buf)
+    {
+        if (v instanceof Integer)        buf.putInt ((Integer) v ^ Integer.MIN_VALUE);
+        else if (v instanceof String)    encodeString ((String) v, buf);
+        else if (v instanceof Long)      buf.putLong ((Long) v ^ Long.MIN_VALUE);
+        else if (v instanceof Double) {
+            long b = Double.doubleToLongBits ((Double) v);
+            buf.putLong ((b < 0) ? ~b : b ^ Long.MIN_VALUE);
+        } else if (v instanceof Float) {
+            int b = Float.floatToIntBits ((Float) v);
+            buf.putInt ((b < 0) ? ~b : b ^ Integer.MIN_VALUE);
+        } else if (v instanceof Short)     buf.putShort ((short) ((Short) v ^ Short.MIN_VALUE));
+        else if (v instanceof Byte)      buf.put ((byte) ((Byte) v ^ Byte.MIN_VALUE));
+        else if (v instanceof Character) buf.putChar ((Character) v);
+        else maxSize (v);                                              // throws
+    } // encode
+
+    /*************************************************************************************
+     * Encode a string char by char with the UTF-8 byte patterns, which keeps the order
+     * of String.compareTo (surrogates are encoded as ordinary chars).
+     */
+    private static void encodeString (String s, ByteBuffer buf)
+    {
+        for (int i = 0; i < s.length (); i++) {
+            char c = s.charAt (i);
+            if (c == 0) {
+                buf.put ((byte) 0).put ((byte) 0xFF);                  // escaped 0
+            } else if (c < 0x80) {
+                buf.put ((byte) c);
+            } else if (c < 0x800) {
+                buf.put ((byte) (0xC0 | c >> 6)).put ((byte) (0x80 | c & 0x3F));
+            } else {
+                buf.put ((byte) (0xE0 | c >> 12)).put ((byte) (0x80 | c >> 6 & 0x3F)).put ((byte) (0x80 | c & 0x3F));
+            } // if
+        } // for
+        buf.put ((byte) 0).put ((byte) 1);                            // terminator
+    } // encodeString
+
+    /*************************************************************************************
+     * Decode attribute values from the buffer, given their domains.
+     * @param buf     the buffer holding the encoding
+     * @param domain  the classes of the attributes
+     * @return  the attribute values
+     */
+    public static Comparable [] decode (ByteBuffer buf, Class [] domain)
+    {
+        Comparable [] vals = new Comparable [domain.length];
+        for (int j = 0; j < domain.length; j++) {
+            Class c = domain [j];
+            if (c == Integer.class)        vals [j] = buf.getInt () ^ Integer.MIN_VALUE;
+            else if (c == String.class)    vals [j] = decodeString (buf);
+            else if (c == Long.class)      vals [j] = buf.getLong () ^ Long.MIN_VALUE;
+            else if (c == Double.class) {
+                long b = buf.getLong ();
+                vals [j] = Double.longBitsToDouble ((b < 0) ? b ^ Long.MIN_VALUE : ~b);
+            } else if (c == Float.class) {
+                int b = buf.getInt ();
+                vals [j] = Float.intBitsToFloat ((b < 0) ? b ^ Integer.MIN_VALUE : ~b);
+            } else if (c == Short.class)     vals [j] = (short) (buf.getShort () ^ Short.MIN_VALUE);
+            else if (c == Byte.class)      vals [j] = (byte) (buf.get () ^ Byte.MIN_VALUE);
+            else if (c == Character.class) vals [j] = buf.getChar ();
+            else throw new IllegalArgumentException ("BinaryKey: unsupported domain " + c);
+        } // for
+        return vals;
+    } // decode
+
+    /*************************************************************************************
+     * Decode a string written by encodeString.
+     */
+    private static String decodeString (ByteBuffer buf)
+    {
+        StringBuilder sb = new StringBuilder ();
+        for ( ; ; ) {
+            int b = buf.get () & 0xFF;
+            if (b == 0) {
+                if ((buf.get () & 0xFF) == 1) return sb.toString ();
+                sb.append ((char) 0);
+            } else if (b < 0x80) {
+                sb.append ((char) b);
+            } else if (b < 0xE0) {
+                sb.append ((char) ((b & 0x1F) << 6 | buf.get () & 0x3F));
+            } else {
+                int b2 = buf.get () & 0x3F;
+                sb.append ((char) ((b & 0x0F) << 12 | b2 << 6 | buf.get () & 0x3F));
+            } // if
+        } // for
+    } // decodeString
+
+    /*************************************************************************************
+     * Convert the key to a string (hex bytes).
+     * @return  the string representation of the key
+     */
+    public String toString ()
+    {
+        StringBuilder sb = new StringBuilder ("BinaryKey (");
+        for (byte b : bytes) sb.append (String.format (" %02x", b));
+        return sb.append (" )").toString ();
+    } // toString
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only: check that the byte order
+     * agrees with KeyType order and that keys decode back to their values.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Class [] domain = { String.class, Integer.class, Double.class };
+        java.util.Random rng = new java.util.Random (1);
+        String [] names = { "", "a", "ab", "a\0", "Rocky", "Rambo", "Star_Wars", "Star_Wars_2", "\u00e9t\u00e9", "\uffff", "\ud83c\udfac" };
+        KeyType []   keys = new KeyType [2000];
+        BinaryKey [] bins = new BinaryKey [keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Comparable [] v = { names [rng.nextInt (names.length)], rng.nextInt (5) - 2, (rng.nextInt (7) - 3) * 0.5 };
+            keys [i] = new KeyType (v);
+            bins [i] = new BinaryKey (v);
+        } // for
+
+        int wrong = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (! bins [i].toKeyType (domain).equals (keys [i])) wrong++;
+            for (int j = 0; j < 50; j++) {
+                int k = rng.nextInt (keys.length);
+                if (keys [i].compareTo (keys [k]) != bins [i].compareTo (bins [k])) wrong++;
+            } // for
+        } // for
+        out.println ("BinaryKey order/decode mismatches = " + wrong);
+        out.println ("(Star_Wars_2, 1980) = " + new BinaryKey ("Star_Wars_2", 1980));
+
+        BpTreeMap <BinaryKey, Integer> bpt = new BpTreeMap <> (BinaryKey.class, Integer.class);
+        for (int i = 0; i < 200; i++) bpt.put (new BinaryKey ("name" + i, i), i);
+        out.println ("B+Tree on binary keys: get (name42, 42) = " + bpt.get (new BinaryKey ("name42", 42))
+                     + ", first = " + bpt.firstKey ().toKeyType (new Class [] { String.class, Integer.class }));
+    } // main
+
+} // BinaryKey class
@@ -0,0 +1,113 @@
+/*****************************************************************************************
+ * @file  BloomFilter.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.Serializable;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The BloomFilter class is a blocked (split block) Bloom filter over 32-bit hash codes,
+ * used by the joins to drop probe rows whose key cannot have a match before they are
+ * looked up.  The filter is an array of 64-byte blocks of 8 words.  A key selects one
+ * block from its hash, and sets (or tests) one bit in each word of it, so a test
+ * touches a single cache line.  The filter never gives false negatives; the rate of
+ * false positives is about one percent at BITS_PER_KEY bits per key.
+ */
+public class BloomFilter
+       implements Serializable
+{
+    /** The number of bits per expected key.  Change as needed.
+     */
+    private static final int BITS_PER_KEY = 10;
+
+    /** The odd multipliers selecting the bit in each word of a block
+     */
+    private static final int [] SALT = { 0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+                                         0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31 };
+
+    /** The blocks, 8 words each
+     */
+    private final long [] words;
+
+    /** The number of blocks minus one (the number of blocks is a power of 2)
+     */
+    private final int mask;
+
+    /*************************************************************************************
+     * Construct an empty filter sized for the given number of keys.
+     * @param expected  the expected number of keys
+     */
+    public BloomFilter (int expected)
+    {
+        int need   = (int) Math.min (1 << 24, ((long) expected * BITS_PER_KEY + 511) / 512);
+        int blocks = Math.max (1, Integer.highestOneBit (need));
+        if (blocks < need) blocks <<= 1;
+        words = new long [8 * blocks];
+        mask  = blocks - 1;
+    } // constructor
+
+    /*************************************************************************************
+     * Return the position of the first word of the block for the given hash code.
+     */
+    private int block (int hash)
+    {
+        long h = hash * 0x9e3779b97f4a7c15L;
+        return ((int) (h >>> 32) & mask) << 3;
+    } // block
+
+    /*************************************************************************************
+     * Add a key to the filter.
+     * @param hash  the hash code of the key
+     */
+    public void add (int hash)
+    {
+        int b = block (hash);
+        for (int i = 0; i < 8; i++) words [b + i] |= 1L << (hash * SALT [i] >>> 26);
+    } // add
+
+    /*************************************************************************************
+     * Return whether a key may have been added to the filter.
+     * @param hash  the hash code of the key
+     * @return  false if the key was certainly not added
+     */
+    public boolean mightContain (int hash)
+    {
+        int b = block (hash);
+        for (int i = 0; i < 8; i++) {
+            if ((words [b + i] & 1L << (hash * SALT [i] >>> 26)) == 0) return false;
+        } // for
+        return true;
+    } // mightContain
+
+    /*************************************************************************************
+     * Return the number of bytes taken by the filter's bits.
+     * @return  the size of the filter
+     */
+    public int byteSize ()
+    {
+        return 8 * words.length;
+    } // byteSize
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only: add the keys 0, 2, 4, ... and
+     * measure the rate of false positives on the odd keys.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        int nKeys = 100000;
+        BloomFilter f = new BloomFilter (nKeys);
+        for (int i = 0; i < nKeys; i++) f.add (KeyType.of (new Comparable [] { 2 * i }).hashCode ());
+        int missed = 0, fp = 0;
+        for (int i = 0; i < nKeys; i++) {
+            if (! f.mightContain (KeyType.of (new Comparable [] { 2 * i }).hashCode ())) missed++;
+            if (f.mightContain (KeyType.of (new Comparable [] { 2 * i + 1 }).hashCode ())) fp++;
+        } // for
+        out.println ("bytes = " + f.byteSize () + ", false negatives = " + missed
+                     + ", false positive rate = " + (double) fp / nKeys);
+    } // main
+
+} // BloomFilter class
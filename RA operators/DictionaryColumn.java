@@ -0,0 +1,161 @@
+/*****************************************************************************************
+ * @file  DictionaryColumn.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The DictionaryColumn class dictionary encodes a String column of a table.  Each
+ * distinct value is stored once in the dictionary, which gives it an int code.  The
+ * column keeps the code of every row in an int array parallel to the table's store.
+ * The tuples refer to the dictionary's copy of their value, so equal strings are
+ * shared instead of repeated.  Scans testing the column for equality (selects, join
+ * probes) compare the codes without touching the tuples or the strings.  Codes are
+ * never reused: a value stays in the dictionary after its rows are deleted.
+ */
+public class DictionaryColumn
+       implements Serializable
+{
+    /** The code of each distinct value
+     */
+    private final HashMap <String, Integer> code = new HashMap <> ();
+
+    /** The distinct values, indexed by code
+     */
+    private final ArrayList <String> value = new ArrayList <> ();
+
+    /** The code of each row (the first n entries are used)
+     */
+    private int [] codes = new int [16];
+
+    /** The number of rows in the column
+     */
+    private int n = 0;
+
+    /*************************************************************************************
+     * Append a row holding the given string, adding the string to the dictionary if it
+     * is new.
+     * @param s  the string value of the row
+     * @return  the dictionary's copy of the string (to be stored in the tuple)
+     */
+    public String add (String s)
+    {
+        Integer c = code.get (s);
+        if (c == null) {
+            c = value.size ();
+            code.put (s, c);
+            value.add (s);
+        } // if
+        if (n == codes.length) codes = Arrays.copyOf (codes, 2 * n);
+        codes [n++] = c;
+        return value.get (c);
+    } // add
+
+    /*************************************************************************************
+     * Return the code of the given string.
+     * @param s  the string to look up
+     * @return  its code, or -1 if it is not in the dictionary
+     */
+    public int code (String s)
+    {
+        Integer c = code.get (s);
+        return (c == null) ? -1 : c;
+    } // code
+
+    /*************************************************************************************
+     * Return the string with the given code.
+     * @param c  the code
+     * @return  the string
+     */
+    public String value (int c)
+    {
+        return value.get (c);
+    } // value
+
+    /*************************************************************************************
+     * Return the number of distinct values (the cardinality of the column).
+     * @return  the size of the dictionary
+     */
+    public int size ()
+    {
+        return value.size ();
+    } // size
+
+    /*************************************************************************************
+     * Return the number of rows in the column.
+     * @return  the number of rows
+     */
+    public int rows ()
+    {
+        return n;
+    } // rows
+
+    /*************************************************************************************
+     * Return the codes of the rows.  The array is replaced when the column grows, so
+     * the array returned stays valid for the first rows () entries.
+     * @return  the array of codes
+     */
+    public int [] codes ()
+    {
+        return codes;
+    } // codes
+
+    /*************************************************************************************
+     * Map the codes of this dictionary to the codes of the same strings in another
+     * dictionary (e.g., the column on the other side of a join).
+     * @param to  the other dictionary
+     * @return  for each code of this dictionary, the code in to, or -1 if absent
+     */
+    public int [] translate (DictionaryColumn to)
+    {
+        int [] t = new int [value.size ()];
+        for (int c = 0; c < t.length; c++) t [c] = to.code (value.get (c));
+        return t;
+    } // translate
+
+    /*************************************************************************************
+     * Keep only the given rows, in order, followed by the rows from position from on
+     * (used when the table's store is compacted).
+     * @param kept   the positions of the rows kept among the first from rows
+     * @param nKept  the number of positions in kept
+     * @param from   the position of the first row kept in full
+     */
+    public void retain (int [] kept, int nKept, int from)
+    {
+        int [] c = new int [Math.max (16, nKept + n - from)];
+        for (int i = 0; i < nKept; i++) c [i] = codes [kept [i]];
+        System.arraycopy (codes, from, c, nKept, n - from);
+        codes = c;
+        n     = nKept + n - from;
+    } // retain
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only: encode a low cardinality
+     * column, count the rows equal to a value by comparing codes, and translate the
+     * codes of another dictionary.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        String [] genre = { "action", "comedy", "drama", "sciFi", "horror" };
+        DictionaryColumn low = new DictionaryColumn ();
+        Random rng = new Random (1);
+        int nRows = 100000, matches = 0;
+        for (int i = 0; i < nRows; i++) low.add (new String (genre [rng.nextInt (genre.length)]));
+        int c = low.code ("drama");
+        for (int i = 0; i < low.rows (); i++) if (low.codes () [i] == c) matches++;
+        out.println ("rows = " + low.rows () + ", distinct = " + low.size () + ", drama rows = " + matches);
+        out.println ("shared strings: " + (low.value (c) == low.add ("dr" + "ama")));
+
+        DictionaryColumn other = new DictionaryColumn ();
+        other.add ("drama");
+        other.add ("western");
+        out.println ("translate to another dictionary = " + Arrays.toString (other.translate (low)));
+    } // main
+
+} // DictionaryColumn class
@@ -0,0 +1,399 @@
+/*****************************************************************************************
+ * @file  IntColumn.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The IntColumn class stores an int column in compressed segments of SEGMENT values.
+ * Each full segment is encoded with whichever of two lightweight schemes is smaller:
+ * run-length encoding (a value and an end position per run), or frame-of-reference
+ * with bit-packing (the segment's minimum plus, for each row, its offset from the
+ * minimum in just enough bits for the segment's range; a constant segment takes no
+ * bits at all).  The rows of the last, partial segment are kept plain until it fills.
+ * <p>
+ * Range scans run on the compressed data: a segment whose [min, max] misses the range
+ * is skipped, one lying inside it is taken whole, a run is tested once, and packed
+ * offsets are compared against the range shifted by the segment's minimum without
+ * decoding the values.  The same encoding is used for the Integer columns of the
+ * chunks written by Table.save (see pack and unpack).
+ */
+public class IntColumn
+       implements Serializable
+{
+    /** The number of rows per segment (a power of 2)
+     */
+    public static final int SEGMENT = 1024;
+
+    /** The encodings of a segment
+     */
+    private static final byte FOR = 0, RLE = 1;
+
+    /** The full (encoded) segments
+     */
+    private Segment [] segs = new Segment [4];
+
+    /** The number of full segments
+     */
+    private int nSegs = 0;
+
+    /** The rows of the partial segment (replaced, not reused, when it fills)
+     */
+    private int [] tail = new int [SEGMENT];
+
+    /** The number of rows in the partial segment
+     */
+    private int nTail = 0;
+
+    /*************************************************************************************
+     * This inner class is an encoded segment.  Segments are immutable.
+     */
+    private static final class Segment
+            implements Serializable
+    {
+        /** The encoding (FOR or RLE), the number of rows and the range of values
+         */
+        final byte kind;
+        final int  n, min, max;
+
+        /** For FOR: the number of bits per offset and the packed offsets
+         */
+        final int    bits;
+        final long [] words;
+
+        /** For RLE: the value of each run and the position after its last row
+         */
+        final int [] runVal, runEnd;
+
+        Segment (byte _kind, int _n, int _min, int _max, int _bits, long [] _words, int [] _runVal, int [] _runEnd)
+        {
+            kind = _kind; n = _n; min = _min; max = _max;
+            bits = _bits; words = _words; runVal = _runVal; runEnd = _runEnd;
+        } // constructor
+
+        /*********************************************************************************
+         * Encode len values starting at v [from], choosing the smaller encoding.
+         */
+        static Segment encode (int [] v, int from, int len)
+        {
+            int min = v [from], max = v [from], runs = 1;
+            for (int i = from + 1; i < from + len; i++) {
+                if (v [i] < min) min = v [i];
+                if (v [i] > max) max = v [i];
+                if (v [i] != v [i - 1]) runs++;
+            } // for
+            int bits = 64 - Long.numberOfLeadingZeros ((long) max - min);
+
+            if (64L * runs < (long) bits * len) {
+                int [] val = new int [runs], end = new int [runs];
+                int r = 0;
+                for (int i = 1; i < len; i++) {
+                    if (v [from + i] != v [from + i - 1]) { val [r] = v [from + i - 1]; end [r++] = i; }
+                } // for
+                val [r] = v [from + len - 1];
+                end [r] = len;
+                return new Segment (RLE, len, min, max, 0, null, val, end);
+            } // if
+
+            long [] words = new long [(int) (((long) bits * len + 63) >>> 6)];
+            for (int i = 0; i < len && bits > 0; i++) {
+                long off = (long) v [from + i] - min;
+                long pos = (long) i * bits;
+                int  w   = (int) (pos >>> 6), s = (int) (pos & 63);
+                words [w] |= off << s;
+                if (s + bits > 64) words [w + 1] |= off >>> (64 - s);
+            } // for
+            return new Segment (FOR, len, min, max, bits, words, null, null);
+        } // encode
+
+        /*********************************************************************************
+         * Return the packed offset of row i (FOR).
+         */
+        long offset (int i)
+        {
+            if (bits == 0) return 0;
+            long pos = (long) i * bits;
+            int  w   = (int) (pos >>> 6), s = (int) (pos & 63);
+            long x   = words [w] >>> s;
+            if (s + bits > 64) x |= words [w + 1] << (64 - s);
+            return x & ((1L << bits) - 1);
+        } // offset
+
+        /*********************************************************************************
+         * Return the value of row i.
+         */
+        int get (int i)
+        {
+            if (kind == FOR) return (int) (min + offset (i));
+            int lo = 0, hi = runEnd.length - 1;                       // the first run ending after i
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runEnd [mid] > i) hi = mid; else lo = mid + 1;
+            } // while
+            return runVal [lo];
+        } // get
+
+        /*********************************************************************************
+         * Decode all rows into v starting at v [from].
+         */
+        void decode (int [] v, int from)
+        {
+            if (kind == FOR) {
+                for (int i = 0; i < n; i++) v [from + i] = (int) (min + offset (i));
+            } else {
+                for (int r = 0, i = 0; r < runVal.length; r++) {
+                    for ( ; i < runEnd [r]; i++) v [from + i] = runVal [r];
+                } // for
+            } // if
+        } // decode
+
+        /*********************************************************************************
+         * Pass base + i to hit for each row i whose value is in [lo, hi).
+         */
+        void scan (long lo, long hi, int base, IntConsumer hit)
+        {
+            if (hi <= min || lo > max) return;                       // no row in range
+            if (lo <= min && hi > max) {                              // every row in range
+                for (int i = 0; i < n; i++) hit.accept (base + i);
+            } else if (kind == RLE) {
+                for (int r = 0, i = 0; r < runVal.length; i = runEnd [r++]) {
+                    if (runVal [r] >= lo && runVal [r] < hi) {
+                        for (int k = i; k < runEnd [r]; k++) hit.accept (base + k);
+                    } // if
+                } // for
+            } else {
+                long oLo = Math.max (lo - min, 0), oHi = hi - min;   // compare the packed offsets
+                for (int i = 0; i < n; i++) {
+                    long o = offset (i);
+                    if (o >= oLo && o < oHi) hit.accept (base + i);
+                } // for
+            } // if
+        } // scan
+
+        /*********************************************************************************
+         * Return the number of bytes written by write.
+         */
+        int byteSize ()
+        {
+            return (kind == FOR) ? 10 + 8 * words.length : 5 + 6 * runVal.length;
+        } // byteSize
+
+        /*********************************************************************************
+         * Write the segment to the buffer: the kind, then the minimum, the maximum,
+         * the number of bits and the packed words (FOR), or the number of runs and each run's value
+         * and length (RLE).
+         */
+        void write (ByteBuffer buf)
+        {
+            buf.put (kind);
+            if (kind == FOR) {
+                buf.putInt (min).putInt (max).put ((byte) bits);
+                for (long w : words) buf.putLong (w);
+            } else {
+                buf.putInt (runVal.length);
+                for (int r = 0, i = 0; r < runVal.length; i = runEnd [r++]) {
+                    buf.putInt (runVal [r]).putShort ((short) (runEnd [r] - i));
+                } // for
+            } // if
+        } // write
+
+        /*********************************************************************************
+         * Read a segment of n rows written by write.
+         */
+        static Segment read (ByteBuffer buf, int n)
+        {
+            if (buf.get () == FOR) {
+                int min = buf.getInt (), max = buf.getInt (), bits = buf.get ();
+                long [] words = new long [(int) (((long) bits * n + 63) >>> 6)];
+                for (int w = 0; w < words.length; w++) words [w] = buf.getLong ();
+                return new Segment (FOR, n, min, max, bits, words, null, null);
+            } // if
+            int [] val = new int [buf.getInt ()], end = new int [val.length];
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (int r = 0, i = 0; r < val.length; r++) {
+                val [r] = buf.getInt ();
+                end [r] = i += buf.getShort () & 0xffff;
+                min = Math.min (min, val [r]);
+                max = Math.max (max, val [r]);
+            } // for
+            return new Segment (RLE, n, min, max, 0, null, val, end);
+        } // read
+
+    } // Segment inner class
+
+    /*************************************************************************************
+     * Append a row, encoding the partial segment once it is full.
+     * @param v  the value of the row
+     */
+    public void add (int v)
+    {
+        tail [nTail++] = v;
+        if (nTail == SEGMENT) {
+            if (nSegs == segs.length) segs = Arrays.copyOf (segs, 2 * nSegs);
+            segs [nSegs++] = Segment.encode (tail, 0, SEGMENT);
+            tail  = new int [SEGMENT];
+            nTail = 0;
+        } // if
+    } // add
+
+    /*************************************************************************************
+     * Return the number of rows in the column.
+     * @return  the number of rows
+     */
+    public int rows ()
+    {
+        return nSegs * SEGMENT + nTail;
+    } // rows
+
+    /*************************************************************************************
+     * Return the value of row i.
+     * @param i  the row number
+     * @return  the value
+     */
+    public int get (int i)
+    {
+        int s = i / SEGMENT;
+        return (s < nSegs) ? segs [s].get (i % SEGMENT) : tail [i - nSegs * SEGMENT];
+    } // get
+
+    /*************************************************************************************
+     * Pass the number of each row whose value is in [lo, hi) to hit, in row order.
+     * @param lo   the lower bound (inclusive)
+     * @param hi   the upper bound (exclusive)
+     * @param hit  receives the matching row numbers
+     */
+    public void scan (long lo, long hi, IntConsumer hit)
+    {
+        for (int s = 0; s < nSegs; s++) segs [s].scan (lo, hi, s * SEGMENT, hit);
+        for (int i = 0; i < nTail; i++) {
+            if (tail [i] >= lo && tail [i] < hi) hit.accept (nSegs * SEGMENT + i);
+        } // for
+    } // scan
+
+    /*************************************************************************************
+     * Return a read-only copy of the column as it is now, for a scan that must not see
+     * rows appended meanwhile.  The encoded segments are shared.
+     * @return  the snapshot
+     */
+    public IntColumn snapshot ()
+    {
+        IntColumn c = new IntColumn ();
+        c.segs  = Arrays.copyOf (segs, nSegs);
+        c.nSegs = nSegs;
+        c.tail  = Arrays.copyOf (tail, nTail);
+        c.nTail = nTail;
+        return c;
+    } // snapshot
+
+    /*************************************************************************************
+     * Keep only the given rows, in order, followed by the rows from position from on
+     * (used when the table's store is compacted).
+     * @param kept   the positions of the rows kept among the first from rows
+     * @param nKept  the number of positions in kept
+     * @param from   the position of the first row kept in full
+     */
+    public void retain (int [] kept, int nKept, int from)
+    {
+        int [] v = toArray ();
+        segs  = new Segment [4];
+        nSegs = nTail = 0;
+        tail  = new int [SEGMENT];
+        for (int i = 0; i < nKept; i++) add (v [kept [i]]);
+        for (int i = from; i < v.length; i++) add (v [i]);
+    } // retain
+
+    /*************************************************************************************
+     * Return the values of all rows.
+     * @return  the decoded column
+     */
+    public int [] toArray ()
+    {
+        int [] v = new int [rows ()];
+        for (int s = 0; s < nSegs; s++) segs [s].decode (v, s * SEGMENT);
+        System.arraycopy (tail, 0, v, nSegs * SEGMENT, nTail);
+        return v;
+    } // toArray
+
+    /*************************************************************************************
+     * Return the number of bytes taken by the encoded segments (excluding the partial
+     * segment and object overheads).
+     * @return  the encoded size
+     */
+    public long byteSize ()
+    {
+        long b = 0;
+        for (int s = 0; s < nSegs; s++) b += segs [s].byteSize ();
+        return b;
+    } // byteSize
+
+    /*************************************************************************************
+     * Write the first n values of v to the buffer (at its position) in segments of
+     * SEGMENT rows, each encoded like a segment of a column.
+     * @param v    the values
+     * @param n    the number of values
+     * @param buf  the buffer to write to
+     * @throws BufferOverflowException if the values do not fit in the buffer
+     */
+    public static void pack (int [] v, int n, ByteBuffer buf)
+    {
+        for (int from = 0; from < n; from += SEGMENT) {
+            Segment.encode (v, from, Math.min (SEGMENT, n - from)).write (buf);
+        } // for
+    } // pack
+
+    /*************************************************************************************
+     * Read n values written by pack from the buffer (at its position).
+     * @param buf  the buffer to read from
+     * @param n    the number of values
+     * @return  the values
+     */
+    public static int [] unpack (ByteBuffer buf, int n)
+    {
+        int [] v = new int [n];
+        for (int from = 0; from < n; from += SEGMENT) {
+            Segment.read (buf, Math.min (SEGMENT, n - from)).decode (v, from);
+        } // for
+        return v;
+    } // unpack
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only: compress a sorted id column,
+     * a low cardinality year column and a random column, compare their encoded sizes
+     * with plain ints, and count the rows in a range on the compressed data.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        int nRows = 1 << 20;
+        Random rng = new Random (1);
+        IntColumn ids = new IntColumn (), years = new IntColumn (), any = new IntColumn ();
+        int [] year = new int [nRows];
+        for (int i = 0; i < nRows; i++) {
+            ids.add (100000 + i);
+            years.add (year [i] = 1950 + (i / 5000) % 70);
+            any.add (rng.nextInt ());
+        } // for
+        for (IntColumn c : new IntColumn [] { ids, years, any }) {
+            out.println ("encoded bytes = " + c.byteSize () + " (plain = " + 4L * nRows + ")");
+        } // for
+
+        int [] count = new int [1];
+        years.scan (1980, 1990, i -> count [0]++);
+        int expect = 0;
+        for (int y : year) if (y >= 1980 && y < 1990) expect++;
+        out.println ("rows with 1980 <= year < 1990 = " + count [0] + " (expecting " + expect + ")");
+
+        ByteBuffer buf = ByteBuffer.allocate (8 * nRows);
+        pack (year, nRows, buf);
+        out.println ("packed " + buf.position () + " bytes, round trip = "
+                     + Arrays.equals (year, unpack (buf.flip (), nRows)));
+    } // main
+
+} // IntColumn class
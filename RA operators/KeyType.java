@@ -14,6 +14,11 @@ import static java.lang.System.out;
 /*****************************************************************************************
  * The KeyType class provides a key type for handling both non-composite and composite keys.
  * A key is a minimal set of attributes that can be used to uniquely identify a tuple.
+ * The nested subclasses are specialized keys (single int, long or String, and pairs)
+ * that avoid the attribute array and compare without boxing; KeyType.of picks one.
+ * ProbeKey is a mutable key for look ups in inner loops.  Comparison, equality and
+ * hash codes are defined on the attribute values (length and get), so keys of
+ * different classes holding the same values are equal and hash alike.
  */
 public class KeyType
        implements Comparable <KeyType>, Serializable
@@ -22,6 +27,18 @@ public class KeyType
      */
     private final Comparable [] key;
 
+    /** The cached hash code (0 until first computed)
+     */
+    private transient int hash;
+
+    /*************************************************************************************
+     * Construct a key whose attribute values are held by a subclass.
+     */
+    protected KeyType ()
+    {
+         key = null;
+    } // constructor
+
     /*************************************************************************************
      * Construct an instance of KeyType from a Comparable array.  
      * @param _key  the primary key
@@ -42,6 +59,25 @@ public class KeyType
          for (int i = 1; i < key.length; i++) key [i] = keys [i-1];
     } // constructor
 
+    /*************************************************************************************
+     * Return the number of attributes making up this key (1 for a non-composite key).
+     * @return  the arity of the key
+     */
+    public int length ()
+    {
+        return key.length;
+    } // length
+
+    /*************************************************************************************
+     * Return the attribute value at position i in this key.
+     * @param i  the position of the attribute within the key
+     * @return  the i-th attribute value
+     */
+    public Comparable get (int i)
+    {
+        return key [i];
+    } // get
+
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
      * @param k  the other key (to compare with this)
@@ -50,11 +86,13 @@ public class KeyType
     @SuppressWarnings("unchecked")
     public int compareTo (KeyType k)
     {
-        for (int i = 0; i < key.length; i++) {
-            if (key [i].compareTo (k.key [i]) < 0) return -1;
-            if (key [i].compareTo (k.key [i]) > 0) return 1;
+        int len = length (), klen = k.length ();
+        int n   = Math.min (len, klen);
+        for (int i = 0; i < n; i++) {
+            int c = get (i).compareTo (k.get (i));
+            if (c != 0) return (c < 0) ? -1 : 1;
         } // for
-        return 0;
+        return Integer.compare (len, klen);                          // a prefix is smaller
     } // compareTo
 
     /*************************************************************************************
@@ -64,20 +102,51 @@ public class KeyType
      */
     public boolean equals (Object k)
     {
-        return compareTo ((KeyType) k) == 0;
+        return k instanceof KeyType && compareTo ((KeyType) k) == 0;
     } // equals
 
     /*************************************************************************************
      * Compute a hash code for this object (equal objects should produce the same hash code).
+     * The attribute hash codes are combined and mixed MurmurHash3 style, so every bit of
+     * every attribute affects the low bits used by hash maps.  The result is cached.
      * @return  an integer hash code value
      */
     public int hashCode ()
     {
-        int sum = 0;
-        for (int i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
-        return sum;
+        int h = hash;
+        if (h == 0) hash = h = hashOf (this);
+        return h;
     } // hashCode
 
+    /*************************************************************************************
+     * Compute the hash code of a key from its attribute values.  The specialized keys
+     * use hash1 and hash2, which give the same result without boxing.
+     * @param k  the key to hash
+     * @return  the hash code
+     */
+    static int hashOf (KeyType k)
+    {
+        int h = 0, n = k.length ();
+        for (int i = 0; i < n; i++) h = HashStrategy.combine (h, k.get (i).hashCode ());
+        return HashStrategy.MURMUR3.mix (h ^ n);
+    } // hashOf
+
+    /*************************************************************************************
+     * Compute the hash code of a one attribute key from the attribute's hash code.
+     */
+    static int hash1 (int h0)
+    {
+        return HashStrategy.MURMUR3.mix (HashStrategy.combine (0, h0) ^ 1);
+    } // hash1
+
+    /*************************************************************************************
+     * Compute the hash code of a two attribute key from the attributes' hash codes.
+     */
+    static int hash2 (int h0, int h1)
+    {
+        return HashStrategy.MURMUR3.mix (HashStrategy.combine (HashStrategy.combine (0, h0), h1) ^ 2);
+    } // hash2
+
     /*************************************************************************************
      * Convert the key to a string.
      * @return  the string representation of the key
@@ -85,10 +154,197 @@ public class KeyType
     public String toString ()
     {
         String s = "Key (";
-        for (int i = 0; i < key.length; i++) s += " " + key [i];
+        for (int i = 0; i < length (); i++) s += " " + get (i);
         return s + (" )");
     } // toString
 
+    /*************************************************************************************
+     * Make a key for the given attribute values, specialized when possible: a single
+     * Integer, Long or String, or a pair of values.  The array is not copied for the
+     * generic case, so it must not be changed afterwards.
+     * @param vals  the attribute values
+     * @return  the key
+     */
+    public static KeyType of (Comparable [] vals)
+    {
+        if (vals.length == 1) {
+            Comparable v = vals [0];
+            if (v instanceof Integer) return new IntKey ((Integer) v);
+            if (v instanceof Long)    return new LongKey ((Long) v);
+            if (v instanceof String)  return new StringKey ((String) v);
+        } else if (vals.length == 2) {
+            return new PairKey (vals [0], vals [1]);
+        } // if
+        return new KeyType (vals);
+    } // of
+
+    /*************************************************************************************
+     * Make a key from the values of tuple t in the given columns (see of).
+     * @param t     the tuple
+     * @param cols  the column positions of the key attributes
+     * @return  the key
+     */
+    public static KeyType of (Comparable [] t, int [] cols)
+    {
+        if (cols.length == 1) return of (new Comparable [] { t [cols [0]] });
+        if (cols.length == 2) return new PairKey (t [cols [0]], t [cols [1]]);
+        Comparable [] vals = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) vals [j] = t [cols [j]];
+        return new KeyType (vals);
+    } // of
+
+    /*************************************************************************************
+     * A key made of a single int attribute.
+     */
+    public static final class IntKey
+           extends KeyType
+    {
+        private final int value;
+
+        public IntKey (int _value) { value = _value; }
+
+        public int length ()             { return 1; }
+        public Comparable get (int i)    { return value; }
+        public int hashCode ()           { return hash1 (value); }             // Integer.hashCode is the value
+
+        public int compareTo (KeyType k)
+        {
+            return (k instanceof IntKey) ? Integer.compare (value, ((IntKey) k).value) : super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            return (k instanceof IntKey) ? value == ((IntKey) k).value : super.equals (k);
+        } // equals
+    } // IntKey class
+
+    /*************************************************************************************
+     * A key made of a single long attribute.
+     */
+    public static final class LongKey
+           extends KeyType
+    {
+        private final long value;
+
+        public LongKey (long _value) { value = _value; }
+
+        public int length ()             { return 1; }
+        public Comparable get (int i)    { return value; }
+        public int hashCode ()           { return hash1 (Long.hashCode (value)); }
+
+        public int compareTo (KeyType k)
+        {
+            return (k instanceof LongKey) ? Long.compare (value, ((LongKey) k).value) : super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            return (k instanceof LongKey) ? value == ((LongKey) k).value : super.equals (k);
+        } // equals
+    } // LongKey class
+
+    /*************************************************************************************
+     * A key made of a single String attribute (String caches its own hash code).
+     */
+    public static final class StringKey
+           extends KeyType
+    {
+        private final String value;
+
+        public StringKey (String _value) { value = _value; }
+
+        public int length ()             { return 1; }
+        public Comparable get (int i)    { return value; }
+        public int hashCode ()           { return hash1 (value.hashCode ()); }
+
+        public int compareTo (KeyType k)
+        {
+            return (k instanceof StringKey) ? Integer.signum (value.compareTo (((StringKey) k).value))
+                                            : super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            return (k instanceof StringKey) ? value.equals (((StringKey) k).value) : super.equals (k);
+        } // equals
+    } // StringKey class
+
+    /*************************************************************************************
+     * A key made of two attributes (e.g., title and year), with a cached hash code.
+     */
+    public static final class PairKey
+           extends KeyType
+    {
+        private final Comparable first, second;
+        private transient int    hash;
+
+        public PairKey (Comparable _first, Comparable _second) { first = _first; second = _second; }
+
+        public int length ()             { return 2; }
+        public Comparable get (int i)    { return (i == 0) ? first : second; }
+
+        public int hashCode ()
+        {
+            int h = hash;
+            if (h == 0) hash = h = hash2 (first.hashCode (), second.hashCode ());
+            return h;
+        } // hashCode
+
+        @SuppressWarnings("unchecked")
+        public int compareTo (KeyType k)
+        {
+            if (! (k instanceof PairKey)) return super.compareTo (k);
+            PairKey p = (PairKey) k;
+            int c = first.compareTo (p.first);
+            if (c == 0) c = second.compareTo (p.second);
+            return Integer.signum (c);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            if (! (k instanceof PairKey)) return super.equals (k);
+            PairKey p = (PairKey) k;
+            return hashCode () == p.hashCode () && first.equals (p.first) && second.equals (p.second);
+        } // equals
+    } // PairKey class
+
+    /*************************************************************************************
+     * A mutable key for look ups: set loads it with the key values of a tuple, so a loop
+     * probing an index or hash table with one ProbeKey allocates nothing per tuple.
+     * A ProbeKey must never be stored as a key in a map (use KeyType.of for that).
+     */
+    public static final class ProbeKey
+           extends KeyType
+    {
+        private final Comparable [] val;
+        private int                 hash;
+
+        public ProbeKey (int n) { val = new Comparable [n]; }
+
+        /*********************************************************************************
+         * Load this key with the values of tuple t in the given columns.
+         * @param t     the tuple
+         * @param cols  the column positions of the key attributes
+         * @return  this key
+         */
+        public ProbeKey set (Comparable [] t, int [] cols)
+        {
+            for (int j = 0; j < val.length; j++) val [j] = t [cols [j]];
+            hash = 0;
+            return this;
+        } // set
+
+        public int length ()             { return val.length; }
+        public Comparable get (int i)    { return val [i]; }
+
+        public int hashCode ()
+        {
+            int h = hash;
+            if (h == 0) hash = h = hashOf (this);
+            return h;
+        } // hashCode
+    } // ProbeKey class
+
     /*************************************************************************************
      * The main method is used for testing purposes only.
      * @param args  the command-line arguments
@@ -122,6 +378,17 @@ public class KeyType
         out.println ("key1.equals (key3): " + key1.equals (key3));
         out.println ("key1.hashCode () == key2.hashCode (): " + (key1.hashCode () == key2.hashCode ()));
         out.println ("key1.hashCode () == key3.hashCode (): " + (key1.hashCode () == key3.hashCode ()));
+        out.println ();
+        KeyType key4 = of (new Comparable [] { "Star_Wars_2", 1980 });
+        KeyType key5 = of (new Comparable [] { 1980 });
+        out.println ("key4 = " + key4 + " is a " + key4.getClass ().getSimpleName ());
+        out.println ("key1.equals (key4) && key4.equals (key1): " + (key1.equals (key4) && key4.equals (key1)));
+        out.println ("key1.hashCode () == key4.hashCode (): " + (key1.hashCode () == key4.hashCode ()));
+        out.println ("key5.equals (new KeyType (1980)): " + key5.equals (new KeyType (1980))
+                     + ", same hash: " + (key5.hashCode () == new KeyType (1980).hashCode ()));
+        ProbeKey probe = new ProbeKey (2);
+        out.println ("probe (movie tuple).equals (key1): "
+                     + probe.set (new Comparable [] { 124, 1980, "Star_Wars_2" }, new int [] { 2, 1 }).equals (key1));
     } // main
 
 } // KeyType class
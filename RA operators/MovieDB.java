@@ -159,6 +159,24 @@ class MovieDB
         testTable1.print ();
         
         
+        //--------------------- secondary index on a non-unique attribute: genre
+
+        out.println ();
+        movie.createIndex ("genre");
+        Table t_genre = movie.select ("genre", new KeyType ("action"));
+        t_genre.print ();
+
+        //--------------------- delete and update, maintaining the indices
+
+        out.println ();
+        movie.update (new KeyType ("Rocky", 1985), "genre length", "drama", 119);
+        movie.delete (t -> t[movie.col("year")].equals (1980));
+        movie.print ();
+        Table t_genre2 = movie.select ("genre", new KeyType ("action"));
+        t_genre2.print ();
+        Table t_rocky = movie.select (new KeyType ("Rocky", 1985));
+        t_rocky.print ();
+
         //Testing findPrimaryKey method
         String [] test = cinema.findPrimaryKeyForJoin (" year", "movieTitle movieYear starName", starsIn);
         
@@ -182,4 +200,4 @@ class MovieDB
 
     } // main
 
-} // MovieDB class
\ No newline at end of file
+} // MovieDB class
\ No newline at end of file
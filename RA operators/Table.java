@@ -5,7 +5,15 @@
  */
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -15,8 +23,18 @@ import static java.lang.System.out;
 /****************************************************************************************
  * This class implements relational database tables (including attribute names, domains
  * and a list of tuples.  Five basic relational algebra operators are provided: project,
- * select, union, minus and join.  The insert data manipulation operator is also provided.
- * Missing are update and delete data manipulation operators.
+ * select, union, minus and join.  The insert, delete and update data manipulation
+ * operators are also provided.  A delete leaves the tuple in the store as a tombstone
+ * (an update deletes the old tuple and inserts the new one), and compaction reclaims
+ * the space in the background once enough tuples are dead.  In-memory tables keep
+ * their String columns dictionary encoded (and optionally a compressed copy of their
+ * Integer columns), and unindexed selects on a single such column scan the encoded
+ * column.  Base tables
+ * also keep a zone map (the minimum and maximum of each column per block of rows),
+ * so the other unindexed selects skip the blocks that cannot match.  The hash join
+ * builds a Bloom filter on its build side's keys (as does the index join on the
+ * indexed table's keys when that table is the smaller) and pushes it into the scan
+ * of the probe side.
  */
 public class Table
        implements Serializable
@@ -29,6 +47,58 @@ public class Table
      */
     private static final String EXT = ".dbf";
 
+    /** Magic numbers identifying the binary table format written by save (RAT1 files,
+     *  written before Integer columns were compressed, can still be loaded).
+     */
+    private static final int MAGIC    = 0x52415432;                    // "RAT2"
+    private static final int MAGIC_V1 = 0x52415431;                    // "RAT1"
+
+    /** The number of tuples per column chunk in a saved table.
+     */
+    private static final int CHUNK_ROWS = 4096;
+
+    /** Saved tables of at least this many bytes are memory-mapped by load.
+     */
+    private static final long MAP_THRESHOLD = 1 << 22;
+
+    /** A delete starts a background compaction once the dead tuples make up this
+     *  fraction of the store and number at least COMPACT_MIN (a dead tuple only costs
+     *  a scan one bit test, so the threshold bounds the space they waste).  Change as
+     *  needed.
+     */
+    private static final double COMPACT_FRACTION = 0.1;
+    private static final int    COMPACT_MIN      = 64;
+
+    /** The suffix of the file a file store is compacted into, before it replaces the
+     *  store's file.
+     */
+    private static final String COMPACT_EXT = ".compact";
+
+    /** Whether the String columns of in-memory base tables are dictionary encoded.
+     *  Change as needed.
+     */
+    private static final boolean ENCODE_STRINGS = true;
+
+    /** A dictionary encoded column falls back to plain storage once its dictionary
+     *  holds more than DICT_MAX_SIZE values, or more than DICT_MAX_RATIO of the rows
+     *  when the table has at least DICT_SAMPLE rows.
+     */
+    private static final int    DICT_MAX_SIZE  = 1 << 16;
+    private static final double DICT_MAX_RATIO = 0.5;
+    private static final int    DICT_SAMPLE    = 1024;
+
+    /** Whether the Integer columns of in-memory base tables also get a compressed
+     *  copy for scans.  It is only a copy: the tuples keep their Integers, so it adds
+     *  a byte or two per value to the table, for selects on a single Integer column
+     *  that scan it rather than the tuples.  Change as needed.
+     */
+    private static final boolean COMPRESS_INTS = false;
+
+    /** The number of rows per zone map block of an in-memory table (a file-backed
+     *  table uses one block per page).  Change as needed.
+     */
+    private static final int ZONE_ROWS = 1024;
+
     /** Counter for naming temporary tables.
      */
     private static int count = 0;
@@ -52,9 +122,63 @@ public class Table
      */
     private final Class [] domain;
 
-    /** Collection of tuples (data storage).
+    /** Collection of tuples (data storage), including the dead tuples not yet
+     *  compacted away.  Compaction may replace the list.
+     */
+    private volatile List <Comparable []> store;
+
+    /** The live tuples: the view of the store the operators work on.
+     */
+    private final Rows tuples = new Rows ();
+
+    /** The tombstones: the positions in the store of the deleted tuples not yet
+     *  compacted away.  Compaction replaces them along with the store.
+     */
+    private volatile Tombstones tomb = new Tombstones ();
+
+    /** The number of dead tuples in the store.
+     */
+    private volatile int nDead = 0;
+
+    /** Whether an insert has reused the key of a live tuple (the older tuple stays
+     *  live but leaves the primary index), so a delete of the indexed tuple must
+     *  index the older one again.
+     */
+    private volatile boolean dupKeys = false;
+
+    /** Held while the store is compacted.
+     */
+    private final ReentrantLock compacting = new ReentrantLock ();
+
+    /** Held while the table is saved, so one checkpoint runs at a time.
+     */
+    private final ReentrantLock checkpointing = new ReentrantLock ();
+
+    /** Held while the indices are changed, since concurrent changes (which share
+     *  the read lock of changing) would corrupt them; a ConcurrentLinHashMap primary
+     *  index takes its changes without it.
+     */
+    private final ReentrantLock indexing = new ReentrantLock ();
+
+    /** Held shared by each change from logging it to applying it to the store and the
+     *  indices, and exclusively by a checkpoint while it takes its snapshot.
+     */
+    private final ReentrantReadWriteLock changing = new ReentrantReadWriteLock ();
+
+    /** The dictionary encoded String columns, parallel to the store (null for the
+     *  other columns and for columns stored plain).
+     */
+    private final DictionaryColumn [] dict;
+
+    /** The compressed copies of the Integer columns, parallel to the store (null for
+     *  the other columns, or if COMPRESS_INTS is off).
+     */
+    private final IntColumn [] ints;
+
+    /** The per-block minimum and maximum of each column, for skipping blocks in scans
+     *  (null for derived tables)
      */
-    private final List <Comparable []> tuples;
+    private volatile ZoneMap zones;
 
     /** Primary key.
      */
@@ -64,27 +188,97 @@ public class Table
      */
     private final Map <KeyType, Comparable []> index;
 
+    /** Secondary indices on non-unique attributes (maps attribute list to a multimap
+     *  B+Tree from key value to the matching tuples).
+     */
+    private final Map <String, BpTreeMap <KeyType, Comparable []>> secIndex = new HashMap <> ();
+
+    /** The codec packing tuples of this table's schema into fixed-length records
+     *  (compiled on first use).
+     */
+    private transient TupleCodec codec;
+
+    /** The write-ahead log of this table's changes (opened on the first logged change,
+     *  or by load when a log exists).
+     */
+    private transient WriteAheadLog wal;
+
+    /** Whether changes to this table are logged (base tables only).
+     */
+    private transient boolean logged;
+
     /** The supported map types.
      */
-    private enum MapType { NO_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP }
+    private enum MapType { NO_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP, OPENHASH_MAP, CONCURRENT_MAP, DISK_LINHASH_MAP }
 
     /** The map type to be used for indices.  Change as needed.
      */
     private static final MapType mType = MapType.LINHASH_MAP;
 
+    /** The supported stores for the tuples of base tables.
+     */
+    private enum StoreType { ARRAY_LIST, FILE_LIST, MAPPED_FILE_LIST }
+
+    /** The store to be used for tuples.  Change as needed; a FILE_LIST keeps the tuples
+     *  in store/<name>.dat (with NO_MAP or DISK_LINHASH_MAP, off the heap entirely);
+     *  a MAPPED_FILE_LIST memory-maps that file.
+     */
+    private static final StoreType sType = StoreType.ARRAY_LIST;
+
+    /** Whether inserts, deletes and updates of base tables are logged to
+     *  store/<name>.wal, so they are durable before save.  Change as needed.
+     */
+    private static final boolean LOG_INSERTS = false;
+
+    /** The size in bytes beyond which a change triggers a checkpoint (save), which
+     *  truncates the log.
+     */
+    private static final long CHECKPOINT_BYTES = 1 << 26;
+
     /************************************************************************************
-     * Make a map (index) given the MapType.
+     * Make a map (index) given the MapType.  Keys consisting of a single integer
+     * attribute (e.g., id or certNo) get a map specialized for primitive long keys;
+     * other keys get a B+Tree that stores them prefix compressed as BinaryKey bytes.
+     * A disk-based map keeps its pages in the store directory under the table's name.
+     *
+     * @param name    the name of the relation
+     * @param keyDom  the domains of the primary key attributes
+     * @param fresh   whether a disk-based map starts empty (false to reopen its files)
      */
-    private static Map <KeyType, Comparable []> makeMap ()
+    private static Map <KeyType, Comparable []> makeMap (String name, Class [] keyDom, boolean fresh)
     {
+        Class longKey = (keyDom.length == 1 && (keyDom [0] == Long.class || keyDom [0] == Integer.class
+                         || keyDom [0] == Short.class || keyDom [0] == Byte.class)) ? keyDom [0] : null;
         switch (mType) {
         case TREE_MAP:    return new TreeMap <> ();
-         case LINHASH_MAP: return new LinHashMap <> (KeyType.class, Comparable [].class);
-         case BPTREE_MAP:  return new BpTreeMap <> (KeyType.class, Comparable [].class);
+        case LINHASH_MAP: return (longKey != null) ? new LongLinHashMap <> (longKey, Comparable [].class)
+                                                   : new LinHashMap <> (KeyType.class, Comparable [].class);
+        case BPTREE_MAP:  return (longKey != null) ? new LongBpTreeMap <> (longKey, Comparable [].class)
+                                                   : new PrefixBpTreeMap <> (keyDom, Comparable [].class);
+        case OPENHASH_MAP: return new OpenHashMap <> ();
+        case CONCURRENT_MAP: return new ConcurrentLinHashMap <> ();
+        case DISK_LINHASH_MAP: return new DiskLinHashMap (DIR + name, keyDom, fresh);
         default:          return null;
         } // switch
     } // makeMap
 
+    /************************************************************************************
+     * Return the domains of the primary key attributes, in key order.
+     *
+     * @param _attribute  the attribute names
+     * @param _domain     the attribute domains
+     * @param _key        the primary key
+     * @return  the classes of the key attributes
+     */
+    private static Class [] keyDomain (String [] _attribute, Class [] _domain, String [] _key)
+    {
+        Class [] dom = new Class [_key.length];
+        for (int k = 0; k < _key.length; k++) {
+            for (int i = 0; i < _attribute.length; i++) if (_attribute [i].equals (_key [k])) dom [k] = _domain [i];
+        } // for
+        return dom;
+    } // keyDomain
+
     //-----------------------------------------------------------------------------------
     // Constructors
     //-----------------------------------------------------------------------------------
@@ -98,13 +292,39 @@ public class Table
      * @param _key        the primary key
      */
     public Table (String _name, String [] _attribute, Class [] _domain, String [] _key)
+    {
+        this (_name, _attribute, _domain, _key, true);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, reopening the files
+     * of a disk-based index rather than starting it empty if fresh is false (for load).
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param fresh       whether a disk-based index starts empty
+     */
+    private Table (String _name, String [] _attribute, Class [] _domain, String [] _key, boolean fresh)
     {
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = new ArrayList <> ();
-        index     = makeMap ();
+        store     = (sType == StoreType.ARRAY_LIST) ? new ArrayList <> ()
+                                                    : new FileList (DIR + _name, codec (), true,
+                                                                    sType == StoreType.MAPPED_FILE_LIST);
+        index     = makeMap (_name, keyDomain (_attribute, _domain, _key), fresh);
+        logged    = LOG_INSERTS;
+        dict      = new DictionaryColumn [_domain.length];
+        ints      = new IntColumn [_domain.length];
+        for (int j = 0; j < dict.length; j++) {
+            if (sType != StoreType.ARRAY_LIST) continue;
+            if (ENCODE_STRINGS && _domain [j] == String.class)  dict [j] = new DictionaryColumn ();
+            if (COMPRESS_INTS  && _domain [j] == Integer.class) ints [j] = new IntColumn ();
+        } // for
+        zones     = new ZoneMap ((store instanceof FileList) ? ((FileList) store).perPage () : ZONE_ROWS);
     } // primary constructor
 
     /************************************************************************************
@@ -123,8 +343,10 @@ public class Table
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = _tuples;
-        index     = makeMap ();
+        store     = _tuples;
+        index     = makeMap (_name, keyDomain (_attribute, _domain, _key), true);
+        dict      = new DictionaryColumn [_domain.length];
+        ints      = new IntColumn [_domain.length];
     } // constructor
 
     /************************************************************************************
@@ -260,20 +482,25 @@ public class Table
             if((mType == MapType.NO_MAP)) {
                 // @author Niraj
                 int priKeys[] = match(key);
-
-                for (int i = 0; i < this.tuples.size(); i++) {
-                    Comparable [] keyVal = new Comparable [priKeys.length];
-
-                    // iterating through primary key tuple(s)
-                    for (int pk = 0; pk < priKeys.length ; pk++)
-                        keyVal[pk] = this.tuples.get(i)[priKeys[pk]];
-
-                    if (new KeyType(keyVal).compareTo(keyVal2) < 0 ) {
-                       if (new KeyType(keyVal).compareTo(keyVal1) >= 0) {
-                            rows.add(this.tuples.get(i));
+                KeyType.ProbeKey probe = new KeyType.ProbeKey (priKeys.length);
+                Snapshot c = snapshot (priKeys [0]);
+
+                if (c != null && c.zones != null) {
+                    // only the blocks whose first key column may be in range are read
+                    rows = c.zoned (priKeys [0], keyVal1.get (0), keyVal2.get (0),
+                                    t -> probe.set (t, priKeys).compareTo (keyVal1) >= 0 && probe.compareTo (keyVal2) < 0);
+                } else {
+                    for (int i = 0; i < this.tuples.size(); i++) {
+                        // loading the primary key of the tuple into the probe key
+                        probe.set (this.tuples.get(i), priKeys);
+
+                        if (probe.compareTo(keyVal2) < 0 ) {
+                           if (probe.compareTo(keyVal1) >= 0) {
+                                rows.add(this.tuples.get(i));
+                            }
                         }
                     }
-                }
+                } // if
             }
       else
       {
@@ -283,6 +510,125 @@ public class Table
       return new Table (name + count++, attribute, domain, key, rows);
     } // range_select
 
+    /************************************************************************************
+     * Create a secondary index on the given (possibly non-unique) attributes, e.g.,
+     * studId or genre.  The index is a B+Tree in multimap mode, where each key holds
+     * the posting list of all tuples having that key value.
+     *
+     * #usage transcript.createIndex ("studId")
+     *
+     * @param attributes  the attributes to index
+     */
+    public void createIndex (String attributes)
+    {
+        out.println ("DDL> create index on " + name + " (" + attributes + ")");
+        buildIndex (attributes);
+    } // createIndex
+
+    /************************************************************************************
+     * Build the secondary index on the given attributes from the tuples, while
+     * changes wait.
+     *
+     * @param attributes  the attributes to index
+     */
+    private void buildIndex (String attributes)
+    {
+        int [] cols = match (attributes.split (" "));
+        BpTreeMap <KeyType, Comparable []> idx = new BpTreeMap <> (KeyType.class, Comparable [].class, true);
+        changing.writeLock ().lock ();
+        try {
+            for (Comparable [] tup : tuples) idx.put (KeyType.of (tup, cols), tup);
+            indexing.lock ();
+            try {
+                secIndex.put (attributes, idx);
+            } finally {
+                indexing.unlock ();
+            } // try
+        } finally {
+            changing.writeLock ().unlock ();
+        } // try
+    } // buildIndex
+
+    /************************************************************************************
+     * Select the tuples whose given attributes equal keyVal.  Use the secondary index
+     * on those attributes if there is one, otherwise scan the tuples.
+     *
+     * #usage transcript.select ("studId", new KeyType (12345))
+     *
+     * @param attributes  the (non-unique) attributes to compare
+     * @param keyVal      the given key value
+     * @return  a table with the tuples satisfying the predicate
+     */
+    public Table select (String attributes, KeyType keyVal)
+    {
+        out.println ("RA> " + name + ".select (" + attributes + " = " + keyVal + ")");
+        BpTreeMap <KeyType, Comparable []> idx = secIndex.get (attributes);
+        List <Comparable []> rows;
+
+        int []     cols = match (attributes.split (" "));
+        Snapshot   c    = (idx == null) ? snapshot (cols [0]) : null;
+        Comparable v    = keyVal.get (0);
+        boolean    one  = cols.length == 1;
+
+        if (idx != null) {
+            rows = idx.getAll (keyVal);
+        } else if (c != null && one && c.ints != null && v instanceof Integer) {    // scan the compressed column
+            rows = c.range ((Integer) v, (Integer) v + 1L);
+        } else if (c != null && one && c.dict != null && v instanceof String) {     // compare the codes
+            rows = new ArrayList <> ();
+            int code = c.dict.code ((String) v);
+            for (int i = 0; code >= 0 && i < c.n; i++) {
+                if (c.codes [i] == code && c.live (i)) rows.add (c.store.get (i));
+            } // for
+        } else if (c != null && c.zones != null) {                                 // skip blocks by zone map
+            KeyType.ProbeKey probe = new KeyType.ProbeKey (cols.length);
+            rows = c.zoned (cols [0], v, v, t -> probe.set (t, cols).equals (keyVal));
+        } else {
+            KeyType.ProbeKey probe = new KeyType.ProbeKey (cols.length);
+            rows = tuples.stream ().filter (t -> probe.set (t, cols).equals (keyVal))
+                                   .collect (Collectors.toList ());
+        } // if
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose given attributes are in the range keyVal1 <= value <
+     * keyVal2.  Use the secondary index on those attributes if there is one, in which
+     * case the tuples are returned in key order, otherwise scan the tuples.
+     *
+     * @param attributes  the (non-unique) attributes to compare
+     * @param keyVal1     the given lower bound for the range (inclusive)
+     * @param keyVal2     the given upper bound for the range (exclusive)
+     * @return  a table with the tuples satisfying the predicate
+     */
+    public Table select (String attributes, KeyType keyVal1, KeyType keyVal2)
+    {
+        out.println ("RA> " + name + ".select (" + attributes + ") between (" + keyVal1 + ") and " + keyVal2);
+        BpTreeMap <KeyType, Comparable []> idx = secIndex.get (attributes);
+        List <Comparable []> rows;
+
+        int []     cols = match (attributes.split (" "));
+        Snapshot   c    = (idx == null) ? snapshot (cols [0]) : null;
+        Comparable lo   = keyVal1.get (0), hi = keyVal2.get (0);
+        KeyType.ProbeKey probe = new KeyType.ProbeKey (cols.length);
+        Predicate <Comparable []> inRange = t -> { KeyType k = probe.set (t, cols);
+                                                   return k.compareTo (keyVal1) >= 0 && k.compareTo (keyVal2) < 0; };
+
+        if (idx != null) {
+            rows = idx.rangeAll (keyVal1, keyVal2);
+        } else if (c != null && cols.length == 1 && c.ints != null && lo instanceof Integer
+                                                 && hi instanceof Integer) {    // scan the compressed column
+            rows = c.range ((Integer) lo, (Integer) hi);
+        } else if (c != null && c.zones != null) {                                 // skip blocks by zone map
+            rows = c.zoned (cols [0], lo, hi, inRange);
+        } else {
+            rows = tuples.stream ().filter (inRange).collect (Collectors.toList ());
+        } // if
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // select
+
     /************************************************************************************
      * Union this table and table2.  Check that the two tables are compatible.
      *
@@ -320,7 +666,7 @@ public class Table
          *  table 2 is the same as any of the rows in table 1.
          *  if there is a match, it moves on without adding to the results
          */
-        if (table2.tuples.get(i).equals(this.tuples.get(j))) {
+        if (Arrays.equals(table2.tuples.get(i), this.tuples.get(j))) {
             match = false;
             break;
         }
@@ -355,7 +701,7 @@ public class Table
         /*  Using streams, filter out the tuples from table1 which are present in table2
          *  and using foreach add the tuples of table1 which are not present in table2 to rows.
          */
-        this.tuples.stream().filter(item -> !(table2.tuples.contains(item)))
+        this.tuples.stream().filter(item -> table2.tuples.stream().noneMatch(u -> Arrays.equals(u, item)))
                             .forEach(item -> rows.add(item));
 
         return new Table (name + count++, attribute, domain, key, rows);
@@ -472,20 +818,56 @@ public class Table
 
 
 
-  for (int i = 0; i < this.tuples.size(); i++)
+  @SuppressWarnings("unchecked")
+  LongMap <Comparable []> lmap = (table2.index instanceof LongMap && cols.length == 1)
+                                 ? (LongMap <Comparable []>) table2.index : null;
+  KeyType.ProbeKey probe = new KeyType.ProbeKey (cols.length);
+
+  //When table2 is the smaller table, build a Bloom filter on its keys, checked before each index
+  //probe and pushed into the scan, so a file-backed table does not unpack tuples without a match
+  Predicate <Comparable []> keep = null;
+  int n2 = table2.tuples.size ();
+  BloomFilter bloom = (n2 > 0 && n2 <= this.tuples.size ()) ? new BloomFilter (n2) : null;
+  if (bloom != null)
+     {
+  int [] keyCols = table2.match (table2.key);
+  if (lmap != null)
      {
-  //This tuple is used to get only the key data frome the tuples
-  Comparable [] t = new Comparable[cols.length];
-  for ( int j = 0; j < t.length; j++)
+  for (Comparable [] u : table2.tuples) bloom.add (Long.hashCode (((Number) u[keyCols[0]]).longValue ()));
+  keep = kv -> ! (kv[0] instanceof Number) || bloom.mightContain (Long.hashCode (((Number) kv[0]).longValue ()));
+     }
+  else
      {
-  t[j] = this.tuples.get(i)[cols[j]];
+  KeyType.ProbeKey kp = new KeyType.ProbeKey (cols.length);
+  int [] all = IntStream.range (0, cols.length).toArray ();
+  for (Comparable [] u : table2.tuples) bloom.add (kp.set (u, keyCols).hashCode ());
+  keep = kv -> bloom.mightContain (kp.set (kv, all).hashCode ());
+     }//if
+     }//if
 
-     }//for
+  //Scan the tuples sequentially, so a file-backed table reads its pages ahead; the Bloom
+  //filter is checked in the loop only if the scan could not apply it
+  Iterable <Comparable []> pushed = this.scan (cols, keep);
+  boolean tested = pushed != null;
+  for (Comparable [] t : tested ? pushed : this.tuples)
+     {
+  Comparable [] u;
+  if (lmap != null && t[cols[0]] instanceof Number)
+     {
+  //Single integer key: probe the primitive map without building a KeyType
+  long v = ((Number) t[cols[0]]).longValue();
+  u = (tested || bloom == null || bloom.mightContain(Long.hashCode(v))) ? lmap.get(v) : null;
+     }
+  else
+     {
+  //The probe key is reloaded with the key data from the tuple, so nothing is allocated
+  probe.set(t, cols);
+  u = (tested || bloom == null || lmap != null || bloom.mightContain(probe.hashCode())) ? table2.index.get(probe) : null;
+     }
   //Concats the rest of the row and adds it to the result array list.
-  Comparable [] u = table2.index.get(new KeyType(t));
   if (u != null)
      {
-  rows.add(ArrayUtil.concat(this.tuples.get(i), u));
+  rows.add(ArrayUtil.concat(t, u));
      }//if
      }//for
      }//if
@@ -551,42 +933,67 @@ domain, this.key, rows);
         Class [] domainsTable1 = this.extractDom(colPosAttr1, this.domain);
         Class [] domainsTable2 = this.extractDom(colPosAttr2, table2.domain);
 
-        // Compute only if the domains are matching
-        if (Arrays.equals(domainsTable1, domainsTable2)) {
+        // Dictionary encoded columns on both sides: join on the codes
+        Snapshot c1 = (colPosAttr1.length == 1) ? this.snapshot (colPosAttr1 [0]) : null;
+        Snapshot c2 = (c1 != null && c1.dict != null) ? table2.snapshot (colPosAttr2 [0]) : null;
+
+        if (c2 != null && c2.dict != null) {
+
+            // build: bucket the tuples of this table by code
+            @SuppressWarnings("unchecked")
+            List <Comparable []> [] byCode = new List [c1.dict.size ()];
+            for (int i = 0; i < c1.n; i++) {
+                if (! c1.live (i)) continue;
+                Comparable [] t = c1.store.get (i);
+                int c = c1.codes [i];
+                if (byCode [c] == null) byCode [c] = new ArrayList <> ();
+                byCode [c].add (t);
+            } // for
 
-            // Creating an instance of HashMap to generate
-            HashMap <KeyType, List<Comparable[]>> h_map = new HashMap <>();
+            // probe: translate the codes of table2 into codes of this table
+            int [] to = c2.dict.translate (c1.dict);
+            for (int i = 0; i < c2.n; i++) {
+                int c = to [c2.codes [i]];
+                if (c < 0 || c >= byCode.length || byCode [c] == null || ! c2.live (i)) continue;
+                Comparable [] t2 = c2.store.get (i);
+                for (Comparable [] fetchedData : byCode [c]) rows.add (ArrayUtil.concat (fetchedData, t2));
+            } // for
 
-            // iterating through the table instance "primary-key-table"
-            for (int i = 0; i < this.tuples.size(); i++) {
+        } else if (Arrays.equals(domainsTable1, domainsTable2)) {          // compute only if the domains are matching
 
-                Comparable [] keyVal = new Comparable [colPosAttr1.length];
+            // Creating an instance of HashMap to generate, and a Bloom filter on its keys
+            HashMap <KeyType, List<Comparable[]>> h_map = new HashMap <>();
+            BloomFilter bloom = new BloomFilter (this.tuples.size ());
 
-                // iterating through primary key tuple(s)
-                for (int pk = 0; pk < colPosAttr1.length; pk++)
-                    keyVal[pk] = this.tuples.get(i)[colPosAttr1[pk]];
+            // iterating through the table instance "primary-key-table" (sequential scans,
+            // so file-backed tables read their pages ahead)
+            for (Comparable [] t : this.tuples) {
 
-                // inserting into HashMap
-                List <Comparable[]> valueToInsert = h_map.getOrDefault(new KeyType(keyVal), new ArrayList<>());
-                valueToInsert.add(this.tuples.get(i));
-                h_map.put(new KeyType(keyVal), valueToInsert);
+                // inserting into HashMap under a (specialized) key built from the primary key tuple(s)
+                KeyType k = KeyType.of(t, colPosAttr1);
+                h_map.computeIfAbsent(k, x -> new ArrayList<>()).add(t);
+                bloom.add(k.hashCode());
             }
 
-            // iterating throught the table instance "foreign-key-table"
-            for (int i = 0; i < table2.tuples.size(); i++) {
-
-                Comparable [] keyVal = new Comparable [colPosAttr2.length];
-
-                // iterating through foreign key tuple(s)
-                for (int fk = 0; fk < keyVal.length; fk++)
-                    keyVal[fk] = table2.tuples.get(i)[colPosAttr2[fk]];
-
-                List <Comparable[]> fetchedValue = h_map.get(new KeyType(keyVal));
+            // iterating throught the table instance "foreign-key-table", reusing one probe key;
+            // the Bloom filter is pushed into the scan, so a file-backed table does not unpack
+            // tuples whose key has no match, or else checked before each look up (on the probe
+            // key's hash, which the look up reuses)
+            KeyType.ProbeKey probe = new KeyType.ProbeKey (colPosAttr2.length);
+            KeyType.ProbeKey kp    = new KeyType.ProbeKey (colPosAttr2.length);
+            int []           all   = IntStream.range (0, colPosAttr2.length).toArray ();
+            Iterable <Comparable []> pushed = table2.scan (colPosAttr2, kv -> bloom.mightContain (kp.set (kv, all).hashCode ()));
+            boolean tested = pushed != null;
+            for (Comparable [] t2 : tested ? pushed : table2.tuples) {
+
+                probe.set(t2, colPosAttr2);
+                if (! tested && ! bloom.mightContain(probe.hashCode())) continue;
+                List <Comparable[]> fetchedValue = h_map.get(probe);
 
                 // if a collision occurs add tuples to joins
                 if (fetchedValue != null)
                     for (Comparable[] fetchedData : fetchedValue)
-                        rows.add(ArrayUtil.concat(fetchedData,table2.tuples.get(i)));
+                        rows.add(ArrayUtil.concat(fetchedData,t2));
             }
         }
 
@@ -780,7 +1187,46 @@ domain, this.key, rows);
     } // col
 
     /************************************************************************************
-     * Insert a tuple to the table.
+     * Put the tuple into the primary index under its key (a primitive long key for a
+     * LongMap).
+     *
+     * @param tup   the tuple
+     * @param cols  the positions of the key attributes
+     */
+    private void indexPut (Comparable [] tup, int [] cols)
+    {
+        if (index instanceof LongMap) {
+            @SuppressWarnings("unchecked")
+            LongMap <Comparable []> lmap = (LongMap <Comparable []>) index;
+            if (lmap.put (((Number) tup [cols [0]]).longValue (), tup) != null) dupKeys = true;
+        } else if (mType != MapType.NO_MAP) {
+            if (index.put (KeyType.of (tup, cols), tup) != null) dupKeys = true;
+        } // if
+    } // indexPut
+
+    /************************************************************************************
+     * Get the tuple stored in the primary index under the key of the given tuple.
+     *
+     * @param tup    the tuple whose key to look up
+     * @param cols   the positions of the key attributes
+     * @param probe  a probe key to reuse
+     * @return  the tuple in the index or null if none
+     */
+    private Comparable [] indexGet (Comparable [] tup, int [] cols, KeyType.ProbeKey probe)
+    {
+        if (index instanceof LongMap) {
+            @SuppressWarnings("unchecked")
+            LongMap <Comparable []> lmap = (LongMap <Comparable []>) index;
+            return lmap.get (((Number) tup [cols [0]]).longValue ());
+        } // if
+        return (mType == MapType.NO_MAP) ? null : index.get (probe.set (tup, cols));
+    } // indexGet
+
+    /************************************************************************************
+     * Insert a tuple to the table.  If inserts are logged, the tuple is made durable
+     * in the write-ahead log before it is applied; concurrent inserts share fsyncs
+     * (group commit).  Once the log grows beyond CHECKPOINT_BYTES the table is saved,
+     * which truncates the log.
      *
      * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
      *
@@ -792,17 +1238,566 @@ domain, this.key, rows);
         out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
 
         if (typeCheck (tup)) {
-            tuples.add (tup);
-            Comparable [] keyVal = new Comparable [key.length];
-            int []        cols   = match (key);
-            for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
-            if (mType != MapType.NO_MAP) index.put (new KeyType (keyVal), tup);
+            changing.readLock ().lock ();
+            try {
+                if (logged) log ().log (tup);
+                apply (tup);
+            } finally {
+                changing.readLock ().unlock ();
+            } // try
+            checkpoint ();
             return true;
         } else {
             return false;
         } // if
     } // insert
 
+    /************************************************************************************
+     * Add the tuple to the tuples and to every index (for insert and log replay).
+     *
+     * @param tup  the tuple to add
+     */
+    private void apply (Comparable [] tup)
+    {
+        synchronized (tuples) { tup = tuples.append (tup); }
+        boolean serial = ! (index instanceof ConcurrentLinHashMap)    // which takes concurrent puts
+                         || ! secIndex.isEmpty ();
+        if (serial) indexing.lock ();
+        try {
+            indexPut (tup, match (key));
+            for (Map.Entry <String, BpTreeMap <KeyType, Comparable []>> e : secIndex.entrySet ()) {
+                e.getValue ().put (KeyType.of (tup, match (e.getKey ().split (" "))), tup);
+            } // for
+        } finally {
+            if (serial) indexing.unlock ();
+        } // try
+    } // apply
+
+    /************************************************************************************
+     * Delete the tuple with the given primary key value, found through the index (or
+     * by a scan if there is none).
+     *
+     * #usage movie.delete (new KeyType ("Star_Wars", 1977))
+     *
+     * @param keyVal  the primary key value of the tuple to delete
+     * @return  the number of tuples deleted (0 or 1)
+     */
+    public int delete (KeyType keyVal)
+    {
+        out.println ("DML> delete from " + name + " where key = " + keyVal);
+
+        return mutate (() -> locate (keyVal), null);
+    } // delete
+
+    /************************************************************************************
+     * Delete the tuples satisfying the given predicate.
+     *
+     * #usage movie.delete (t -> t[movie.col("year")].equals (1977))
+     *
+     * @param predicate  the check condition for tuples
+     * @return  the number of tuples deleted
+     */
+    public int delete (Predicate <Comparable []> predicate)
+    {
+        out.println ("DML> delete from " + name + " where " + predicate);
+
+        return mutate (() -> matching (predicate), null);
+    } // delete
+
+    /************************************************************************************
+     * Update the tuple with the given primary key value, found through the index (or
+     * by a scan if there is none), setting the given attributes to the given values.
+     *
+     * #usage movie.update (new KeyType ("Star_Wars", 1977), "length", 125)
+     *
+     * @param keyVal      the primary key value of the tuple to update
+     * @param attributes  the attributes to set
+     * @param values      the new values of the attributes
+     * @return  the number of tuples updated (0 or 1)
+     */
+    public int update (KeyType keyVal, String attributes, Comparable ... values)
+    {
+        out.println ("DML> update " + name + " set (" + attributes + ") = " + Arrays.toString (values)
+                     + " where key = " + keyVal);
+
+        UnaryOperator <Comparable []> f = setter (attributes, values);
+        return (f == null) ? 0 : mutate (() -> locate (keyVal), f);
+    } // update
+
+    /************************************************************************************
+     * Update the tuples satisfying the given predicate, setting the given attributes
+     * to the given values.
+     *
+     * #usage movie.update (t -> t[movie.col("studioName")].equals ("Fox"), "studioName", "FOX")
+     *
+     * @param predicate   the check condition for tuples
+     * @param attributes  the attributes to set
+     * @param values      the new values of the attributes
+     * @return  the number of tuples updated
+     */
+    public int update (Predicate <Comparable []> predicate, String attributes, Comparable ... values)
+    {
+        out.println ("DML> update " + name + " set (" + attributes + ") = " + Arrays.toString (values)
+                     + " where " + predicate);
+
+        UnaryOperator <Comparable []> f = setter (attributes, values);
+        return (f == null) ? 0 : mutate (() -> matching (predicate), f);
+    } // update
+
+    /************************************************************************************
+     * Return the function making an updated copy of a tuple, with the given attributes
+     * set to the given values, or null if they do not match the schema.
+     *
+     * @param attributes  the attributes to set
+     * @param values      the new values of the attributes
+     * @return  the function updating a tuple
+     */
+    private UnaryOperator <Comparable []> setter (String attributes, Comparable [] values)
+    {
+        String [] attrs = attributes.split (" ");
+        int []    cols  = new int [attrs.length];
+        boolean   ok    = values.length == attrs.length;
+        for (int j = 0; ok && j < attrs.length; j++) {
+            cols [j] = col (attrs [j]);
+            ok = cols [j] >= 0 && domain [cols [j]] == values [j].getClass ();
+        } // for
+        if (! ok) {
+            out.println ("update: values do not match the attributes (" + attributes + ")");
+            return null;
+        } // if
+        return t -> {
+            Comparable [] u = t.clone ();
+            for (int j = 0; j < cols.length; j++) u [cols [j]] = values [j];
+            return u;
+        };
+    } // setter
+
+    /************************************************************************************
+     * Find the tuple with the given primary key value in the index, or by scanning
+     * the tuples if there is no index.
+     *
+     * @param keyVal  the primary key value
+     * @return  the tuple or null if not found
+     */
+    private Comparable [] find (KeyType keyVal)
+    {
+        if (mType != MapType.NO_MAP) return index.get (keyVal);
+        int [] cols = match (key);
+        KeyType.ProbeKey probe = new KeyType.ProbeKey (cols.length);
+        for (Comparable [] t : tuples) if (probe.set (t, cols).equals (keyVal)) return t;
+        return null;
+    } // find
+
+    /************************************************************************************
+     * Delete the tuples at the positions found by where, or with f replace them by
+     * their updated copies.  The tuples are marked dead in the tombstones first (a
+     * tuple a concurrent change marked already is left to it).  If the table is
+     * logged, the changes are then made durable, sharing one sync (an update is
+     * logged as one record holding the old and new tuple), before the indices are
+     * maintained.  A background compaction starts once enough tuples are dead.
+     *
+     * @param where  the function finding the positions in the store of the tuples
+     * @param f      the function making an updated copy of a tuple (null to delete)
+     * @return  the number of tuples changed
+     */
+    private int mutate (Supplier <int []> where, UnaryOperator <Comparable []> f)
+    {
+        List <Comparable []> rows = new ArrayList <> ();
+        List <Comparable []> news = new ArrayList <> ();
+        changing.readLock ().lock ();                                 // the positions stay put
+        try {
+            int [] pos = where.get ();
+            synchronized (tuples) {
+                for (int p : pos) if (tomb.kill (p)) rows.add (store.get (p));
+                nDead = tomb.count ();
+            } // synchronized
+            for (Comparable [] t : rows) news.add ((f == null) ? null : f.apply (t));
+            if (logged && ! rows.isEmpty ()) {
+                long lsn = 0;
+                for (int i = 0; i < rows.size (); i++) {
+                    lsn = (f == null) ? log ().append (WriteAheadLog.DELETE, rows.get (i))
+                                      : log ().append (WriteAheadLog.UPDATE, rows.get (i), news.get (i));
+                } // for
+                wal.sync (lsn);
+            } // if
+            for (int i = 0; i < rows.size (); i++) {
+                unindex (rows.get (i));
+                if (f != null) apply (news.get (i));
+            } // for
+        } finally {
+            changing.readLock ().unlock ();
+        } // try
+        checkpoint ();
+        compactLater ();
+        return rows.size ();
+    } // mutate
+
+    /************************************************************************************
+     * Return the position in the store of the live tuple with the given primary key
+     * value, found through the index (or by a scan if there is none).
+     *
+     * @param keyVal  the primary key value
+     * @return  the position, or none if not found
+     */
+    private int [] locate (KeyType keyVal)
+    {
+        Comparable [] tup = find (keyVal);
+        int p = (tup == null) ? -1 : last (tup, tuples.all ());
+        return (p < 0) ? new int [0] : new int [] { p };
+    } // locate
+
+    /************************************************************************************
+     * Return the positions in the store of the live tuples satisfying the predicate.
+     *
+     * @param predicate  the check condition for tuples
+     * @return  the positions, in store order
+     */
+    private int [] matching (Predicate <Comparable []> predicate)
+    {
+        Tombstones d = tomb;
+        int [] pos = new int [16];
+        int i = 0, n = 0;
+        for (Comparable [] t : store) {
+            if (! d.isDead (i) && predicate.test (t)) {
+                if (n == pos.length) pos = Arrays.copyOf (pos, 2 * n);
+                pos [n++] = i;
+            } // if
+            i++;
+        } // for
+        return Arrays.copyOf (pos, n);
+    } // matching
+
+    /************************************************************************************
+     * Return the position of the last live tuple in the store agreeing with tup on
+     * the given columns (the tuple itself, if it is in the store), reading only the
+     * zone map blocks that may hold its values.
+     *
+     * @param tup   the tuple to look for
+     * @param cols  the columns to compare
+     * @return  the position, or -1 if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private int last (Comparable [] tup, int [] cols)
+    {
+        List <Comparable []> s = store;
+        Tombstones d = tomb;
+        ZoneMap    z = zones;
+        int n = s.size (), b = (z == null) ? n : z.blockRows ();
+        for (int k = (n - 1) / Math.max (1, b); k >= 0; k--) {
+            boolean may = true;
+            for (int j = 0; may && z != null && k < z.blocks () && j < cols.length; j++) {
+                Comparable v = tup [cols [j]];
+                may = v == null || z.mayContain (k, cols [j], v, v);
+            } // for
+            if (! may) continue;
+            for (int i = Math.min (n, (k + 1) * b) - 1; i >= k * b; i--) {
+                if (d.isDead (i)) continue;
+                Comparable [] t = s.get (i);
+                boolean same = t == tup;
+                for (int j = 0; ! same && j < cols.length; j++) {
+                    if (! Objects.equals (t [cols [j]], tup [cols [j]])) break;
+                    same = j == cols.length - 1;
+                } // for
+                if (same) return i;
+            } // for
+        } // for
+        return -1;
+    } // last
+
+    /************************************************************************************
+     * Remove the dead tuple from every index (for delete, update and log replay).
+     * The primary index entry is removed only if it holds this tuple, in which case
+     * the last older live tuple with the same key (if keys were ever reused) takes
+     * its place.
+     *
+     * @param tup  the tuple marked dead
+     */
+    private void unindex (Comparable [] tup)
+    {
+        int [] cols = match (key);
+        KeyType.ProbeKey probe = new KeyType.ProbeKey (cols.length);
+        indexing.lock ();                                             // the check and removal go together
+        try {
+            if (Arrays.equals (indexGet (tup, cols, probe), tup)) {
+                if (index instanceof LongMap) {
+                    @SuppressWarnings("unchecked")
+                    LongMap <Comparable []> lmap = (LongMap <Comparable []>) index;
+                    lmap.remove (((Number) tup [cols [0]]).longValue ());
+                } else {
+                    index.remove (probe.set (tup, cols));
+                } // if
+                int p = dupKeys ? last (tup, cols) : -1;
+                if (p >= 0) indexPut (store.get (p), cols);
+            } // if
+            for (Map.Entry <String, BpTreeMap <KeyType, Comparable []>> e : secIndex.entrySet ()) {
+                e.getValue ().remove (KeyType.of (tup, match (e.getKey ().split (" "))), tup);
+            } // for
+        } finally {
+            indexing.unlock ();
+        } // try
+    } // unindex
+
+    /************************************************************************************
+     * Redo an operation read from the write-ahead log.  A deleted tuple is logged by
+     * value, so the last live copy in the store is the one marked dead.
+     *
+     * @param op    the operation (INSERT, DELETE or UPDATE)
+     * @param rows  the tuple inserted or deleted, or the old and the new tuple
+     */
+    private void redo (byte op, Comparable [][] rows)
+    {
+        if (op != WriteAheadLog.INSERT) {
+            int p = last (rows [0], tuples.all ());
+            if (p >= 0) {
+                Comparable [] t = store.get (p);
+                tomb.kill (p);
+                nDead = tomb.count ();
+                unindex (t);
+            } // if
+        } // if
+        if (op != WriteAheadLog.DELETE) apply (rows [rows.length - 1]);
+    } // redo
+
+    /************************************************************************************
+     * Save the table (a checkpoint) if its log has outgrown CHECKPOINT_BYTES, unless
+     * a checkpoint is already under way.
+     */
+    private void checkpoint ()
+    {
+        if (! logged || wal.size () <= CHECKPOINT_BYTES || ! checkpointing.tryLock ()) return;
+        try {
+            save ();
+        } finally {
+            checkpointing.unlock ();
+        } // try
+    } // checkpoint
+
+    /************************************************************************************
+     * Start compacting the store on a background thread if the dead tuples exceed
+     * the thresholds and no compaction is under way.
+     */
+    private void compactLater ()
+    {
+        if (compacting.isLocked () || nDead < COMPACT_MIN || nDead < COMPACT_FRACTION * store.size ()) return;
+        Thread t = new Thread (this::compact, "compact-" + name);
+        t.setDaemon (true);
+        t.start ();
+    } // compactLater
+
+    /************************************************************************************
+     * Compact the store, dropping the dead tuples.  The live tuples are copied into a
+     * new list without holding the table's lock (only the snapshot and the final swap
+     * take it), so inserts, deletes and scans proceed meanwhile; scans that started
+     * before the swap keep reading the old list.  At the swap, the tuples deleted
+     * meanwhile are marked in the new tombstones at their new positions (changes wait
+     * for the swap, so none holds a position in the old store).  A file store is
+     * copied into a new file, which replaces the old one at the swap (the old list
+     * keeps reading its file through its open channel).
+     */
+    public void compact ()
+    {
+        compacting.lock ();
+        try {
+            List <Comparable []> old;
+            Comparable [][] snap;
+            Tombstones gone;
+            int n;
+            synchronized (tuples) {
+                if (nDead == 0) return;
+                old  = store;
+                n    = old.size ();
+                snap = (old instanceof FileList) ? null : old.toArray (new Comparable [n][]);   // a file's rows stay put
+                gone = tomb.copy ();
+            } // synchronized
+
+            List <Comparable []> fresh = (old instanceof FileList) ? new FileList (DIR + name + COMPACT_EXT, codec (), true,
+                                                                                   sType == StoreType.MAPPED_FILE_LIST)
+                                                                   : new ArrayList <> (n);
+            ZoneMap z = (zones == null) ? null : new ZoneMap (zones.blockRows ());
+            int [] kept = new int [n];
+            int nKept = 0;
+            for (int i = 0; i < n; i++) {
+                if (gone.isDead (i)) continue;
+                Comparable [] t = (snap == null) ? old.get (i) : snap [i];
+                kept [nKept++] = i;
+                fresh.add (t);
+                if (z != null) z.add (t);
+            } // for
+
+            changing.writeLock ().lock ();
+            try {
+                synchronized (tuples) {
+                    Tombstones d = new Tombstones ();
+                    for (int k = 0; k < nKept; k++) if (tomb.isDead (kept [k])) d.kill (k);
+                    for (int i = n; i < old.size (); i++) {                        // added meanwhile
+                        fresh.add (old.get (i));
+                        if (z != null) z.add (old.get (i));
+                        if (tomb.isDead (i)) d.kill (nKept + i - n);
+                    } // for
+                    for (DictionaryColumn dc : dict) if (dc != null) dc.retain (kept, nKept, n);
+                    for (IntColumn ic : ints) if (ic != null) ic.retain (kept, nKept, n);
+                    if (fresh instanceof FileList) ((FileList) fresh).renameTo (DIR + name);
+                    store = fresh;
+                    zones = z;
+                    tomb  = d;
+                    nDead = d.count ();
+                } // synchronized
+            } finally {
+                changing.writeLock ().unlock ();
+            } // try
+        } finally {
+            compacting.unlock ();
+        } // try
+    } // compact
+
+    /************************************************************************************
+     * Dictionary encode the String columns of a tuple being added to the store: the
+     * strings are replaced by the dictionaries' copies (in a copy of the tuple, so the
+     * caller's array is left as is) and their codes are appended to the columns.  A
+     * column whose cardinality turns out too high falls back to plain storage.  The
+     * Integer columns are appended to their compressed copies.  Tuples hold no nulls:
+     * insert type checks them and the codec that loads them has no null values.
+     *
+     * @param tup  the tuple to encode
+     * @return  the tuple to store (tup itself if no string was replaced)
+     */
+    private Comparable [] encode (Comparable [] tup)
+    {
+        int n = store.size ();
+        Comparable [] t = tup;
+        for (int j = 0; j < dict.length; j++) {
+            if (ints [j] != null) ints [j].add ((Integer) tup [j]);
+            DictionaryColumn d = dict [j];
+            if (d == null) continue;
+            if (t == tup) t = tup.clone ();
+            t [j] = d.add ((String) tup [j]);
+            if (d.size () > DICT_MAX_SIZE || n >= DICT_SAMPLE && d.size () > DICT_MAX_RATIO * n) dict [j] = null;
+        } // for
+        return t;
+    } // encode
+
+    /************************************************************************************
+     * This inner class is a snapshot of the store, the tombstones and the summaries of
+     * a column (its dictionary encoding or compressed copy, and the zone map), for
+     * scans that work on the summaries.  Row i of the snapshot is store.get (i) and has
+     * code codes [i] (for an encoded String column) or value ints.get (i) (for a
+     * compressed Integer column).
+     */
+    private final class Snapshot
+    {
+        final DictionaryColumn       dict;
+        final int []                 codes;
+        final IntColumn              ints;
+        final ZoneMap                zones;
+        final List <Comparable []>   store;
+        final int                    n;
+        final Tombstones             dead;
+
+        Snapshot (int col)
+        {
+            dict  = Table.this.dict [col];
+            codes = (dict == null) ? null : dict.codes ();
+            ints  = (Table.this.ints [col] == null) ? null : Table.this.ints [col].snapshot ();
+            zones = (Table.this.zones == null) ? null : Table.this.zones.snapshot ();
+            store = Table.this.store;
+            n     = store.size ();
+            dead  = (nDead == 0) ? null : tomb;
+        } // constructor
+
+        /** Return whether the tuple at position i is live.
+         */
+        boolean live (int i)
+        {
+            return dead == null || ! dead.isDead (i);
+        } // live
+
+        /** Return the live tuples whose (Integer) value is in [lo, hi), in store order,
+         *  scanning the compressed column.
+         */
+        List <Comparable []> range (long lo, long hi)
+        {
+            List <Comparable []> rows = new ArrayList <> ();
+            ints.scan (lo, hi, i -> { if (live (i)) rows.add (store.get (i)); });
+            return rows;
+        } // range
+
+        /** Return the live tuples satisfying the predicate, in store order, reading
+         *  only the zone map blocks where column col may be in [lo, hi].
+         */
+        List <Comparable []> zoned (int col, Comparable lo, Comparable hi, Predicate <Comparable []> pred)
+        {
+            List <Comparable []> rows = new ArrayList <> ();
+            int b = zones.blockRows ();
+            for (int k = 0; k < zones.blocks (); k++) {
+                if (! zones.mayContain (k, col, lo, hi)) continue;
+                for (int i = k * b, end = Math.min (n, i + b); i < end; i++) {
+                    if (! live (i)) continue;
+                    Comparable [] t = store.get (i);
+                    if (pred.test (t)) rows.add (t);
+                } // for
+            } // for
+            return rows;
+        } // zoned
+    } // Snapshot inner class
+
+    /************************************************************************************
+     * Return the tuples passing a pushed down test (e.g., a join's Bloom filter), for
+     * a file-backed store without dead tuples, which decodes only the tested columns
+     * of the records failing it.  Other stores do not apply the test, since their
+     * tuples are already unpacked: null is returned, and the caller scans tuples and
+     * tests them itself.
+     *
+     * @param cols  the columns to test
+     * @param keep  the test, given the values of the columns in the order of cols
+     *              (null to keep every tuple)
+     * @return  the tuples passing the test in store order, or null if not applied
+     */
+    private Iterable <Comparable []> scan (int [] cols, Predicate <Comparable []> keep)
+    {
+        List <Comparable []> s = store;
+        if (keep == null || ! (s instanceof FileList) || nDead > 0) return null;
+        return () -> ((FileList) s).iterator (cols, keep);
+    } // scan
+
+    /************************************************************************************
+     * Return a snapshot for a scan on the summaries of the given column, or null if
+     * the table keeps none (a derived table).
+     *
+     * @param col  the column position
+     * @return  the snapshot of the column or null
+     */
+    private Snapshot snapshot (int col)
+    {
+        synchronized (tuples) {
+            return (dict [col] == null && ints [col] == null && zones == null) ? null : new Snapshot (col);
+        } // synchronized
+    } // snapshot
+
+    /************************************************************************************
+     * Return the number of dead tuples (tombstones) in the store.
+     *
+     * @return  the number of deleted tuples not yet compacted away
+     */
+    public int deadCount ()
+    {
+        return nDead;
+    } // deadCount
+
+    /************************************************************************************
+     * Return the write-ahead log, creating a new one (replacing any stale log of an
+     * earlier table with this name) on first use.
+     *
+     * @return  the write-ahead log
+     */
+    private synchronized WriteAheadLog log ()
+    {
+        if (wal == null) {
+            wal = WriteAheadLog.create (DIR + name, new WriteAheadLog.Header (name, attribute, domain, key),
+                                        codec (), 0);
+        } // if
+        return wal;
+    } // log
+
     /************************************************************************************
      * Get the name of the table.
      *
@@ -854,17 +1849,55 @@ domain, this.key, rows);
     } // printIndex
 
     /************************************************************************************
-     * Load the table with the given name into memory.
+     * Load the table with the given name into memory, memory-mapping the file if it
+     * is large, and replay its write-ahead log, if any.
      *
      * @param name  the name of the table to load
      */
     public static Table load (String name)
     {
-        Table tab = null;
+        File f = new File (DIR + name + EXT);
+        return load (name, f.length () >= MAP_THRESHOLD);
+    } // load
+
+    /************************************************************************************
+     * Load the table with the given name into memory, either reading the file in
+     * chunks or memory-mapping it.  The tuples are decoded chunk by chunk and the
+     * primary index is rebuilt from the rows recorded in the index section (or from
+     * all the rows if the table was saved without it), as are the secondary indices.
+     * A disk-based primary index is reopened instead, and rebuilt only if its stamp
+     * shows it changed after the save.
+     * Then the changes in the table's write-ahead log that are not in the saved file
+     * are replayed; a table that was never saved is recovered from its log alone.
+     * Files in other formats, such as the serialized Table objects saved before the
+     * binary format, are rejected.
+     *
+     * @param name    the name of the table to load
+     * @param mapped  whether to memory-map the file
+     */
+    public static Table load (String name, boolean mapped)
+    {
         try {
-            ObjectInputStream ois = new ObjectInputStream (new FileInputStream (DIR + name + EXT));
-            tab = (Table) ois.readObject ();
-            ois.close ();
+            Table tab;
+            long  lsn = 0;
+            if (new File (DIR + name + EXT).exists ()) {
+                long [] saved = new long [1];
+                tab = loadFile (name, mapped, saved);
+                lsn = saved [0];
+            } else if (WriteAheadLog.exists (DIR + name)) {
+                WriteAheadLog.Header h = WriteAheadLog.header (DIR + name);
+                tab = new Table (h.name, h.attribute, h.domain, h.key);
+            } else {
+                out.println ("load: no table " + name);
+                return null;
+            } // if
+            if (WriteAheadLog.exists (DIR + name)) {
+                long last = WriteAheadLog.replay (DIR + name, tab.codec (), lsn, tab::redo);
+                tab.wal   = WriteAheadLog.open (DIR + name, tab.codec (), last);
+                tab.compactLater ();
+            } // if
+            tab.logged = LOG_INSERTS;
+            return tab;
         } catch (IOException ex) {
             out.println ("load: IO Exception");
             ex.printStackTrace ();
@@ -872,24 +1905,432 @@ domain, this.key, rows);
             out.println ("load: Class Not Found Exception");
             ex.printStackTrace ();
         } // try
-        return tab;
+        return null;
     } // load
 
     /************************************************************************************
-     * Save this table in a file.
+     * Load the table from its saved file.
+     *
+     * @param name    the name of the table to load
+     * @param mapped  whether to memory-map the file
+     * @param lsn     receives the LSN of the last logged change in the file
+     */
+    private static Table loadFile (String name, boolean mapped, long [] lsn)
+        throws IOException, ClassNotFoundException
+    {
+        try (FileChannel ch = FileChannel.open (new File (DIR + name + EXT).toPath (), StandardOpenOption.READ)) {
+            Input in = new Input (ch, mapped && ch.size () <= Integer.MAX_VALUE);
+            int magic = (ch.size () < 8) ? 0 : in.next (4).getInt ();
+            if (magic != MAGIC && magic != MAGIC_V1) throw new IOException ("not a saved table: " + DIR + name + EXT);
+
+            ByteBuffer h = in.next (in.next (4).getInt ());
+            String   tname  = getString (h);
+            String [] attr  = new String [h.getInt ()];
+            Class  [] dom   = new Class [attr.length];
+            for (int j = 0; j < attr.length; j++) {
+                attr [j] = getString (h);
+                dom [j]  = Class.forName (getString (h));
+            } // for
+            String [] k = new String [h.getInt ()];
+            for (int j = 0; j < k.length; j++) k [j] = getString (h);
+            long nRows = h.getLong ();
+            lsn [0]    = h.getLong ();
+
+            Table tab = new Table (tname, attr, dom, k, false);
+            for (long r = 0; r < nRows; ) {
+                ByteBuffer c = in.next (8);
+                int n = c.getInt (), len = c.getInt ();
+                for (Comparable [] tup : tab.codec ().unpackChunk (in.next (len), n, magic == MAGIC)) tab.tuples.add (tup);
+                r += n;
+            } // for
+
+            int  flag  = in.next (4).getInt ();
+            long stamp = (flag == 2) ? in.next (8).getLong () : 0;
+            boolean current = stamp != 0 && tab.index instanceof DiskLinHashMap
+                              && ((DiskLinHashMap) tab.index).stamp () == stamp;
+            if (! current && tab.index instanceof DiskLinHashMap) tab.index.clear ();
+            int [] cols = tab.match (k);
+            if (flag != 0) {                                          // index section
+                ByteBuffer b = in.next (in.next (4).getInt ());
+                for (int r = 0; r < nRows && ! current; r++) {
+                    if ((b.get (r >>> 3) & (1 << (r & 7))) != 0) tab.indexPut (tab.tuples.get (r), cols);
+                } // for
+                b = in.next (in.next (4).getInt ());
+                for (int n = b.getInt (), j = 0; j < n; j++) tab.buildIndex (getString (b));
+            } else {
+                for (Comparable [] tup : tab.tuples) tab.indexPut (tup, cols);
+            } // if
+            if (tab.index != null && tab.index.size () < tab.tuples.size ()) tab.dupKeys = true;   // some keys reused
+            return tab;
+        } // try
+    } // loadFile
+
+    /************************************************************************************
+     * Save this table in a file, including its index section.  This is a checkpoint:
+     * the records of the write-ahead log it includes are dropped once the file is
+     * safely written.
      */
     public void save ()
     {
+        save (true);
+    } // save
+
+    /************************************************************************************
+     * Save this table in a file in a binary format, written through a file channel:
+     *
+     *   MAGIC, header length, header (name, attributes and domains, key, number of rows,
+     *   LSN of the last logged change included)
+     *   chunks of up to CHUNK_ROWS tuples: number of rows, bytes, columns packed by the codec
+     *   (with the Integer columns compressed)
+     *   index flag, and if set: the stamp of a disk-based primary index (0 if none),
+     *   the bitmap of the rows in the primary index and the attribute lists of the
+     *   secondary indices
+     *
+     * Without the index section, load indexes every row.  With it, load reopens a
+     * disk-based primary index whose stamp still matches rather than rebuilding it.
+     *
+     * The checkpoint works on a snapshot: changes wait only while it notes the rows,
+     * the tombstones and the LSN and marks the rows in the primary index, after which
+     * it writes the file (through a temporary file, so a crash leaves the old one)
+     * while changes go on.  Only the log records up to the snapshot's LSN are then
+     * dropped.  One checkpoint runs at a time, and compaction waits for it.
+     *
+     * @param withIndex  whether to write the index section
+     */
+    public void save (boolean withIndex)
+    {
+        checkpointing.lock ();
+        compacting.lock ();                                           // rows 0 .. n-1 of the store stay put
         try {
-            ObjectOutputStream oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
-            oos.writeObject (this);
-            oos.close ();
+            List <Comparable []> s;
+            Tombstones           skip;
+            WriteAheadLog        w;
+            int    n, nRows;
+            long   lsn;
+            int [] cols = match (key);
+            KeyType.ProbeKey probe = new KeyType.ProbeKey (cols.length);
+            byte [] inIndex;
+            long    stamp = 0;
+            changing.writeLock ().lock ();
+            try {
+                synchronized (tuples) {
+                    s     = store;
+                    n     = s.size ();
+                    skip  = tomb.copy ();
+                    nRows = n - skip.count ();
+                } // synchronized
+                w   = wal;
+                lsn = (w == null) ? 0 : w.lastLsn ();
+                if (w == null) new File (DIR + name + WriteAheadLog.EXT).delete ();   // a stale log of an earlier table
+                inIndex = new byte [(nRows + 7) / 8];
+                if (withIndex && index instanceof DiskLinHashMap) stamp = ((DiskLinHashMap) index).checkpoint ();
+                if (withIndex) {
+                    for (int i = 0, r = 0; i < n; i++) {
+                        if (skip.isDead (i)) continue;
+                        Comparable [] tup = s.get (i);
+                        if (Arrays.equals (indexGet (tup, cols, probe), tup)) inIndex [r >>> 3] |= 1 << (r & 7);
+                        r++;
+                    } // for
+                } // if
+            } finally {
+                changing.writeLock ().unlock ();
+            } // try
+
+            File f   = new File (DIR + name + EXT);
+            File tmp = new File (DIR + name + EXT + ".tmp");
+            if (f.getParentFile () != null) f.getParentFile ().mkdirs ();
+            try (FileChannel ch = FileChannel.open (tmp.toPath (), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocate (1 << 16);
+                buf.putInt (MAGIC).putInt (0);
+                putString (buf, name);
+                buf.putInt (attribute.length);
+                for (int j = 0; j < attribute.length; j++) {
+                    putString (buf, attribute [j]);
+                    putString (buf, domain [j].getName ());
+                } // for
+                buf.putInt (key.length);
+                for (String k : key) putString (buf, k);
+                buf.putLong (nRows);
+                buf.putLong (lsn);
+                buf.putInt (4, buf.position () - 8);
+                writeFully (ch, buf.flip ());
+
+                Comparable [][] rows = new Comparable [CHUNK_ROWS][];
+                int k = 0, r = 0;
+                for (int i = 0; i < n; i++) {
+                    if (skip.isDead (i)) continue;
+                    rows [k++] = s.get (i);
+                    r++;
+                    if (k == CHUNK_ROWS || r == nRows) {
+                        buf = writeChunk (ch, buf, rows, k);
+                        k = 0;
+                    } // if
+                } // for
+
+                buf.clear ().putInt (withIndex ? 2 : 0);
+                if (withIndex) {
+                    buf.putLong (stamp).putInt (inIndex.length);
+                    writeFully (ch, buf.flip ());
+                    writeFully (ch, ByteBuffer.wrap (inIndex));
+                    buf.clear ().putInt (0).putInt (secIndex.size ());
+                    for (String a : secIndex.keySet ()) putString (buf, a);
+                    buf.putInt (0, buf.position () - 4);
+                } // if
+                writeFully (ch, buf.flip ());
+                ch.force (true);
+            } // try
+            Files.move (tmp.toPath (), f.toPath (), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (w != null) w.truncate (lsn);
         } catch (IOException ex) {
             out.println ("save: IO Exception");
             ex.printStackTrace ();
+        } finally {
+            compacting.unlock ();
+            checkpointing.unlock ();
         } // try
     } // save
 
+    /************************************************************************************
+     * Pack a chunk of n tuples by columns and write it, growing the buffer if the
+     * chunk does not fit.
+     *
+     * @param ch    the channel to write to
+     * @param buf   the buffer to pack into
+     * @param rows  the tuples
+     * @param n     the number of tuples
+     * @return  the buffer (possibly a larger one)
+     */
+    private ByteBuffer writeChunk (FileChannel ch, ByteBuffer buf, Comparable [][] rows, int n)
+        throws IOException
+    {
+        for ( ; ; ) {
+            try {
+                buf.clear ().position (8);
+                codec ().packChunk (rows, n, buf, true);
+                break;
+            } catch (BufferOverflowException ex) {
+                buf = ByteBuffer.allocate (2 * buf.capacity ());
+            } // try
+        } // for
+        buf.putInt (0, n).putInt (4, buf.position () - 8);
+        writeFully (ch, buf.flip ());
+        return buf;
+    } // writeChunk
+
+    /************************************************************************************
+     * Write the remaining bytes of the buffer to the channel.
+     */
+    private static void writeFully (FileChannel ch, ByteBuffer buf) throws IOException
+    {
+        while (buf.hasRemaining ()) ch.write (buf);
+    } // writeFully
+
+    /************************************************************************************
+     * Put a string into the buffer as its 2-byte length and UTF-8 bytes.
+     */
+    private static void putString (ByteBuffer buf, String s)
+    {
+        byte [] b = s.getBytes (StandardCharsets.UTF_8);
+        buf.putShort ((short) b.length).put (b);
+    } // putString
+
+    /************************************************************************************
+     * Get a string written by putString from the buffer.
+     */
+    private static String getString (ByteBuffer buf)
+    {
+        byte [] b = new byte [buf.getShort () & 0xffff];
+        buf.get (b);
+        return new String (b, StandardCharsets.UTF_8);
+    } // getString
+
+    /************************************************************************************
+     * This inner class reads a saved table in pieces, either from a memory-mapped
+     * file (slices of the mapping, no copying) or by reading each piece into a
+     * reusable buffer.
+     */
+    private static final class Input
+    {
+        private final FileChannel      ch;
+        private final MappedByteBuffer map;
+        private ByteBuffer             buf = ByteBuffer.allocate (1 << 16);
+        private long                   pos = 0;
+
+        Input (FileChannel _ch, boolean mapped) throws IOException
+        {
+            ch  = _ch;
+            map = mapped ? ch.map (FileChannel.MapMode.READ_ONLY, 0, ch.size ()) : null;
+        } // constructor
+
+        /** Return the next len bytes of the file (valid until the next call).
+         */
+        ByteBuffer next (int len) throws IOException
+        {
+            if (map != null) {
+                ByteBuffer b = map.slice ((int) pos, len);
+                pos += len;
+                return b;
+            } // if
+            if (buf.capacity () < len) buf = ByteBuffer.allocate (Math.max (len, 2 * buf.capacity ()));
+            buf.clear ().limit (len);
+            while (buf.hasRemaining ()) {
+                if (ch.read (buf, pos + buf.position ()) < 0) throw new EOFException ("Table.load: truncated file");
+            } // while
+            pos += len;
+            return buf.flip ();
+        } // next
+    } // Input inner class
+
+    /************************************************************************************
+     * This inner class is the list of live tuples, a view of the store that skips the
+     * dead ones, testing their bits in the tombstones.  Without tombstones the view
+     * passes straight through to the store (and its read-ahead scans).  With them, an
+     * iterator works on the store and the tombstones as they were when it started
+     * (later deletes may or may not be seen), and get finds the position of the i-th
+     * live tuple from the tombstones' counts.
+     */
+    private final class Rows
+            extends AbstractList <Comparable []>
+            implements RandomAccess, Serializable
+    {
+        /** All the column positions.
+         */
+        private transient int [] all;
+
+        public int size ()
+        {
+            return store.size () - nDead;
+        } // size
+
+        public Comparable [] get (int i)
+        {
+            if (nDead == 0) return store.get (i);
+            List <Comparable []> s;
+            int p;
+            synchronized (this) {
+                s = store;
+                p = tomb.select (i);
+            } // synchronized
+            return s.get (p);
+        } // get
+
+        public boolean add (Comparable [] tup)
+        {
+            append (tup);
+            return true;
+        } // add
+
+        /********************************************************************************
+         * Add a tuple to the store, returning the copy stored (see encode).
+         */
+        Comparable [] append (Comparable [] tup)
+        {
+            tup = encode (tup);
+            store.add (tup);
+            if (zones != null) zones.add (tup);
+            modCount++;
+            return tup;
+        } // append
+
+        public Iterator <Comparable []> iterator ()
+        {
+            return (nDead == 0) ? store.iterator () : new Live ();
+        } // iterator
+
+        public Spliterator <Comparable []> spliterator ()
+        {
+            return (nDead == 0) ? store.spliterator () : new Live ();
+        } // spliterator
+
+        /********************************************************************************
+         * Return all the column positions.
+         */
+        int [] all ()
+        {
+            if (all == null) all = IntStream.range (0, attribute.length).toArray ();
+            return all;
+        } // all
+
+
+        /********************************************************************************
+         * An iterator (and spliterator, for streams) over the live tuples of a
+         * snapshot of the store.
+         */
+        private final class Live
+                implements Iterator <Comparable []>, Spliterator <Comparable []>
+        {
+            private final List <Comparable []>     s;
+            private final Iterator <Comparable []> it;
+            private final Tombstones               d;
+            private final int                      n;               // store tuples to read
+            private int                            i = 0;           // position of the next one
+            private Comparable []                  next;
+
+            Live ()
+            {
+                synchronized (Rows.this) {
+                    s  = store;
+                    it = s.iterator ();
+                    n  = s.size ();
+                    d  = tomb;
+                } // synchronized
+            } // constructor
+
+            public boolean hasNext ()
+            {
+                while (next == null && i < n) {
+                    Comparable [] t = it.next ();
+                    if (! d.isDead (i++)) next = t;
+                } // while
+                return next != null;
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (! hasNext ()) throw new NoSuchElementException ();
+                Comparable [] t = next;
+                next = null;
+                return t;
+            } // next
+
+            public void forEachRemaining (Consumer <? super Comparable []> action)
+            {
+                if (next != null) action.accept (next ());
+                if (s instanceof ArrayList) {                       // no iterator to keep in step
+                    for ( ; i < n; i++) if (! d.isDead (i)) action.accept (s.get (i));
+                    return;
+                } // if
+                while (i < n) {
+                    Comparable [] t = it.next ();
+                    if (! d.isDead (i++)) action.accept (t);
+                } // while
+            } // forEachRemaining
+
+            public boolean tryAdvance (Consumer <? super Comparable []> action)
+            {
+                if (! hasNext ()) return false;
+                action.accept (next ());
+                return true;
+            } // tryAdvance
+
+            public Spliterator <Comparable []> trySplit ()
+            {
+                return null;
+            } // trySplit
+
+            public long estimateSize ()
+            {
+                return n - i + ((next == null) ? 0 : 1);
+            } // estimateSize
+
+            public int characteristics ()
+            {
+                return Spliterator.ORDERED | Spliterator.NONNULL;
+            } // characteristics
+        } // Live inner class
+    } // Rows inner class
+
     //----------------------------------------------------------------------------------
     // Private Methods
     //----------------------------------------------------------------------------------
@@ -959,9 +2400,44 @@ domain, this.key, rows);
         return tup;
     } // extract
 
+    /************************************************************************************
+     * Return the codec for this table's schema, compiling it on first use.
+     *
+     * @return  the tuple codec
+     */
+    public TupleCodec codec ()
+    {
+        if (codec == null) codec = new TupleCodec (domain);
+        return codec;
+    } // codec
+
+    /************************************************************************************
+     * Pack a tuple into a fixed-length record (see TupleCodec).
+     *
+     * #usage byte [] record = movie.pack (tup)
+     *
+     * @param tup  the tuple to pack
+     * @return  the packed record
+     */
+    public byte [] pack (Comparable [] tup)
+    {
+        return codec ().pack (tup);
+    } // pack
+
+    /************************************************************************************
+     * Unpack a fixed-length record into a tuple.
+     *
+     * @param record  the packed record
+     * @return  the unpacked tuple
+     */
+    public Comparable [] unpack (byte [] record)
+    {
+        return codec ().unpack (record);
+    } // unpack
+
     /************************************************************************************
      * Check the size of the tuple (number of elements in list) as well as the type of
-     * each value to ensure it is from the right domain.
+     * each value to ensure it is from the right domain (a null is from no domain).
      *
      * @param t  the tuple as a list of attribute values
      * @return  whether the tuple has the right size and values that comply
@@ -973,7 +2449,7 @@ domain, this.key, rows);
         if(this.attribute.length != t.length) return false;
 
         for(int i = 0; i < this.domain.length; i++) {
-            if(this.domain[i] != t[i].getClass()) return false;
+            if(t[i] == null || this.domain[i] != t[i].getClass()) return false;
         }
 
         return true;
@@ -1092,4 +2568,4 @@ domain, this.key, rows);
 
     	}
     }
-} // Table class
\ No newline at end of file
+} // Table class
\ No newline at end of file
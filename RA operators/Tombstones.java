@@ -0,0 +1,137 @@
+/*****************************************************************************************
+ * @file  Tombstones.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The Tombstones class marks the deleted rows of a table's store by position, one bit
+ * per row, so a scan skips a dead row by testing one bit.  The dead rows are also
+ * counted per group of GROUP_WORDS words, so the position of the i-th live row is found
+ * by stepping over whole groups and then counting the bits of a single group, rather
+ * than through a table of live positions that every insert would invalidate.  A
+ * position past the last word marked is live.
+ */
+public class Tombstones
+       implements Serializable
+{
+    /** The number of 64-bit words per counted group (4096 rows).
+     */
+    private static final int GROUP_WORDS = 64;
+
+    /** The number of rows per counted group
+     */
+    private static final int GROUP_ROWS = 64 * GROUP_WORDS;
+
+    /** The bits, one per row (set for a dead row)
+     */
+    private long [] bits = new long [GROUP_WORDS];
+
+    /** The number of dead rows in each group
+     */
+    private int [] groupDead = new int [1];
+
+    /** The number of dead rows
+     */
+    private int count = 0;
+
+    /*************************************************************************************
+     * Return whether the row at the given position is dead.
+     * @param pos  the position of the row in the store
+     * @return  whether it is marked dead
+     */
+    public boolean isDead (int pos)
+    {
+        long [] b = bits;
+        int     w = pos >>> 6;
+        return w < b.length && (b [w] & 1L << pos) != 0;
+    } // isDead
+
+    /*************************************************************************************
+     * Mark the row at the given position dead.
+     * @param pos  the position of the row in the store
+     * @return  false if it was already dead
+     */
+    public boolean kill (int pos)
+    {
+        int w = pos >>> 6;
+        if (w >= bits.length) {
+            int len = Math.max (2 * bits.length, (w / GROUP_WORDS + 1) * GROUP_WORDS);
+            bits      = Arrays.copyOf (bits, len);
+            groupDead = Arrays.copyOf (groupDead, len / GROUP_WORDS);
+        } // if
+        long m = 1L << pos;
+        if ((bits [w] & m) != 0) return false;
+        bits [w] |= m;
+        groupDead [w / GROUP_WORDS]++;
+        count++;
+        return true;
+    } // kill
+
+    /*************************************************************************************
+     * Return the number of dead rows.
+     * @return  the number of rows marked dead
+     */
+    public int count ()
+    {
+        return count;
+    } // count
+
+    /*************************************************************************************
+     * Return the position in the store of the i-th live row.
+     * @param i  the rank of the live row (from 0)
+     * @return  its position
+     */
+    public int select (int i)
+    {
+        int g = 0;
+        while (g < groupDead.length && i >= GROUP_ROWS - groupDead [g]) i -= GROUP_ROWS - groupDead [g++];
+        if (g == groupDead.length) return g * GROUP_ROWS + i;          // past the marked words
+        for (int w = g * GROUP_WORDS; ; w++) {
+            int live = 64 - Long.bitCount (bits [w]);
+            if (i < live) {
+                long z = ~bits [w];
+                for ( ; i > 0; i--) z &= z - 1;                         // drop the lower live rows
+                return (w << 6) + Long.numberOfTrailingZeros (z);
+            } // if
+            i -= live;
+        } // for
+    } // select
+
+    /*************************************************************************************
+     * Return a copy of the marks as they are now, for a checkpoint or a compaction that
+     * must not see the rows deleted meanwhile.
+     * @return  the copy
+     */
+    public Tombstones copy ()
+    {
+        Tombstones t = new Tombstones ();
+        t.bits      = bits.clone ();
+        t.groupDead = groupDead.clone ();
+        t.count     = count;
+        return t;
+    } // copy
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only: kill every third row and
+     * check that select finds every live row.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        int nRows = 100000, wrong = 0;
+        Tombstones t = new Tombstones ();
+        for (int p = 0; p < nRows; p += 3) t.kill (p);
+        for (int i = 0, p = 0; p < nRows + 100; p++) {
+            if (t.isDead (p)) continue;
+            if (t.select (i++) != p) wrong++;
+        } // for
+        out.println ("dead = " + t.count () + ", wrong positions = " + wrong);
+    } // main
+
+} // Tombstones class
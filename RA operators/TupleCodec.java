@@ -0,0 +1,340 @@
+/*****************************************************************************************
+ * @file  TupleCodec.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The TupleCodec class packs tuples into fixed-length records and unpacks them, for a
+ * given schema (list of domains).  The codec is compiled once per schema: each column
+ * gets a type code, a width and an offset, so packing and unpacking are a loop over
+ * precomputed positions without any reflection.  Numbers are stored big-endian at their
+ * natural width; a String is stored as a 2-byte length followed by its UTF-8 bytes,
+ * padded to a fixed width.  Because every column is at a known offset, single columns
+ * can be decoded straight from a record or buffer without unpacking the whole tuple.
+ * <p>
+ * The codec also packs a chunk of tuples column by column (used by Table.save): all the
+ * values of the first column, then of the second, and so on.  In a chunk a String is
+ * stored as its 2-byte length and UTF-8 bytes without padding, so it may be up to 65535
+ * bytes long.  The Integer columns of a chunk may be compressed (see IntColumn.pack).
+ */
+public class TupleCodec
+       implements Serializable
+{
+    /** The default number of bytes reserved for a String (including its 2-byte length)
+     */
+    public static final int STRING_WIDTH = 64;
+
+    /** The type codes of the supported domains
+     */
+    private static final int INT = 0, LONG = 1, SHORT = 2, BYTE = 3, DOUBLE = 4, FLOAT = 5, CHAR = 6, STRING = 7;
+
+    /** The type code of each column
+     */
+    private final int [] kind;
+
+    /** The width in bytes of each column
+     */
+    private final int [] width;
+
+    /** The offset in bytes of each column within a record
+     */
+    private final int [] offset;
+
+    /** The number of bytes in a record
+     */
+    private final int recordSize;
+
+    /*************************************************************************************
+     * Compile a codec for the given domains with the default String width.
+     * @param domain  the domains (classes) of the attributes
+     */
+    public TupleCodec (Class [] domain)
+    {
+        this (domain, STRING_WIDTH);
+    } // constructor
+
+    /*************************************************************************************
+     * Compile a codec for the given domains.
+     * @param domain       the domains (classes) of the attributes
+     * @param stringWidth  the number of bytes reserved for each String
+     */
+    public TupleCodec (Class [] domain, int stringWidth)
+    {
+        kind   = new int [domain.length];
+        width  = new int [domain.length];
+        offset = new int [domain.length];
+        int pos = 0;
+        for (int j = 0; j < domain.length; j++) {
+            Class c = domain [j];
+            if      (c == Integer.class)   { kind [j] = INT;    width [j] = 4; }
+            else if (c == Long.class)      { kind [j] = LONG;   width [j] = 8; }
+            else if (c == Short.class)     { kind [j] = SHORT;  width [j] = 2; }
+            else if (c == Byte.class)      { kind [j] = BYTE;   width [j] = 1; }
+            else if (c == Double.class)    { kind [j] = DOUBLE; width [j] = 8; }
+            else if (c == Float.class)     { kind [j] = FLOAT;  width [j] = 4; }
+            else if (c == Character.class) { kind [j] = CHAR;   width [j] = 2; }
+            else if (c == String.class)    { kind [j] = STRING; width [j] = stringWidth; }
+            else throw new IllegalArgumentException ("TupleCodec: unsupported domain " + c);
+            offset [j] = pos;
+            pos       += width [j];
+        } // for
+        recordSize = pos;
+    } // constructor
+
+    /*************************************************************************************
+     * Return the number of bytes in a packed record.
+     * @return  the record size
+     */
+    public int recordSize ()
+    {
+        return recordSize;
+    } // recordSize
+
+    /*************************************************************************************
+     * Pack a tuple into a new fixed-length record.
+     * @param t  the tuple to pack
+     * @return  the record
+     */
+    public byte [] pack (Comparable [] t)
+    {
+        byte [] record = new byte [recordSize];
+        pack (t, ByteBuffer.wrap (record), 0);
+        return record;
+    } // pack
+
+    /*************************************************************************************
+     * Pack a tuple into a buffer at the given position (e.g., into a page).
+     * @param t     the tuple to pack
+     * @param buf   the buffer to write to
+     * @param base  the position of the record within the buffer
+     */
+    public void pack (Comparable [] t, ByteBuffer buf, int base)
+    {
+        for (int j = 0; j < kind.length; j++) {
+            int p = base + offset [j];
+            switch (kind [j]) {
+            case INT:    buf.putInt (p, (Integer) t [j]);     break;
+            case LONG:   buf.putLong (p, (Long) t [j]);       break;
+            case SHORT:  buf.putShort (p, (Short) t [j]);     break;
+            case BYTE:   buf.put (p, (Byte) t [j]);           break;
+            case DOUBLE: buf.putDouble (p, (Double) t [j]);   break;
+            case FLOAT:  buf.putFloat (p, (Float) t [j]);     break;
+            case CHAR:   buf.putChar (p, (Character) t [j]);  break;
+            default:
+                byte [] s = ((String) t [j]).getBytes (StandardCharsets.UTF_8);
+                if (s.length > width [j] - 2) {
+                    throw new IllegalArgumentException ("TupleCodec: string longer than " + (width [j] - 2)
+                                                        + " bytes: " + t [j]);
+                } // if
+                buf.putShort (p, (short) s.length);
+                for (int i = 0; i < s.length; i++) buf.put (p + 2 + i, s [i]);
+                for (int i = s.length + 2; i < width [j]; i++) buf.put (p + i, (byte) 0);
+            } // switch
+        } // for
+    } // pack
+
+    /*************************************************************************************
+     * Unpack a record into a tuple.
+     * @param record  the record to unpack
+     * @return  the tuple
+     */
+    public Comparable [] unpack (byte [] record)
+    {
+        return unpack (ByteBuffer.wrap (record), 0);
+    } // unpack
+
+    /*************************************************************************************
+     * Unpack the record at the given position of a buffer into a tuple.
+     * @param buf   the buffer holding the record
+     * @param base  the position of the record within the buffer
+     * @return  the tuple
+     */
+    public Comparable [] unpack (ByteBuffer buf, int base)
+    {
+        Comparable [] t = new Comparable [kind.length];
+        for (int j = 0; j < kind.length; j++) t [j] = get (buf, base, j);
+        return t;
+    } // unpack
+
+    /*************************************************************************************
+     * Unpack only the given columns of the record at the given position, e.g., for a
+     * projection.  The result holds the columns in the order given.
+     * @param buf   the buffer holding the record
+     * @param base  the position of the record within the buffer
+     * @param cols  the columns to decode
+     * @return  the values of the requested columns
+     */
+    public Comparable [] unpack (ByteBuffer buf, int base, int [] cols)
+    {
+        Comparable [] t = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) t [j] = get (buf, base, cols [j]);
+        return t;
+    } // unpack
+
+    /*************************************************************************************
+     * Decode a single column of the record at the given position of a buffer.
+     * @param buf   the buffer holding the record
+     * @param base  the position of the record within the buffer
+     * @param col   the column to decode
+     * @return  the value of the column
+     */
+    public Comparable get (ByteBuffer buf, int base, int col)
+    {
+        int p = base + offset [col];
+        switch (kind [col]) {
+        case INT:    return buf.getInt (p);
+        case LONG:   return buf.getLong (p);
+        case SHORT:  return buf.getShort (p);
+        case BYTE:   return buf.get (p);
+        case DOUBLE: return buf.getDouble (p);
+        case FLOAT:  return buf.getFloat (p);
+        case CHAR:   return buf.getChar (p);
+        default:
+            byte [] s = new byte [buf.getShort (p)];
+            for (int i = 0; i < s.length; i++) s [i] = buf.get (p + 2 + i);
+            return new String (s, StandardCharsets.UTF_8);
+        } // switch
+    } // get
+
+    /*************************************************************************************
+     * Decode an int column without boxing (the column must be an Integer).
+     * @param buf   the buffer holding the record
+     * @param base  the position of the record within the buffer
+     * @param col   the column to decode
+     * @return  the value of the column
+     */
+    public int getInt (ByteBuffer buf, int base, int col)
+    {
+        return buf.getInt (base + offset [col]);
+    } // getInt
+
+    /*************************************************************************************
+     * Pack the first n tuples of rows into the buffer (at its position) column by
+     * column.  The buffer's position is advanced past the chunk.
+     * @param rows  the tuples to pack
+     * @param n     the number of tuples to pack
+     * @param buf   the buffer to write to
+     * @throws BufferOverflowException if the chunk does not fit in the buffer
+     */
+    public void packChunk (Comparable [][] rows, int n, ByteBuffer buf)
+    {
+        packChunk (rows, n, buf, false);
+    } // packChunk
+
+    /*************************************************************************************
+     * Pack the first n tuples of rows into the buffer (at its position) column by
+     * column, compressing the Integer columns if asked to.  The buffer's position is
+     * advanced past the chunk.
+     * @param rows      the tuples to pack
+     * @param n         the number of tuples to pack
+     * @param buf       the buffer to write to
+     * @param compress  whether to compress the Integer columns
+     * @throws BufferOverflowException if the chunk does not fit in the buffer
+     */
+    public void packChunk (Comparable [][] rows, int n, ByteBuffer buf, boolean compress)
+    {
+        int [] ints = compress ? new int [n] : null;
+        for (int j = 0; j < kind.length; j++) {
+            if (compress && kind [j] == INT) {
+                for (int i = 0; i < n; i++) ints [i] = (Integer) rows [i][j];
+                IntColumn.pack (ints, n, buf);
+                continue;
+            } // if
+            switch (kind [j]) {
+            case INT:    for (int i = 0; i < n; i++) buf.putInt ((Integer) rows [i][j]);     break;
+            case LONG:   for (int i = 0; i < n; i++) buf.putLong ((Long) rows [i][j]);       break;
+            case SHORT:  for (int i = 0; i < n; i++) buf.putShort ((Short) rows [i][j]);     break;
+            case BYTE:   for (int i = 0; i < n; i++) buf.put ((Byte) rows [i][j]);           break;
+            case DOUBLE: for (int i = 0; i < n; i++) buf.putDouble ((Double) rows [i][j]);   break;
+            case FLOAT:  for (int i = 0; i < n; i++) buf.putFloat ((Float) rows [i][j]);     break;
+            case CHAR:   for (int i = 0; i < n; i++) buf.putChar ((Character) rows [i][j]);  break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    byte [] s = ((String) rows [i][j]).getBytes (StandardCharsets.UTF_8);
+                    if (s.length > 0xffff) throw new IllegalArgumentException ("TupleCodec: string too long: " + s.length);
+                    buf.putShort ((short) s.length).put (s);
+                } // for
+            } // switch
+        } // for
+    } // packChunk
+
+    /*************************************************************************************
+     * Unpack a chunk of n tuples packed by packChunk, reading from the buffer's
+     * position.  The buffer's position is advanced past the chunk.
+     * @param buf   the buffer holding the chunk
+     * @param n     the number of tuples in the chunk
+     * @return  the tuples
+     */
+    public Comparable [][] unpackChunk (ByteBuffer buf, int n)
+    {
+        return unpackChunk (buf, n, false);
+    } // unpackChunk
+
+    /*************************************************************************************
+     * Unpack a chunk of n tuples packed by packChunk, reading from the buffer's
+     * position.  The buffer's position is advanced past the chunk.
+     * @param buf       the buffer holding the chunk
+     * @param n         the number of tuples in the chunk
+     * @param compress  whether the Integer columns were compressed
+     * @return  the tuples
+     */
+    public Comparable [][] unpackChunk (ByteBuffer buf, int n, boolean compress)
+    {
+        Comparable [][] rows = new Comparable [n][kind.length];
+        for (int j = 0; j < kind.length; j++) {
+            if (compress && kind [j] == INT) {
+                int [] ints = IntColumn.unpack (buf, n);
+                for (int i = 0; i < n; i++) rows [i][j] = ints [i];
+                continue;
+            } // if
+            switch (kind [j]) {
+            case INT:    for (int i = 0; i < n; i++) rows [i][j] = buf.getInt ();     break;
+            case LONG:   for (int i = 0; i < n; i++) rows [i][j] = buf.getLong ();    break;
+            case SHORT:  for (int i = 0; i < n; i++) rows [i][j] = buf.getShort ();   break;
+            case BYTE:   for (int i = 0; i < n; i++) rows [i][j] = buf.get ();        break;
+            case DOUBLE: for (int i = 0; i < n; i++) rows [i][j] = buf.getDouble ();  break;
+            case FLOAT:  for (int i = 0; i < n; i++) rows [i][j] = buf.getFloat ();   break;
+            case CHAR:   for (int i = 0; i < n; i++) rows [i][j] = buf.getChar ();    break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    byte [] s = new byte [buf.getShort () & 0xffff];
+                    buf.get (s);
+                    rows [i][j] = new String (s, StandardCharsets.UTF_8);
+                } // for
+            } // switch
+        } // for
+        return rows;
+    } // unpackChunk
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        TupleCodec codec = new TupleCodec (new Class [] { String.class, Integer.class, Integer.class, String.class,
+                                                          String.class, Integer.class, Double.class });
+        Comparable [] t = { "Star_Wars", 1977, 124, "sciFi", "Fox", 12345, 1.5 };
+        byte [] record  = codec.pack (t);
+        out.println ("record size = " + codec.recordSize () + ", round trip = "
+                     + Arrays.equals (t, codec.unpack (record)));
+        out.println ("project (title, year) = "
+                     + Arrays.toString (codec.unpack (ByteBuffer.wrap (record), 0, new int [] { 0, 1 })));
+        ByteBuffer chunk = ByteBuffer.allocate (1024);
+        codec.packChunk (new Comparable [][] { t, t }, 2, chunk);
+        Comparable [][] rows = codec.unpackChunk (chunk.flip (), 2);
+        out.println ("chunk of 2: " + chunk.limit () + " bytes, round trip = " + Arrays.equals (t, rows [1]));
+        codec.packChunk (new Comparable [][] { t, t }, 2, chunk.clear (), true);
+        rows = codec.unpackChunk (chunk.flip (), 2, true);
+        out.println ("compressed chunk of 2: " + chunk.limit () + " bytes, round trip = " + Arrays.equals (t, rows [1]));
+    } // main
+
+} // TupleCodec class
@@ -0,0 +1,536 @@
+/*****************************************************************************************
+ * @file  WriteAheadLog.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The WriteAheadLog class provides an append-only log of the changes made to a
+ * table, so inserts, deletes and updates are durable without rewriting the table.
+ * The log starts with a header holding the table's schema, followed by records of
+ * the form
+ *
+ *   length, CRC32, log sequence number (LSN), operation, rows packed as a codec chunk
+ *
+ * An INSERT or DELETE record holds the tuple inserted or deleted; an UPDATE record
+ * holds the old and the new tuple, so an update is replayed entirely or not at all.
+ *
+ * Records are appended to an in-memory buffer; sync (lsn) makes them durable using
+ * group commit: one waiting writer becomes the leader and writes and fsyncs everything
+ * appended so far, while the writers arriving in the meantime wait and are covered by
+ * the leader's (or the next leader's) single fsync.  Replay stops at the first torn or
+ * corrupt record and cuts the log there.  A checkpoint (Table.save) saves the table,
+ * records the last LSN saved, and drops the records up to that LSN from the log.
+ */
+public class WriteAheadLog
+       implements AutoCloseable
+{
+    /** Filename extension for log files
+     */
+    public static final String EXT = ".wal";
+
+    /** Magic number identifying a log file
+     */
+    private static final int MAGIC = 0x57414c32;                       // "WAL2"
+
+    /** The number of bytes in a record's length, CRC, LSN and operation fields
+     */
+    private static final int RECORD_HEADER = 17;
+
+    /** The operations logged: the number of rows in a record is given by its operation
+     */
+    public static final byte INSERT = 0, DELETE = 1, UPDATE = 2;
+
+    /*************************************************************************************
+     * The action redoing a logged operation on a table during replay.
+     */
+    public interface Redo
+    {
+        /** Redo the operation op with its rows (the tuple, or the old and new tuple).
+         */
+        void apply (byte op, Comparable [][] rows);
+    } // Redo interface
+
+    /*************************************************************************************
+     * The schema of the table a log belongs to, as stored in the log's header.
+     */
+    public static final class Header
+    {
+        public final String    name;
+        public final String [] attribute;
+        public final Class []  domain;
+        public final String [] key;
+
+        public Header (String _name, String [] _attribute, Class [] _domain, String [] _key)
+        {
+            name      = _name;
+            attribute = _attribute;
+            domain    = _domain;
+            key       = _key;
+        } // constructor
+    } // Header class
+
+    /** The channel of the log file
+     */
+    private FileChannel ch;
+
+    /** The log file
+     */
+    private final File file;
+
+    /** The codec packing the tuples
+     */
+    private final TupleCodec codec;
+
+    /** The number of bytes in the header (the log's size right after a checkpoint)
+     */
+    private final long headerSize;
+
+    /** The buffer collecting appended records, and the buffer being written by a leader
+     */
+    private ByteBuffer pending = ByteBuffer.allocate (1 << 16), spare = ByteBuffer.allocate (1 << 16);
+
+    /** The LSN of the last record appended and of the last record made durable
+     */
+    private long appended, durable;
+
+    /** Whether a leader is writing and syncing
+     */
+    private boolean flushing = false;
+
+    /** Counters for the number of records synced and the number of fsyncs
+     */
+    private long nSynced = 0, nForces = 0;
+
+    /** The checksum used for records
+     */
+    private final CRC32 crc = new CRC32 ();
+
+    /*************************************************************************************
+     * Construct a log over the open channel, appending after its end.
+     * @param _file        the log file
+     * @param _ch          the channel of the log file
+     * @param _codec       the codec packing the tuples
+     * @param _headerSize  the number of bytes in the header
+     * @param lastLsn      the LSN of the last record in the log (or saved before it)
+     */
+    private WriteAheadLog (File _file, FileChannel _ch, TupleCodec _codec, long _headerSize, long lastLsn)
+    {
+        file       = _file;
+        ch         = _ch;
+        codec      = _codec;
+        headerSize = _headerSize;
+        appended   = durable = lastLsn;
+    } // constructor
+
+    /*************************************************************************************
+     * Create a new (empty) log for the table with the given schema, replacing any
+     * existing log at the path.
+     * @param path     the path of the log file (without extension)
+     * @param h        the schema of the table
+     * @param codec    the codec packing the tuples
+     * @param lastLsn  the LSN after which the new log continues
+     * @return  the new log
+     */
+    public static WriteAheadLog create (String path, Header h, TupleCodec codec, long lastLsn)
+    {
+        File f = new File (path + EXT);
+        if (f.getParentFile () != null) f.getParentFile ().mkdirs ();
+        try {
+            FileChannel ch = FileChannel.open (f.toPath (), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer b = ByteBuffer.allocate (1 << 16);
+            b.putInt (MAGIC).putInt (0);
+            putString (b, h.name);
+            b.putInt (h.attribute.length);
+            for (int j = 0; j < h.attribute.length; j++) {
+                putString (b, h.attribute [j]);
+                putString (b, h.domain [j].getName ());
+            } // for
+            b.putInt (h.key.length);
+            for (String k : h.key) putString (b, k);
+            b.putInt (4, b.position () - 8).flip ();
+            while (b.hasRemaining ()) ch.write (b);
+            ch.force (true);
+            return new WriteAheadLog (f, ch, codec, ch.size (), lastLsn);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.create: " + f, ex);
+        } // try
+    } // create
+
+    /*************************************************************************************
+     * Open an existing log (after it was replayed) to append to it.
+     * @param path     the path of the log file (without extension)
+     * @param codec    the codec packing the tuples
+     * @param lastLsn  the LSN of the last record in the log (or saved before it)
+     * @return  the log
+     */
+    public static WriteAheadLog open (String path, TupleCodec codec, long lastLsn)
+    {
+        try {
+            File        f  = new File (path + EXT);
+            FileChannel ch = FileChannel.open (f.toPath (), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer b = read (ch, 0, 8);
+            if (b.getInt () != MAGIC) throw new IOException ("not a log file: " + path + EXT);
+            WriteAheadLog log = new WriteAheadLog (f, ch, codec, 8 + b.getInt (), lastLsn);
+            ch.position (ch.size ());
+            return log;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.open: " + path + EXT, ex);
+        } // try
+    } // open
+
+    /*************************************************************************************
+     * Return whether a log exists at the path.
+     * @param path  the path of the log file (without extension)
+     * @return  whether the log file exists
+     */
+    public static boolean exists (String path)
+    {
+        return new File (path + EXT).length () > 8;
+    } // exists
+
+    /*************************************************************************************
+     * Read the schema from the header of the log at the path.
+     * @param path  the path of the log file (without extension)
+     * @return  the schema of the table the log belongs to
+     */
+    public static Header header (String path) throws IOException, ClassNotFoundException
+    {
+        try (FileChannel ch = FileChannel.open (new File (path + EXT).toPath (), StandardOpenOption.READ)) {
+            ByteBuffer b = read (ch, 0, 8);
+            if (b.getInt () != MAGIC) throw new IOException ("not a log file: " + path + EXT);
+            b = read (ch, 8, b.getInt ());
+            String    name = getString (b);
+            String [] attr = new String [b.getInt ()];
+            Class []  dom  = new Class [attr.length];
+            for (int j = 0; j < attr.length; j++) {
+                attr [j] = getString (b);
+                dom [j]  = Class.forName (getString (b));
+            } // for
+            String [] key = new String [b.getInt ()];
+            for (int j = 0; j < key.length; j++) key [j] = getString (b);
+            return new Header (name, attr, dom, key);
+        } // try
+    } // header
+
+    /*************************************************************************************
+     * Replay the log at the path: pass each operation whose LSN is greater than after
+     * to redo, in log order.  The log is cut at the first torn or corrupt record.
+     * @param path   the path of the log file (without extension)
+     * @param codec  the codec packing the tuples
+     * @param after  the LSN of the last record already reflected in the table
+     * @param redo   the action redoing an operation on the table
+     * @return  the LSN of the last valid record (at least after)
+     */
+    public static long replay (String path, TupleCodec codec, long after, Redo redo)
+    {
+        long last = after;
+        try (FileChannel ch = FileChannel.open (new File (path + EXT).toPath (), StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            long size = ch.size (), pos = 8 + read (ch, 4, 4).getInt ();
+            CRC32 crc = new CRC32 ();
+            while (pos + RECORD_HEADER <= size) {
+                ByteBuffer h = read (ch, pos, RECORD_HEADER);
+                int len = h.getInt (), sum = h.getInt ();
+                if (len < 9 || pos + 8 + len > size) break;                          // torn record
+                ByteBuffer r = read (ch, pos + 8, len);
+                crc.reset ();
+                crc.update (r.duplicate ());
+                if ((int) crc.getValue () != sum) break;                             // corrupt record
+                long lsn = r.getLong ();
+                byte op  = r.get ();
+                if (lsn > after) redo.apply (op, codec.unpackChunk (r, (op == UPDATE) ? 2 : 1));
+                last = Math.max (last, lsn);
+                pos += 8 + len;
+            } // while
+            if (pos < size) {
+                out.println ("WriteAheadLog.replay: discarding " + (size - pos) + " bytes after a torn record");
+                ch.truncate (pos);
+            } // if
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.replay: " + path + EXT, ex);
+        } // try
+        return last;
+    } // replay
+
+    /*************************************************************************************
+     * Append the operation to the log buffer (it is durable only after sync).
+     * @param op    the operation (INSERT, DELETE or UPDATE)
+     * @param rows  the tuple inserted or deleted, or the old and the new tuple
+     * @return  the LSN of the record
+     */
+    public synchronized long append (byte op, Comparable [] ... rows)
+    {
+        if (rows.length != ((op == UPDATE) ? 2 : 1)) throw new IllegalArgumentException ("WriteAheadLog.append: op " + op);
+        for ( ; ; ) {
+            int start = pending.position ();
+            if (pending.remaining () >= RECORD_HEADER) {
+                try {
+                    pending.position (start + 8).putLong (appended + 1).put (op);
+                    codec.packChunk (rows, rows.length, pending);
+                    int len = pending.position () - start - 8;
+                    crc.reset ();
+                    crc.update (pending.duplicate ().limit (start + 8 + len).position (start + 8));
+                    pending.putInt (start, len).putInt (start + 4, (int) crc.getValue ());
+                    return ++appended;
+                } catch (BufferOverflowException ex) {
+                    pending.position (start);                               // grow the buffer and retry
+                } catch (IllegalArgumentException ex) {
+                    pending.position (start);
+                    throw ex;
+                } // try
+            } // if
+            ByteBuffer b = ByteBuffer.allocate (2 * pending.capacity ());
+            pending.flip ();
+            pending = b.put (pending);
+        } // for
+    } // append
+
+    /*************************************************************************************
+     * Make the records up to the given LSN durable (group commit).  If no flush is
+     * under way, the caller becomes the leader: it takes all the records appended so
+     * far, writes them and forces the file, then wakes the waiting writers.  Writers
+     * whose records were appended after the leader took the batch wait for the next
+     * leader.
+     * @param lsn  the LSN of the caller's last record
+     */
+    public void sync (long lsn)
+    {
+        ByteBuffer batch;
+        long       upto;
+        synchronized (this) {
+            try {
+                while (durable < lsn && flushing) wait ();
+            } catch (InterruptedException ex) {
+                Thread.currentThread ().interrupt ();
+                throw new IllegalStateException ("WriteAheadLog.sync: interrupted");
+            } // try
+            if (durable >= lsn) return;
+            flushing = true;
+            batch    = pending;
+            pending  = spare;
+            upto     = appended;
+        } // synchronized
+        IOException ex = null;
+        try {
+            batch.flip ();
+            while (batch.hasRemaining ()) ch.write (batch);
+            ch.force (false);
+        } catch (IOException e) {
+            ex = e;
+        } // try
+        synchronized (this) {
+            spare    = batch.clear ();
+            flushing = false;
+            if (ex == null) { nSynced += upto - durable; durable = upto; nForces++; }
+            notifyAll ();
+        } // synchronized
+        if (ex != null) throw new UncheckedIOException ("WriteAheadLog.sync", ex);
+    } // sync
+
+    /*************************************************************************************
+     * Append the inserted tuple and wait until it is durable.
+     * @param tup  the tuple to log
+     * @return  the LSN of the record
+     */
+    public long log (Comparable [] tup)
+    {
+        return log (INSERT, tup);
+    } // log
+
+    /*************************************************************************************
+     * Append the operation and wait until it is durable.
+     * @param op    the operation (INSERT, DELETE or UPDATE)
+     * @param rows  the tuple inserted or deleted, or the old and the new tuple
+     * @return  the LSN of the record
+     */
+    public long log (byte op, Comparable [] ... rows)
+    {
+        long lsn = append (op, rows);
+        sync (lsn);
+        return lsn;
+    } // log
+
+    /*************************************************************************************
+     * Return the LSN of the last record appended.
+     * @return  the last LSN
+     */
+    public synchronized long lastLsn ()
+    {
+        return appended;
+    } // lastLsn
+
+    /*************************************************************************************
+     * Return the size of the log file in bytes.
+     * @return  the number of bytes in the log
+     */
+    public synchronized long size ()
+    {
+        try {
+            return ch.size ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.size", ex);
+        } // try
+    } // size
+
+    /*************************************************************************************
+     * Drop the records up to the given LSN after a checkpoint saved them.  The records
+     * appended since the checkpoint took its snapshot are kept: they are copied after
+     * the header into a new file, which then replaces the log atomically, so a crash
+     * leaves either log.  Without such records the log is cut back to its header.
+     * The LSNs continue from there.
+     * @param upto  the LSN of the last record saved by the checkpoint
+     */
+    public synchronized void truncate (long upto)
+    {
+        try {
+            while (flushing) wait ();                                   // a leader is writing to ch
+            long size = ch.size (), pos = headerSize;
+            while (pos + RECORD_HEADER <= size) {
+                ByteBuffer h = read (ch, pos, RECORD_HEADER);
+                if (h.getLong (8) > upto) break;
+                pos += 8 + h.getInt (0);
+            } // while
+            if (pos >= size) {
+                ch.truncate (headerSize);
+                ch.position (headerSize);
+                ch.force (true);
+                return;
+            } // if
+            File tmp = new File (file.getPath () + ".tmp");
+            try (FileChannel t = FileChannel.open (tmp.toPath (), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+                copy (ch, 0, headerSize, t);
+                copy (ch, pos, size - pos, t);
+                t.force (true);
+            } // try
+            Files.move (tmp.toPath (), file.toPath (), StandardCopyOption.ATOMIC_MOVE);
+            ch.close ();
+            ch = FileChannel.open (file.toPath (), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ch.position (ch.size ());
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new IllegalStateException ("WriteAheadLog.truncate: interrupted");
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.truncate", ex);
+        } // try
+    } // truncate
+
+    /*************************************************************************************
+     * Return the average number of records made durable per fsync.
+     * @return  the group commit batch size
+     */
+    public synchronized double groupSize ()
+    {
+        return (nForces == 0) ? 0.0 : nSynced / (double) nForces;
+    } // groupSize
+
+    /*************************************************************************************
+     * Sync the records appended so far and close the log.
+     */
+    public void close ()
+    {
+        sync (lastLsn ());
+        try {
+            ch.close ();
+        } catch (IOException ex) {
+            out.println ("WriteAheadLog.close: unable to close - " + ex);
+        } // try
+    } // close
+
+    /*************************************************************************************
+     * Read len bytes at the given position of the channel.
+     */
+    private static ByteBuffer read (FileChannel ch, long pos, int len) throws IOException
+    {
+        ByteBuffer b = ByteBuffer.allocate (len);
+        while (b.hasRemaining () && ch.read (b, pos + b.position ()) > 0) ;
+        if (b.hasRemaining ()) throw new EOFException ("WriteAheadLog: truncated file");
+        return b.flip ();
+    } // read
+
+    /*************************************************************************************
+     * Copy len bytes at the given position of one channel to the end of another.
+     */
+    private static void copy (FileChannel from, long pos, long len, FileChannel to) throws IOException
+    {
+        for (long k; len > 0; pos += k, len -= k) k = from.transferTo (pos, len, to);
+    } // copy
+
+    /*************************************************************************************
+     * Put a string into the buffer as its 2-byte length and UTF-8 bytes.
+     */
+    private static void putString (ByteBuffer b, String s)
+    {
+        byte [] bytes = s.getBytes (StandardCharsets.UTF_8);
+        b.putShort ((short) bytes.length).put (bytes);
+    } // putString
+
+    /*************************************************************************************
+     * Get a string written by putString from the buffer.
+     */
+    private static String getString (ByteBuffer b)
+    {
+        byte [] bytes = new byte [b.getShort () & 0xffff];
+        b.get (bytes);
+        return new String (bytes, StandardCharsets.UTF_8);
+    } // getString
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only: concurrent writers log tuples,
+     * sharing fsyncs, a checkpoint drops all but the last 5 of their records, then a
+     * delete and an update are logged, the log is replayed and a torn record is cut off.
+     * @param args  the command-line arguments (args [0] gives the number of writers)
+     */
+    public static void main (String [] args) throws Exception
+    {
+        int nThreads = (args.length == 1) ? Integer.valueOf (args [0]) : 8, perThread = 200;
+        String     path  = "store" + File.separator + "WriteAheadLogTest";
+        Class []   dom   = { Integer.class, String.class };
+        TupleCodec codec = new TupleCodec (dom);
+        WriteAheadLog log = create (path, new Header ("test", new String [] { "id", "name" }, dom,
+                                                      new String [] { "id" }), codec, 0);
+        Thread [] writers = new Thread [nThreads];
+        long start = System.nanoTime ();
+        for (int w = 0; w < nThreads; w++) {
+            final int base = w * perThread;
+            writers [w] = new Thread (() -> {
+                for (int i = 0; i < perThread; i++) log.log (new Comparable [] { base + i, "name" + (base + i) });
+            });
+            writers [w].start ();
+        } // for
+        for (Thread t : writers) t.join ();
+        out.printf ("%d writers logged %d records in %.1f ms, %.1f records per fsync%n", nThreads,
+                    log.lastLsn (), (System.nanoTime () - start) / 1e6, log.groupSize ());
+        long n = (long) nThreads * perThread;
+        log.truncate (n - 5);
+        log.log (DELETE, new Comparable [] { 0, "name0" });
+        log.log (UPDATE, new Comparable [] { 1, "name1" }, new Comparable [] { 1, "one" });
+        log.log (INSERT, new Comparable [] { -1, "torn" });
+        log.close ();
+
+        try (FileChannel ch = FileChannel.open (new File (path + EXT).toPath (), StandardOpenOption.WRITE)) {
+            ch.truncate (ch.size () - 3);                                            // tear the last record
+        } // try
+        long [] count = new long [3];
+        long last = replay (path, codec, 0, (op, rows) -> count [op]++);
+        out.println ("replayed " + count [INSERT] + " inserts, " + count [DELETE] + " delete and " + count [UPDATE]
+                     + " update up to LSN " + last + " (expecting 5, 1, 1 up to " + (n + 2) + "), header name = "
+                     + header (path).name);
+        new File (path + EXT).delete ();
+    } // main
+
+} // WriteAheadLog class
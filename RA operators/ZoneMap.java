@@ -0,0 +1,143 @@
+/*****************************************************************************************
+ * @file  ZoneMap.java
+ *
+ * @author   Ankit Vaghela
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The ZoneMap class summarizes a table's store in blocks of consecutive rows: for each
+ * block and column it keeps the smallest and largest value.  The summaries are updated
+ * as rows are appended, so they cost one comparison per column per insert.  A scan for
+ * a range of values of a column skips every block whose [min, max] misses the range
+ * without reading its rows, which pays off when the column is clustered by insertion
+ * order (e.g., ids or years).  For a file-backed store the blocks are the file's pages,
+ * so a skipped block is a page that is never read.  Deleted rows are not removed from
+ * the summaries, which only makes them looser.
+ */
+public class ZoneMap
+       implements Serializable
+{
+    /** The number of rows per block
+     */
+    private final int blockRows;
+
+    /** The smallest and the largest value of each column, by block
+     */
+    private Comparable [][] min = new Comparable [4][], max = new Comparable [4][];
+
+    /** The number of rows summarized
+     */
+    private int rows = 0;
+
+    /*************************************************************************************
+     * Construct an empty zone map.
+     * @param _blockRows  the number of rows per block
+     */
+    public ZoneMap (int _blockRows)
+    {
+        blockRows = _blockRows;
+    } // constructor
+
+    /*************************************************************************************
+     * Add the next row to the summaries.
+     * @param tup  the row appended to the store
+     */
+    @SuppressWarnings("unchecked")
+    public void add (Comparable [] tup)
+    {
+        int b = rows / blockRows;
+        if (b == min.length) {
+            min = Arrays.copyOf (min, 2 * b);
+            max = Arrays.copyOf (max, 2 * b);
+        } // if
+        if (rows++ % blockRows == 0) {
+            min [b] = tup.clone ();
+            max [b] = tup.clone ();
+            return;
+        } // if
+        Comparable [] lo = min [b], hi = max [b];
+        for (int j = 0; j < tup.length; j++) {
+            Comparable v = tup [j];
+            if (v == null) continue;
+            if (lo [j] == null || v.compareTo (lo [j]) < 0) lo [j] = v;
+            if (hi [j] == null || v.compareTo (hi [j]) > 0) hi [j] = v;
+        } // for
+    } // add
+
+    /*************************************************************************************
+     * Return the number of rows per block.
+     * @return  the block size
+     */
+    public int blockRows ()
+    {
+        return blockRows;
+    } // blockRows
+
+    /*************************************************************************************
+     * Return the number of blocks (the last may be partial).
+     * @return  the number of blocks
+     */
+    public int blocks ()
+    {
+        return (rows + blockRows - 1) / blockRows;
+    } // blocks
+
+    /*************************************************************************************
+     * Return whether block b may hold a row whose value in column col is in [lo, hi].
+     * @param b    the block number
+     * @param col  the column
+     * @param lo   the lower bound (inclusive)
+     * @param hi   the upper bound (inclusive)
+     * @return  false if no row of the block can be in the range
+     */
+    @SuppressWarnings("unchecked")
+    public boolean mayContain (int b, int col, Comparable lo, Comparable hi)
+    {
+        Comparable bMin = min [b][col], bMax = max [b][col];
+        if (bMin == null) return true;
+        return bMax.compareTo (lo) >= 0 && bMin.compareTo (hi) <= 0;
+    } // mayContain
+
+    /*************************************************************************************
+     * Return a copy of the zone map as it is now, for a scan that must not see rows
+     * appended meanwhile.  Only the summaries of the last block are copied.
+     * @return  the snapshot
+     */
+    public ZoneMap snapshot ()
+    {
+        ZoneMap z = new ZoneMap (blockRows);
+        int     n = blocks ();
+        z.min  = Arrays.copyOf (min, Math.max (1, n));
+        z.max  = Arrays.copyOf (max, Math.max (1, n));
+        z.rows = rows;
+        if (n > 0) {
+            z.min [n - 1] = min [n - 1].clone ();
+            z.max [n - 1] = max [n - 1].clone ();
+        } // if
+        return z;
+    } // snapshot
+
+    /*************************************************************************************
+     * The main method is used for testing purposes only: summarize a clustered year
+     * column and count the blocks a range scan has to read.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        ZoneMap z = new ZoneMap (1024);
+        int nRows = 1 << 20;
+        for (int i = 0; i < nRows; i++) z.add (new Comparable [] { i, 1950 + i / (nRows / 64) });
+        int read = 0;
+        for (int b = 0; b < z.blocks (); b++) if (z.mayContain (b, 1, 1980, 1984)) read++;
+        out.println ("blocks = " + z.blocks () + ", blocks read for 1980 <= year <= 1984 = " + read);
+        read = 0;
+        for (int b = 0; b < z.blocks (); b++) if (z.mayContain (b, 0, 5000, 5000)) read++;
+        out.println ("blocks read for id = 5000: " + read);
+    } // main
+
+} // ZoneMap class